@@ -0,0 +1,111 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.eskaton.regex.parser.RegexCompiler;
+import ch.eskaton.regex.parser.RegexLexer;
+import ch.eskaton.regex.parser.RegexNode;
+import ch.eskaton.regex.fsm.RegexStateMachine;
+import ch.eskaton.yajpg.api.ParserFactory;
+
+/**
+ * Patterns and helpers shared by the benchmarks.
+ */
+final class BenchmarkPatterns {
+
+    private static final String PARSER_CLASS = "ch.eskaton.regex.parser.RegexParser";
+
+    /** Representative patterns by name, used as benchmark parameters */
+    static final Map<String, String> PATTERNS = new HashMap<String, String>();
+
+    static {
+        PATTERNS.put("decimal", "([1-9][0-9]*(\\.[0-9]*)?)|(0*?\\.[0-9]+)");
+        PATTERNS.put("hex", "0x[0-9a-fA-F]+");
+        PATTERNS.put("date", "([0-9][0-9][0-9][0-9])\\.((0[1-9])|(1[0-2]))\\."
+                + "((0[1-9])|([1-2][0-9])|(3[0-1]))");
+        PATTERNS.put("counted", "[0-9]{4}\\.(0[1-9]|1[0-2])\\."
+                + "(0[1-9]|[1-2][0-9]|3[0-1])");
+        PATTERNS.put("identifier", "[a-zA-Z_$][a-zA-Z0-9_$]*");
+        PATTERNS.put("nondeterministic", "(a|b)*a(a|b)(a|b)(a|b)(a|b)");
+        PATTERNS.put("string", "\"[^\"]*\"");
+    }
+
+    private BenchmarkPatterns() {
+    }
+
+    static RegexNode parse(String regex) {
+        try {
+            return (RegexNode) ParserFactory.create(PARSER_CLASS,
+                    new RegexLexer(regex)).parse();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("invalid pattern " + regex, e);
+        }
+    }
+
+    static RegexStateMachine compile(String regex) {
+        return new RegexCompiler().compile(parse(regex));
+    }
+
+    /**
+     * Returns <code>count</code> distinct keyword patterns like those of a
+     * programming language, followed by patterns for identifiers and
+     * numbers.
+     */
+    static List<String> tokenPatterns(int count) {
+        List<String> patterns = new ArrayList<String>();
+
+        for (int i = 0; i < count; i++) {
+            patterns.add(keyword(i));
+        }
+
+        patterns.add(PATTERNS.get("identifier"));
+        patterns.add(PATTERNS.get("decimal"));
+        patterns.add(PATTERNS.get("hex"));
+
+        return patterns;
+    }
+
+    /**
+     * Returns a keyword which is different for each <code>index</code>.
+     */
+    static String keyword(int index) {
+        StringBuilder sb = new StringBuilder();
+
+        do {
+            sb.append((char) ('a' + index % 26));
+            index /= 26;
+        } while (index > 0);
+
+        return sb.append("kw").toString();
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+
+import ch.eskaton.regex.fsm.RegexSourceGenerator;
+import ch.eskaton.regex.fsm.RegexStateMachine;
+import ch.eskaton.regex.parser.RegexCompiler;
+import ch.eskaton.regex.parser.RegexLexer;
+import ch.eskaton.regex.parser.RegexNode;
+import ch.eskaton.yajpg.api.ParserFactory;
+
+/**
+ * Generates the source of a matcher class from a file with token
+ * definitions, see {@link RegexSourceGenerator}.
+ * <p>
+ * Each line of the token file contains a token name and a pattern,
+ * separated by the first colon. The pattern extends to the end of the line.
+ * Empty lines and lines starting with # are ignored:
+ * 
+ * <pre>
+ * # keywords
+ * IF:if
+ * IDENTIFIER:[a-zA-Z_][a-zA-Z0-9_]*
+ * </pre>
+ * 
+ * The automata of the tokens are combined with
+ * {@link RegexCompiler#combine(List)} and the token names are the accept
+ * objects.
+ * 
+ * @goal generate
+ * @phase generate-sources
+ */
+public class RegexGeneratorMojo extends AbstractMojo {
+
+    private static final String PARSER_CLASS = "ch.eskaton.regex.parser.RegexParser";
+
+    /**
+     * File with the token definitions.
+     * 
+     * @parameter
+     * @required
+     */
+    private File tokenFile;
+
+    /**
+     * Fully qualified name of the generated class.
+     * 
+     * @parameter
+     * @required
+     */
+    private String className;
+
+    /**
+     * Encoding of the token file.
+     * 
+     * @parameter default-value="UTF-8"
+     */
+    private String encoding;
+
+    /**
+     * Directory of the generated source.
+     * 
+     * @parameter expression="${project.build.directory}/generated-sources/regex"
+     * @required
+     */
+    private File outputDirectory;
+
+    /**
+     * @parameter expression="${project}"
+     * @required
+     * @readonly
+     */
+    private MavenProject project;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        File outputFile = new File(outputDirectory, className.replace('.',
+                File.separatorChar)
+                + ".java");
+
+        project.addCompileSourceRoot(outputDirectory.getAbsolutePath());
+
+        if (outputFile.exists()
+                && outputFile.lastModified() >= tokenFile.lastModified()) {
+            getLog().info(className + " is up to date");
+            return;
+        }
+
+        RegexStateMachine machine = compile(readTokens());
+
+        outputFile.getParentFile().mkdirs();
+
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(
+                    outputFile), "UTF-8");
+
+            try {
+                new RegexSourceGenerator(className).generate(machine, writer);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write " + outputFile,
+                    e);
+        }
+
+        getLog().info(
+                "Generated " + className + " with "
+                        + machine.getStateTable().length + " states");
+    }
+
+    /**
+     * Reads the token file and returns the names and patterns of the tokens.
+     */
+    private List<String[]> readTokens() throws MojoExecutionException,
+            MojoFailureException {
+        List<String[]> tokens = new ArrayList<String[]>();
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(tokenFile), encoding));
+
+            try {
+                String line;
+                int lineNumber = 0;
+
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+
+                    if (line.trim().length() == 0 || line.startsWith("#")) {
+                        continue;
+                    }
+
+                    int colon = line.indexOf(':');
+
+                    if (colon <= 0 || colon == line.length() - 1) {
+                        throw new MojoFailureException(tokenFile + ":"
+                                + lineNumber + ": expected NAME:pattern");
+                    }
+
+                    tokens.add(new String[] {
+                            line.substring(0, colon).trim(),
+                            line.substring(colon + 1) });
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to read " + tokenFile, e);
+        }
+
+        if (tokens.isEmpty()) {
+            throw new MojoFailureException(tokenFile + " contains no tokens");
+        }
+
+        return tokens;
+    }
+
+    private RegexStateMachine compile(List<String[]> tokens)
+            throws MojoFailureException {
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+
+        for (String[] token : tokens) {
+            try {
+                RegexNode node = (RegexNode) ParserFactory.create(
+                        PARSER_CLASS, new RegexLexer(token[1])).parse();
+                machines.add(new RegexCompiler().compile(node, token[0]));
+            } catch (Exception e) {
+                throw new MojoFailureException("Invalid pattern of token "
+                        + token[0] + ": " + e.getMessage());
+            }
+        }
+
+        return new RegexCompiler().combine(machines);
+    }
+
+}
@@ -26,9 +26,16 @@
  */
 package ch.eskaton.regex;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 import ch.eskaton.yajpg.api.Parser;
 import ch.eskaton.yajpg.api.ParserFactory;
-import ch.eskaton.regex.fsm.RegexStateMachine;
+import ch.eskaton.regex.fsm.RegexCompiledAutomaton;
+import ch.eskaton.regex.fsm.RegexMatcher;
+import ch.eskaton.regex.fsm.RegexParallelMatcher;
+import ch.eskaton.regex.fsm.RegexSearcher;
 import ch.eskaton.regex.parser.RegexCompiler;
 import ch.eskaton.regex.parser.RegexLexer;
 import ch.eskaton.regex.parser.RegexNode;
@@ -42,23 +49,55 @@ import ch.eskaton.regex.parser.RegexNode;
  * <li>? - 0..1 repetition</li>
  * <li>&#042; - 0..n repetition</li>
  * <li>+ - 1..n repetition</li>
+ * <li>{n} - exactly n repetitions</li>
+ * <li>{n,} - n..infinite repetitions</li>
+ * <li>{n,m} - n..m repetitions</li>
  * <li>() - group</li>
  * <li>| - selection</li>
+ * <li>. - any character except the line terminators \n, \r, U+0085, U+2028
+ * and U+2029</li>
  * </ul>
  * 
+ * A backslash in front of one of the characters ".[](){}|*+?\" outside of a
+ * class escapes it, i.e. <code>\.</code> matches a dot. In front of any
+ * other character the backslash is part of the pattern. A "{" which doesn't
+ * start one of the repetitions above is an ordinary character, e.g.
+ * <code>a{x}</code> accepts "a{x}".
+ * <p>
+ * Note that "." used to be an ordinary character, so patterns which contain
+ * an unescaped dot have a different meaning now: <code>0*?.[0-9]+</code>
+ * accepts "0x5" and must be written as <code>0*?\.[0-9]+</code> to accept
+ * only decimal fractions.
+ * 
  * <p>
  * 
  * <h4>Character classes</h4> 
  * Characters can be combined to classes in square brackets. The meta characters
- * "?*+()|" lose their meaning, i.e. they're part of the pattern. Only "-" and "]"
- * must be escaped with a backslash.
+ * "?*+()|." lose their meaning, i.e. they're part of the pattern. Only "-", "]"
+ * and "^" must be escaped with a backslash.
+ * 
+ * <h4>Predefined classes</h4>
+ * The predefined classes match the same characters as in
+ * {@link java.util.regex.Pattern} and may also be used in square brackets:
+ * <ul>
+ * <li>\d - a digit [0-9], \D - a non-digit</li>
+ * <li>\w - a word character [a-zA-Z_0-9], \W - a non-word character</li>
+ * <li>\s - a whitespace character [ \t\n\x0B\f\r], \S - a non-whitespace
+ * character</li>
+ * <li>\p{..} - a POSIX class like <code>\p{Alpha}</code>, a Unicode category
+ * like <code>\p{L}</code>, <code>\pL</code> or <code>\p{IsLu}</code>, or a
+ * Unicode block like <code>\p{InGreek}</code></li>
+ * <li>\P{..} - the complement of \p{..}</li>
+ * </ul>
  * 
  * <h4>Examples</h4>
  * <ul>
  * <li>[\u0030-\u0039]+ accepts all numeric strings like 0123456789</li>
  * <li>0x[0-9a-fA-F]+ accepts hexadecimal numbers like 0xFF</li>
+ * <li>[0-9]{4}-[0-9]{2} accepts months like 2012-04</li>
  * <li>[*]* accepts 0 to n asterisks</li>
  * <li>([a-zA-Z]+|[0-9]+) accepts 1 to n letters or digits</li>
+ * <li>\p{Lu}\w* accepts identifiers which start with an uppercase letter</li>
  * </ul>
  * 
  * <h4>Usage</h4>
@@ -75,6 +114,32 @@ import ch.eskaton.regex.parser.RegexNode;
  * }
  * </pre>
  * 
+ * A compiled pattern is immutable, so an instance may be shared by multiple
+ * threads. The state of a match which is processed character by character
+ * is kept in a {@link RegexMatcher}, which must be created per thread:
+ * 
+ * <pre>
+ * RegexMatcher matcher = regex.matcher();
+ * matcher.processEvent('0');
+ * matcher.processEvent('x');
+ * </pre>
+ * 
+ * Parts of an input which match a pattern are found with
+ * {@link #find(CharSequence)} and {@link #findAll(CharSequence)}:
+ * 
+ * <pre>
+ * for (RegexMatchResult result : regex.findAll(&quot;a=0x1F, b=0x20&quot;)) {
+ *     ...
+ * }
+ * </pre>
+ * 
+ * Patterns are matched case-insensitively if they're compiled with the
+ * flag {@link #CASE_INSENSITIVE}:
+ * 
+ * <pre>
+ * Regex regex = new Regex(&quot;select|from&quot;, Regex.CASE_INSENSITIVE);
+ * </pre>
+ * 
  * For one time use there is a class method:
  * 
  * <pre>
@@ -82,46 +147,163 @@ import ch.eskaton.regex.parser.RegexNode;
  *     ...
  * }
  * </pre>
+ * 
+ * The class method keeps the recently used patterns in a {@link RegexCache},
+ * so it doesn't compile a pattern again if it's called in a loop. The size
+ * of the cache can be configured with <code>Regex.getCache().setMaxSize()</code>.
  */
 public class Regex {
 
+	/** Matches ASCII letters case-insensitively */
+	public static final int CASE_INSENSITIVE = 1;
+
+	/** Extends {@link #CASE_INSENSITIVE} to all Unicode characters */
+	public static final int UNICODE_CASE = 2;
+
 	private static final String PARSER_CLASS = "ch.eskaton.regex.parser.RegexParser";
 
-	private RegexStateMachine rsm;
+	private static final int DEFAULT_CACHE_SIZE = 64;
+
+	private static final RegexCache cache = new RegexCache(DEFAULT_CACHE_SIZE);
+
+	private final RegexCompiledAutomaton automaton;
 
 	public Regex(String regex) throws RegexException {
-		try {
-			Parser p = ParserFactory
-					.create(PARSER_CLASS, new RegexLexer(regex));
-			RegexNode s = (RegexNode) p.parse();
-			rsm = new RegexCompiler().compile(s);
-		} catch (Exception ex) {
-			throw new RegexException(ex);
-		}
+		automaton = compile(regex);
+	}
+
+	/**
+	 * Compiles a pattern with a combination of the flags
+	 * {@link #CASE_INSENSITIVE} and {@link #UNICODE_CASE}. The flags are
+	 * applied when the pattern is compiled, so a case-insensitive pattern is
+	 * matched as fast as any other.
+	 */
+	public Regex(String regex, int flags) throws RegexException {
+		automaton = compile(regex, flags);
 	}
 
 	public boolean match(String str) {
-		rsm.reset();
+		return automaton.matches(str);
+	}
+
+	/**
+	 * Checks for each input whether it matches this pattern and stores the
+	 * result in <code>results</code> at the same index. This is faster than
+	 * calling {@link #match(String)} for each input.
+	 */
+	public void matchAll(CharSequence[] inputs, boolean[] results) {
+		automaton.matchAll(inputs, results);
+	}
+
+	/**
+	 * Checks for each input in <code>buffer</code> whether it matches this
+	 * pattern, see {@link RegexCompiledAutomaton#matchAll(char[], int[], boolean[])}.
+	 */
+	public void matchAll(char[] buffer, int[] offsets, boolean[] results) {
+		automaton.matchAll(buffer, offsets, results);
+	}
+
+	/**
+	 * Checks whether the whole <code>input</code> matches this pattern. A
+	 * large input is split into chunks which are processed by the threads of
+	 * <code>executor</code>, see {@link RegexParallelMatcher}.
+	 */
+	public boolean matchParallel(CharSequence input, ExecutorService executor)
+			throws InterruptedException {
+		return new RegexParallelMatcher(automaton, executor, Runtime
+				.getRuntime().availableProcessors()).matches(input);
+	}
+
+	/**
+	 * Creates a new matcher for this pattern.
+	 */
+	public RegexMatcher matcher() {
+		return automaton.matcher();
+	}
+
+	/**
+	 * Finds the leftmost longest part of <code>input</code> which matches
+	 * this pattern.
+	 * 
+	 * @return the match or <code>null</code> if no part of the input matches
+	 */
+	public RegexMatchResult find(CharSequence input) {
+		return find(input, 0);
+	}
+
+	/**
+	 * Finds the leftmost longest part of <code>input</code> which matches
+	 * this pattern and starts at or after <code>from</code>.
+	 * 
+	 * @return the match or <code>null</code> if no part of the input matches
+	 */
+	public RegexMatchResult find(CharSequence input, int from) {
+		RegexSearcher searcher = automaton.searcher(input);
 
-		for (int i = 0; i < str.length(); i++) {
-			rsm.processEvent(str.charAt(i));
+		if (!searcher.find(from)) {
+			return null;
 		}
 
-		return rsm.accepts();
+		return createMatchResult(input, searcher);
+	}
+
+	/**
+	 * Finds all parts of <code>input</code> which match this pattern. The
+	 * matches are the leftmost longest ones and don't overlap.
+	 */
+	public List<RegexMatchResult> findAll(CharSequence input) {
+		List<RegexMatchResult> matches = new ArrayList<RegexMatchResult>();
+		RegexSearcher searcher = automaton.searcher(input);
+
+		while (searcher.find()) {
+			matches.add(createMatchResult(input, searcher));
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Creates a new searcher for this pattern which searches in
+	 * <code>input</code>.
+	 */
+	public RegexSearcher searcher(CharSequence input) {
+		return automaton.searcher(input);
 	}
 
 	public static boolean match(String regex, String str) throws RegexException {
+		return cache.get(regex).matches(str);
+	}
+
+	/**
+	 * Returns the cache of compiled patterns used by
+	 * {@link #match(String, String)}.
+	 */
+	public static RegexCache getCache() {
+		return cache;
+	}
+
+	private static RegexMatchResult createMatchResult(CharSequence input,
+			RegexSearcher searcher) {
+		return new RegexMatchResult(searcher.getStart(), searcher.getEnd(),
+				searcher.getAcceptObject(), input.subSequence(
+						searcher.getStart(), searcher.getEnd()).toString());
+	}
+
+	static RegexCompiledAutomaton compile(String regex)
+			throws RegexException {
+		return compile(regex, 0);
+	}
+
+	private static RegexCompiledAutomaton compile(String regex, int flags)
+			throws RegexException {
 		try {
 			Parser p = ParserFactory
 					.create(PARSER_CLASS, new RegexLexer(regex));
 			RegexNode s = (RegexNode) p.parse();
-			RegexStateMachine rsm = new RegexCompiler().compile(s);
-
-			for (int i = 0; i < str.length(); i++) {
-				rsm.processEvent(str.charAt(i));
-			}
-
-			return rsm.accepts();
+			RegexCompiler compiler = new RegexCompiler();
+			compiler.setCaseInsensitive((flags & CASE_INSENSITIVE) != 0);
+			compiler.setUnicodeCase((flags & UNICODE_CASE) != 0);
+			return compiler.compile(s).getAutomaton();
 		} catch (Exception ex) {
 			throw new RegexException(ex);
 		}
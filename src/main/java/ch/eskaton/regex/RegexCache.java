@@ -0,0 +1,151 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ch.eskaton.regex.fsm.RegexCompiledAutomaton;
+
+/**
+ * A bounded cache of compiled patterns.
+ * <p>
+ * If the cache is full, the least recently used pattern is evicted. The
+ * cache may be used by multiple threads. Patterns are compiled outside of
+ * the lock, so a slow compilation doesn't block lookups of other patterns.
+ */
+public class RegexCache {
+
+    private final Map<String, RegexCompiledAutomaton> automata;
+
+    private int maxSize;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * Creates a cache which keeps at most <code>maxSize</code> patterns. A
+     * size of 0 disables caching.
+     */
+    @SuppressWarnings("serial")
+    public RegexCache(int maxSize) {
+        checkSize(maxSize);
+        this.maxSize = maxSize;
+        automata = new LinkedHashMap<String, RegexCompiledAutomaton>(16,
+                0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, RegexCompiledAutomaton> eldest) {
+                if (size() > RegexCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled automaton for <code>regex</code>. The pattern is
+     * compiled if it isn't in the cache.
+     */
+    public RegexCompiledAutomaton get(String regex) throws RegexException {
+        synchronized (this) {
+            RegexCompiledAutomaton automaton = automata.get(regex);
+
+            if (automaton != null) {
+                hits++;
+                return automaton;
+            }
+
+            misses++;
+        }
+
+        RegexCompiledAutomaton automaton = Regex.compile(regex);
+
+        synchronized (this) {
+            if (maxSize > 0 && !automata.containsKey(regex)) {
+                automata.put(regex, automaton);
+            }
+        }
+
+        return automaton;
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of patterns. Surplus patterns are evicted.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        checkSize(maxSize);
+        this.maxSize = maxSize;
+
+        while (automata.size() > maxSize) {
+            automata.remove(automata.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    private static void checkSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("negative cache size");
+        }
+    }
+
+    public synchronized int size() {
+        return automata.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Removes all patterns and resets the counters.
+     */
+    public synchronized void clear() {
+        automata.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+}
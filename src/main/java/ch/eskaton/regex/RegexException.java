@@ -33,4 +33,8 @@ public class RegexException extends Exception {
         super(ex);
     }
 
+    public RegexException(String message) {
+        super(message);
+    }
+
 }
@@ -0,0 +1,422 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.eskaton.regex.fsm.RegexSearcher;
+
+/**
+ * Finds the matches of a pattern in the lines of a file.
+ * <p>
+ * The file is mapped into memory with {@link FileChannel#map} in windows
+ * which end at a line terminator, so files larger than 2 GB are supported.
+ * Each line is searched with a {@link RegexSearcher}. If the charset of the
+ * file is ISO-8859-1 or US-ASCII, the automaton runs directly on the bytes
+ * of the mapped file, each byte is a character. Otherwise each line is
+ * decoded before it's searched.
+ * <p>
+ * Lines are split on the byte of \n, so the charset must encode \n and \r
+ * as in ASCII, e.g. UTF-8. Charsets like UTF-16 are rejected.
+ * <p>
+ * Lines are terminated by \n, a \r before it isn't part of the line. Matches
+ * don't span lines.
+ */
+public class RegexFileScanner {
+
+    /** Default size of the mapped windows */
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private static final String LATIN1 = "ISO-8859-1";
+
+    /**
+     * Receives the matches of a scan.
+     */
+    public interface MatchHandler {
+
+        /**
+         * Called for each match in the order of the file.
+         * 
+         * @return false to stop the scan
+         */
+        boolean handle(RegexFileMatch match);
+
+    }
+
+    private final Regex regex;
+
+    private final Charset charset;
+
+    private final boolean rawBytes;
+
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+
+    /**
+     * Creates a scanner for files in ISO-8859-1.
+     */
+    public RegexFileScanner(Regex regex) {
+        this(regex, Charset.forName(LATIN1));
+    }
+
+    /**
+     * Creates a scanner for files in <code>charset</code>.
+     * 
+     * @throws IllegalArgumentException
+     *             if the charset doesn't encode \n and \r as in ASCII
+     */
+    public RegexFileScanner(Regex regex, Charset charset) {
+        if (!isAsciiCompatible(charset)) {
+            throw new IllegalArgumentException("charset " + charset.name()
+                    + " isn't compatible with ASCII");
+        }
+
+        this.regex = regex;
+        this.charset = charset;
+        rawBytes = charset.name().equals(LATIN1)
+                || charset.name().equals("US-ASCII");
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+
+        ByteBuffer terminators = charset.encode("\r\n");
+
+        return terminators.remaining() == 2 && terminators.get(0) == '\r'
+                && terminators.get(1) == '\n';
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sets the number of bytes which are mapped at once. A window is
+     * enlarged temporarily for lines which are longer.
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("invalid window size "
+                    + windowSize);
+        }
+
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Returns all matches in <code>file</code>.
+     */
+    public List<RegexFileMatch> scan(File file) throws IOException {
+        final List<RegexFileMatch> matches = new ArrayList<RegexFileMatch>();
+
+        scan(file, new MatchHandler() {
+            public boolean handle(RegexFileMatch match) {
+                matches.add(match);
+                return true;
+            }
+        });
+
+        return matches;
+    }
+
+    /**
+     * Passes the matches in <code>file</code> to <code>handler</code>.
+     */
+    public void scan(File file, MatchHandler handler) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+            Scan scan = new Scan(handler);
+            long size = channel.size();
+            long position = 0;
+            int window = windowSize;
+
+            while (position < size) {
+                long length = Math.min(window, size - position);
+                MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_ONLY, position, length);
+                int end = (int) length;
+
+                if (position + length < size) {
+                    end = lastLineEnd(buffer, end);
+
+                    if (end == 0) {
+                        if (window == Integer.MAX_VALUE) {
+                            throw new IOException("line at offset "
+                                    + position + " is too long");
+                        }
+
+                        window = (int) Math.min(2L * window,
+                                Integer.MAX_VALUE);
+                        continue;
+                    }
+                }
+
+                if (!scan.scanWindow(buffer, position, end)) {
+                    return;
+                }
+
+                position += end;
+                window = windowSize;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the position after the last \n in the first <code>end</code>
+     * bytes of <code>buffer</code> or 0 if there is none.
+     */
+    private static int lastLineEnd(ByteBuffer buffer, int end) {
+        for (int i = end - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * State of a single scan.
+     */
+    private class Scan {
+
+        private final MatchHandler handler;
+
+        private final RegexSearcher searcher = regex.searcher("");
+
+        private final CharsetDecoder decoder;
+
+        private final CharsetEncoder encoder;
+
+        /** Receives the encoded characters, which are only counted */
+        private final ByteBuffer encoded;
+
+        /** Characters of the current line whose bytes are counted */
+        private int countedChars;
+
+        /** Bytes of the first countedChars characters */
+        private int countedBytes;
+
+        private long lineNumber = 1;
+
+        Scan(MatchHandler handler) {
+            this.handler = handler;
+
+            if (rawBytes) {
+                decoder = null;
+                encoder = null;
+                encoded = null;
+            } else {
+                encoded = ByteBuffer.allocate(1024);
+                decoder = charset.newDecoder().onMalformedInput(
+                        CodingErrorAction.REPLACE).onUnmappableCharacter(
+                        CodingErrorAction.REPLACE);
+                encoder = charset.newEncoder().onMalformedInput(
+                        CodingErrorAction.REPLACE).onUnmappableCharacter(
+                        CodingErrorAction.REPLACE);
+            }
+        }
+
+        /**
+         * Searches the lines in the first <code>end</code> bytes of
+         * <code>buffer</code>, which starts at <code>position</code> in the
+         * file.
+         * 
+         * @return false if the handler stopped the scan
+         */
+        boolean scanWindow(ByteBuffer buffer, long position, int end)
+                throws CharacterCodingException {
+            int lineStart = 0;
+
+            while (lineStart < end) {
+                int lineEnd = lineStart;
+
+                while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+
+                int contentEnd = lineEnd;
+
+                if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+                    contentEnd--;
+                }
+
+                if (!scanLine(buffer, position + lineStart, lineStart,
+                        contentEnd)) {
+                    return false;
+                }
+
+                lineNumber++;
+                lineStart = lineEnd + 1;
+            }
+
+            return true;
+        }
+
+        private boolean scanLine(ByteBuffer buffer, long lineOffset,
+                int from, int to) throws CharacterCodingException {
+            CharSequence line;
+
+            if (rawBytes) {
+                line = new Latin1Sequence(buffer, from, to - from);
+            } else {
+                ByteBuffer bytes = buffer.duplicate();
+                bytes.limit(to).position(from);
+                line = decoder.decode(bytes);
+            }
+
+            searcher.reset(line);
+            countedChars = 0;
+            countedBytes = 0;
+
+            String lineText = null;
+
+            while (searcher.find()) {
+                int start = searcher.getStart();
+                int end = searcher.getEnd();
+
+                if (lineText == null) {
+                    lineText = line.toString();
+                }
+
+                RegexFileMatch match = new RegexFileMatch(lineOffset
+                        + byteOffset(line, start), lineOffset
+                        + byteOffset(line, end), searcher.getAcceptObject(),
+                        lineText.substring(start, end), lineNumber, lineText);
+
+                if (!handler.handle(match)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Returns the number of bytes of the first <code>chars</code>
+         * characters of <code>line</code>. The offsets of a line are
+         * requested in ascending order, so only the characters after the
+         * previous offset are encoded.
+         */
+        private int byteOffset(CharSequence line, int chars) {
+            if (rawBytes) {
+                return chars;
+            }
+
+            CharBuffer in = CharBuffer.wrap(line, countedChars, chars);
+            CoderResult result;
+
+            encoder.reset();
+
+            do {
+                encoded.clear();
+                result = encoder.encode(in, encoded, true);
+                countedBytes += encoded.position();
+            } while (result.isOverflow());
+
+            do {
+                encoded.clear();
+                result = encoder.flush(encoded);
+                countedBytes += encoded.position();
+            } while (result.isOverflow());
+
+            countedChars = chars;
+
+            return countedBytes;
+        }
+
+    }
+
+    /**
+     * A view of bytes as characters of ISO-8859-1.
+     */
+    private static class Latin1Sequence implements CharSequence {
+
+        private final ByteBuffer buffer;
+
+        private final int offset;
+
+        private final int length;
+
+        Latin1Sequence(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+
+            return (char) (buffer.get(offset + index) & 0xff);
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException(start + ", " + end);
+            }
+
+            return new Latin1Sequence(buffer, offset + start, end - start);
+        }
+
+        public String toString() {
+            char[] chars = new char[length];
+
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (buffer.get(offset + i) & 0xff);
+            }
+
+            return new String(chars);
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex;
+
+/**
+ * A part of an input which was matched by an automaton.
+ * <p>
+ * The start and end offsets are measured in characters from the beginning
+ * of the input, the end offset is exclusive.
+ */
+public class RegexMatchResult {
+
+    private long start;
+
+    private long end;
+
+    private Object acceptObject;
+
+    private String text;
+
+    public RegexMatchResult(long start, long end, Object acceptObject,
+            String text) {
+        this.start = start;
+        this.end = end;
+        this.acceptObject = acceptObject;
+        this.text = text;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the object of the automaton which matched, see
+     * {@link ch.eskaton.regex.parser.RegexCompiler#compile(ch.eskaton.regex.parser.RegexNode, Object)}.
+     */
+    public Object getAcceptObject() {
+        return acceptObject;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String toString() {
+        return "[RegexMatchResult: start=" + start + " end=" + end
+                + " object=" + acceptObject + " text=" + text + "]";
+    }
+
+}
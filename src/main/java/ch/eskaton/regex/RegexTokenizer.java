@@ -0,0 +1,221 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import ch.eskaton.regex.fsm.RegexCompiledAutomaton;
+import ch.eskaton.regex.fsm.RegexMatcher;
+
+/**
+ * Splits an input into tokens.
+ * <p>
+ * The tokenizer runs an automaton, usually one that was combined from the
+ * automata of the token types with
+ * {@link ch.eskaton.regex.parser.RegexCompiler#combine(java.util.List)}.
+ * Each token is the longest prefix of the remaining input accepted by the
+ * automaton, and its type is the accept object of the automaton. The
+ * automaton runs until it rejects or the input ends, and the tokenizer then
+ * continues after the last accepted position.
+ * <p>
+ * Input from a {@link CharSequence}, e.g. a {@link java.nio.CharBuffer}, is
+ * read directly. Input from a {@link Reader} is read into a buffer, which
+ * only keeps the characters of the current token. The buffer grows if a
+ * token doesn't fit.
+ * 
+ * <pre>
+ * RegexTokenizer tokenizer = new RegexTokenizer(automaton, reader);
+ * RegexMatchResult token;
+ * 
+ * while ((token = tokenizer.next()) != null) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class RegexTokenizer {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private RegexMatcher matcher;
+
+    private CharSequence sequence;
+
+    private Reader reader;
+
+    private char[] buffer;
+
+    /** Offset of the first character in the buffer */
+    private long offset;
+
+    /** Start of the next token in the buffer or the sequence */
+    private int position;
+
+    /** Number of characters in the buffer or the sequence */
+    private int limit;
+
+    private boolean eof;
+
+    public RegexTokenizer(RegexCompiledAutomaton automaton, CharSequence input) {
+        this.matcher = automaton.matcher();
+        this.sequence = input;
+        this.limit = input.length();
+        this.eof = true;
+    }
+
+    public RegexTokenizer(RegexCompiledAutomaton automaton, Reader reader) {
+        this(automaton, reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public RegexTokenizer(RegexCompiledAutomaton automaton, Reader reader,
+            int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("invalid buffer size");
+        }
+
+        this.matcher = automaton.matcher();
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Returns the offset of the next token.
+     */
+    public long getPosition() {
+        return offset + position;
+    }
+
+    /**
+     * Returns the next token or <code>null</code> at the end of the input.
+     * 
+     * @throws RegexException
+     *             If no token matches at the current position or the input
+     *             can't be read.
+     */
+    public RegexMatchResult next() throws RegexException {
+        try {
+            return nextToken();
+        } catch (IOException ex) {
+            throw new RegexException(ex);
+        }
+    }
+
+    private RegexMatchResult nextToken() throws IOException, RegexException {
+        if (position == limit && !fill()) {
+            return null;
+        }
+
+        int accepted = -1;
+        Object acceptObject = null;
+
+        matcher.reset();
+
+        for (int i = position;; i++) {
+            if (i == limit) {
+                int shift = position;
+                boolean filled = fill();
+
+                shift -= position;
+                i -= shift;
+                accepted -= accepted == -1 ? 0 : shift;
+
+                if (!filled) {
+                    break;
+                }
+            }
+
+            matcher.processEvent(sequence != null ? sequence.charAt(i)
+                    : buffer[i]);
+
+            if (matcher.rejects()) {
+                break;
+            } else if (matcher.accepts()) {
+                accepted = i + 1;
+                acceptObject = matcher.getAcceptObject();
+            }
+        }
+
+        if (accepted == -1) {
+            throw new RegexException("no token matches at offset "
+                    + getPosition());
+        }
+
+        String text;
+
+        if (sequence != null) {
+            text = sequence.subSequence(position, accepted).toString();
+        } else {
+            text = new String(buffer, position, accepted - position);
+        }
+
+        RegexMatchResult token = new RegexMatchResult(getPosition(), offset
+                + accepted, acceptObject, text);
+        position = accepted;
+
+        return token;
+    }
+
+    /**
+     * Reads more characters into the buffer. The characters before the start
+     * of the current token are discarded, and the buffer grows if it is
+     * full.
+     * 
+     * @return <code>false</code> at the end of the input
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            offset += position;
+            limit -= position;
+            position = 0;
+        } else if (limit == buffer.length) {
+            char[] newBuffer = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, newBuffer, 0, limit);
+            buffer = newBuffer;
+        }
+
+        int count = reader.read(buffer, limit, buffer.length - limit);
+
+        while (count == 0) {
+            count = reader.read(buffer, limit, buffer.length - limit);
+        }
+
+        if (count == -1) {
+            eof = true;
+            return false;
+        }
+
+        limit += count;
+
+        return true;
+    }
+
+}
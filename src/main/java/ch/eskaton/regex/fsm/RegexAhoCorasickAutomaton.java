@@ -0,0 +1,386 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An automaton which accepts a set of literal strings, stored as a
+ * double-array trie.
+ * <p>
+ * The characters of the literals are numbered from 1 by a
+ * {@link RegexCharacterMap}, all other characters map to 0. The child of
+ * state <code>s</code> with character number <code>c</code> is the state
+ * <code>base[s] + c</code> if <code>check[base[s] + c] == s</code>, so a
+ * transition costs two array reads and the arrays are only slightly larger
+ * than the number of states. The root is state 0.
+ * <p>
+ * The unanchored automata used by searchers, see {@link RegexSearcher},
+ * are Aho-Corasick automata over the same trie: if a state has no child for
+ * a character, they follow the failure link to the state of the longest
+ * proper suffix which is a prefix of a literal. A state is final if a
+ * literal ends at it or at a state on its chain of failure links. The
+ * search automata are constructed on the first call of
+ * {@link #searcher(CharSequence)}.
+ */
+public class RegexAhoCorasickAutomaton extends RegexCompiledAutomaton {
+
+    /** Marks an unused slot of the double array */
+    private static final int FREE = -1;
+
+    /** Check value of the root, which isn't the child of any state */
+    private static final int ROOT = -2;
+
+    /** Sorted literals and their objects */
+    private final String[] literals;
+
+    private final Object[] objects;
+
+    private final boolean unanchored;
+
+    private final RegexCharacterMap charMap;
+
+    private int[] base;
+
+    private int[] check;
+
+    /** Failure links of an unanchored automaton */
+    private int[] fail;
+
+    private boolean[] finalStates;
+
+    private Object[] acceptObjects;
+
+    private int stateCount;
+
+    /**
+     * Creates an automaton which accepts exactly the keys of
+     * <code>literals</code>. The value of a key is its accept object.
+     */
+    RegexAhoCorasickAutomaton(Map<String, Object> literals) {
+        this(new TreeMap<String, Object>(literals), false);
+    }
+
+    private RegexAhoCorasickAutomaton(TreeMap<String, Object> literals,
+            boolean unanchored) {
+        this.literals = literals.keySet().toArray(new String[literals.size()]);
+        this.objects = literals.values().toArray();
+        this.unanchored = unanchored;
+
+        charMap = new RegexCharacterMap(0);
+        build();
+        charMap.compact();
+    }
+
+    @Override
+    public int getInitialState() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of states of the trie.
+     */
+    @Override
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int getNextState(int state, char c) {
+        if (state == REJECT_STATE) {
+            return REJECT_STATE;
+        }
+
+        int code = charMap.getColumn(c);
+
+        while (true) {
+            if (code != 0) {
+                int child = base[state] + code;
+
+                if (child < check.length && check[child] == state) {
+                    return child;
+                }
+            }
+
+            if (!unanchored) {
+                return REJECT_STATE;
+            } else if (state == 0) {
+                return 0;
+            }
+
+            state = fail[state];
+        }
+    }
+
+    @Override
+    public boolean isFinalState(int state) {
+        return state != REJECT_STATE && finalStates[state];
+    }
+
+    @Override
+    public Object getAcceptObject(int state) {
+        return state == REJECT_STATE ? null : acceptObjects[state];
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        if (!getPrefilter().accepts(input)) {
+            return false;
+        }
+
+        int state = 0;
+
+        for (int i = 0; i < input.length() && state != REJECT_STATE; i++) {
+            state = getNextState(state, input.charAt(i));
+        }
+
+        return isFinalState(state);
+    }
+
+    @Override
+    void createSearchAutomata() {
+        TreeMap<String, Object> forward = new TreeMap<String, Object>();
+        TreeMap<String, Object> reverse = new TreeMap<String, Object>();
+
+        for (int i = 0; i < literals.length; i++) {
+            forward.put(literals[i], objects[i]);
+            reverse.put(reverse(literals[i]), objects[i]);
+        }
+
+        setSearchAutomata(new RegexAhoCorasickAutomaton(forward, true),
+                new RegexAhoCorasickAutomaton(reverse, true));
+    }
+
+    /**
+     * Reverses the UTF-16 units of a literal. Unlike
+     * {@link StringBuilder#reverse()} this also reverses surrogate pairs, as
+     * the reverse automaton reads the input one unit at a time backwards.
+     */
+    private static String reverse(String literal) {
+        char[] chars = new char[literal.length()];
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = literal.charAt(chars.length - 1 - i);
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Numbers the characters and places the states in the double array in
+     * breadth-first order. The literals of a state are a range of the sorted
+     * literals which share the prefix of the state, so the children of a
+     * state are the different characters at the next position of this range.
+     * The characters are numbered in ascending order, so the numbers of the
+     * children are ascending too.
+     */
+    private void build() {
+        BitSet chars = new BitSet();
+        int code = 0;
+        int length = 1;
+
+        for (String literal : literals) {
+            length += literal.length();
+
+            for (int i = 0; i < literal.length(); i++) {
+                chars.set(literal.charAt(i));
+            }
+        }
+
+        for (int c = chars.nextSetBit(0); c >= 0; c = chars.nextSetBit(c + 1)) {
+            charMap.put((char) c, (char) c, ++code);
+        }
+
+        base = new int[length + code + 1];
+        check = new int[base.length];
+        Arrays.fill(check, FREE);
+        check[0] = ROOT;
+
+        /* per state in breadth-first order: slot, literal range, depth */
+        int[] order = new int[length];
+        int[] from = new int[length];
+        int[] to = new int[length];
+        int[] depth = new int[length];
+        int[] parents = new int[length];
+        int[] codes = new int[length];
+        int[] childCodes = new int[code + 1];
+        int[] childFrom = new int[code + 1];
+        int states = 1;
+        int nextFree = 1;
+        int slots = 1;
+
+        to[0] = literals.length;
+        finalStates = new boolean[base.length];
+        acceptObjects = new Object[base.length];
+
+        for (int n = 0; n < states; n++) {
+            int slot = order[n];
+            int lo = from[n];
+            int hi = to[n];
+            int d = depth[n];
+
+            if (lo < hi && literals[lo].length() == d) {
+                finalStates[slot] = true;
+                acceptObjects[slot] = objects[lo++];
+            }
+
+            int children = 0;
+
+            for (int i = lo; i < hi; i++) {
+                int c = charMap.getColumn(literals[i].charAt(d));
+
+                if (children == 0 || childCodes[children - 1] != c) {
+                    childCodes[children] = c;
+                    childFrom[children++] = i;
+                }
+            }
+
+            if (children == 0) {
+                continue;
+            }
+
+            while (nextFree < check.length && check[nextFree] != FREE) {
+                nextFree++;
+            }
+
+            int b = Math.max(nextFree - childCodes[0], 0);
+
+            while (!isFree(b, childCodes, children)) {
+                b++;
+            }
+
+            base[slot] = b;
+
+            for (int i = 0; i < children; i++) {
+                int child = b + childCodes[i];
+
+                check[child] = slot;
+                slots = Math.max(slots, child + 1);
+                order[states] = child;
+                from[states] = childFrom[i];
+                to[states] = i + 1 < children ? childFrom[i + 1] : hi;
+                depth[states] = d + 1;
+                parents[states] = slot;
+                codes[states++] = childCodes[i];
+            }
+        }
+
+        stateCount = states;
+        base = copyOf(base, slots, 0);
+        check = copyOf(check, slots, FREE);
+        finalStates = copyOf(finalStates, slots);
+        acceptObjects = copyOf(acceptObjects, slots);
+
+        if (unanchored) {
+            createFailureLinks(order, parents, codes);
+        }
+    }
+
+    private boolean isFree(int b, int[] childCodes, int children) {
+        int last = b + childCodes[children - 1];
+
+        if (last >= check.length) {
+            int newLength = Math.max(check.length * 2, last + 1);
+
+            base = copyOf(base, newLength, 0);
+            check = copyOf(check, newLength, FREE);
+            finalStates = copyOf(finalStates, newLength);
+            acceptObjects = copyOf(acceptObjects, newLength);
+        }
+
+        for (int i = 0; i < children; i++) {
+            if (check[b + childCodes[i]] != FREE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Computes the failure links in breadth-first order, so that the link
+     * of the parent is known. A state is final if its failure link is final,
+     * and then also accepts its object.
+     */
+    private void createFailureLinks(int[] order, int[] parents, int[] codes) {
+        fail = new int[check.length];
+
+        for (int n = 1; n < stateCount; n++) {
+            int slot = order[n];
+            int parent = parents[n];
+            int target = 0;
+
+            if (parent != 0) {
+                int f = fail[parent];
+
+                while (true) {
+                    int child = base[f] + codes[n];
+
+                    if (child < check.length && check[child] == f) {
+                        target = child;
+                        break;
+                    } else if (f == 0) {
+                        break;
+                    }
+
+                    f = fail[f];
+                }
+            }
+
+            fail[slot] = target;
+
+            if (!finalStates[slot] && finalStates[target]) {
+                finalStates[slot] = true;
+                acceptObjects[slot] = acceptObjects[target];
+            }
+        }
+    }
+
+    private static int[] copyOf(int[] array, int length, int fill) {
+        int[] copy = new int[length];
+        int kept = Math.min(array.length, length);
+        System.arraycopy(array, 0, copy, 0, kept);
+        Arrays.fill(copy, kept, length, fill);
+        return copy;
+    }
+
+    private static boolean[] copyOf(boolean[] array, int length) {
+        boolean[] copy = new boolean[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static Object[] copyOf(Object[] array, int length) {
+        Object[] copy = new Object[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+}
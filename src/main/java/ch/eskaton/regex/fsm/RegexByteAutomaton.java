@@ -0,0 +1,135 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A deterministic automaton which reads the UTF-8 encoding of its input
+ * instead of characters, see {@link RegexStateMachine#createByteAutomaton()}.
+ * <p>
+ * The state table has 256 columns, one for each byte value, and is stored
+ * as a single array. The automaton is immutable and may be shared by
+ * multiple threads.
+ */
+public class RegexByteAutomaton {
+
+    /** State number of the reject state */
+    public static final int REJECT_STATE = -1;
+
+    private static final int COLUMN_BITS = 8;
+
+    private final int[] stateTable;
+
+    private final int initialState;
+
+    private final boolean[] finalStates;
+
+    private final Object[] acceptObjects;
+
+    RegexByteAutomaton(int[] stateTable, int initialState,
+            boolean[] finalStates, Object[] acceptObjects) {
+        this.stateTable = stateTable;
+        this.initialState = initialState;
+        this.finalStates = finalStates;
+        this.acceptObjects = acceptObjects;
+    }
+
+    public int getInitialState() {
+        return initialState;
+    }
+
+    public int getStateCount() {
+        return finalStates.length;
+    }
+
+    /**
+     * Returns the state reached from <code>state</code> with byte
+     * <code>b</code> or {@link #REJECT_STATE}.
+     */
+    public int getNextState(int state, byte b) {
+        if (state == REJECT_STATE) {
+            return REJECT_STATE;
+        }
+
+        return stateTable[(state << COLUMN_BITS) | (b & 0xff)];
+    }
+
+    public boolean isFinalState(int state) {
+        return state != REJECT_STATE && finalStates[state];
+    }
+
+    /**
+     * Returns the object connected with the final state <code>state</code>
+     * or <code>null</code> if <code>state</code> isn't a final state.
+     */
+    public Object getAcceptObject(int state) {
+        if (state == REJECT_STATE) {
+            return null;
+        }
+
+        return acceptObjects[state];
+    }
+
+    /**
+     * Checks whether the automaton accepts all bytes of <code>input</code>.
+     */
+    public boolean matches(byte[] input) {
+        return matches(input, 0, input.length);
+    }
+
+    /**
+     * Checks whether the automaton accepts the <code>length</code> bytes of
+     * <code>input</code> from <code>offset</code>.
+     */
+    public boolean matches(byte[] input, int offset, int length) {
+        int state = initialState;
+        int end = offset + length;
+
+        for (int i = offset; i < end && state != REJECT_STATE; i++) {
+            state = stateTable[(state << COLUMN_BITS) | (input[i] & 0xff)];
+        }
+
+        return isFinalState(state);
+    }
+
+    /**
+     * Checks whether the automaton accepts the remaining bytes of
+     * <code>buffer</code>. The position of the buffer isn't changed.
+     */
+    public boolean matches(ByteBuffer buffer) {
+        int state = initialState;
+        int end = buffer.limit();
+
+        for (int i = buffer.position(); i < end && state != REJECT_STATE; i++) {
+            state = stateTable[(state << COLUMN_BITS) | (buffer.get(i) & 0xff)];
+        }
+
+        return isFinalState(state);
+    }
+
+}
@@ -0,0 +1,473 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles the state table of a {@link RegexTableAutomaton} to the bytecode
+ * of a {@link RegexBytecodeMatcher}.
+ * <p>
+ * Each state becomes a block of code which reads the next character and
+ * finds its target state by a binary search over the character ranges of
+ * the state, compiled to nested comparisons. Transitions are jumps, so the
+ * table isn't accessed at all.
+ * <p>
+ * The class file has version 49 (Java 5), so it needs no stack map frames.
+ * Each class is defined by its own class loader, so it's unloaded together
+ * with its automaton. Branch offsets of the comparisons are limited to 16
+ * bit, so automata whose code exceeds 32 KB aren't compiled.
+ */
+class RegexBytecodeCompiler {
+
+    /** Maximum size of the code of the method matches() */
+    static final int MAX_CODE_SIZE = Short.MAX_VALUE;
+
+    private static final String SUPER_CLASS = "ch/eskaton/regex/fsm/RegexBytecodeMatcher";
+
+    private static final String CLASS_PREFIX = "ch/eskaton/regex/fsm/RegexBytecodeMatcher$Generated";
+
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    private static final int ACC_PUBLIC = 0x0001;
+
+    private static final int ACC_FINAL = 0x0010;
+
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+
+    private static final int CONSTANT_INTEGER = 3;
+
+    private static final int CONSTANT_CLASS = 7;
+
+    private static final int CONSTANT_METHODREF = 10;
+
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ICONST_0 = 0x03;
+
+    private static final int ICONST_1 = 0x04;
+
+    private static final int SIPUSH = 0x11;
+
+    private static final int LDC_W = 0x13;
+
+    private static final int ILOAD = 0x15;
+
+    private static final int ILOAD_2 = 0x1c;
+
+    private static final int ILOAD_3 = 0x1d;
+
+    private static final int ALOAD_0 = 0x2a;
+
+    private static final int ALOAD_1 = 0x2b;
+
+    private static final int ISTORE = 0x36;
+
+    private static final int ISTORE_2 = 0x3d;
+
+    private static final int ISTORE_3 = 0x3e;
+
+    private static final int IINC = 0x84;
+
+    private static final int IF_ICMPLT = 0xa1;
+
+    private static final int IF_ICMPGE = 0xa2;
+
+    private static final int GOTO = 0xa7;
+
+    private static final int IRETURN = 0xac;
+
+    private static final int RETURN = 0xb1;
+
+    private static final int INVOKESPECIAL = 0xb7;
+
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    /** Local variables of matches() */
+    private static final int LOCAL_CHAR = 4;
+
+    private final RegexTableAutomaton automaton;
+
+    private final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+
+    private final DataOutputStream constantPool = new DataOutputStream(
+            constants);
+
+    private int constantCount = 1;
+
+    private final Map<Integer, Integer> integerConstants = new HashMap<Integer, Integer>();
+
+    private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+
+    private final DataOutputStream code = new DataOutputStream(codeBytes);
+
+    /** Addresses of the labels, -1 if not yet placed */
+    private final List<Integer> labels = new ArrayList<Integer>();
+
+    /** Address of the instruction and the label of each branch */
+    private final List<int[]> branches = new ArrayList<int[]>();
+
+    private RegexBytecodeCompiler(RegexTableAutomaton automaton) {
+        this.automaton = automaton;
+    }
+
+    /**
+     * Compiles <code>automaton</code> and returns an instance of the
+     * generated matcher or <code>null</code> if the automaton is too large.
+     */
+    static RegexBytecodeMatcher compile(RegexTableAutomaton automaton) {
+        try {
+            return new RegexBytecodeCompiler(automaton).compile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private RegexBytecodeMatcher compile() throws IOException {
+        String className = CLASS_PREFIX + classCounter.incrementAndGet();
+        int thisClass = addClass(className);
+        int superClass = addClass(SUPER_CLASS);
+        int superInit = addMethodRef(CONSTANT_METHODREF, superClass, "<init>",
+                "()V");
+        int charSequence = addClass("java/lang/CharSequence");
+        int length = addMethodRef(CONSTANT_INTERFACE_METHODREF, charSequence,
+                "length", "()I");
+        int charAt = addMethodRef(CONSTANT_INTERFACE_METHODREF, charSequence,
+                "charAt", "(I)C");
+        int initName = addUtf8("<init>");
+        int initType = addUtf8("()V");
+        int matchesName = addUtf8("matches");
+        int matchesType = addUtf8("(Ljava/lang/CharSequence;)Z");
+        int codeName = addUtf8("Code");
+
+        if (!generateMatches(length, charAt)) {
+            return null;
+        }
+
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(classBytes);
+
+        out.writeInt(0xcafebabe);
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(constantCount);
+        constantPool.flush();
+        constants.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(2);
+
+        /* public <init>() { super(); } */
+        byte[] init = new byte[] { ALOAD_0, (byte) INVOKESPECIAL,
+                (byte) (superInit >> 8), (byte) superInit, (byte) RETURN };
+        writeMethod(out, initName, initType, codeName, 1, 1, init);
+
+        code.flush();
+        writeMethod(out, matchesName, matchesType, codeName, 2, 5, codeBytes
+                .toByteArray());
+        out.writeShort(0);
+        out.flush();
+
+        byte[] bytes = classBytes.toByteArray();
+        Class<?> matcherClass = new MatcherClassLoader(
+                RegexBytecodeMatcher.class.getClassLoader()).define(className
+                .replace('/', '.'), bytes);
+
+        try {
+            return (RegexBytecodeMatcher) matcherClass.getConstructor()
+                    .newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Generates the code of matches(). The initial state follows the
+     * prologue, each state reads a character, jumps to the block of its
+     * target state or returns if the input is consumed.
+     * 
+     * @return false if the code is too large
+     */
+    private boolean generateMatches(int length, int charAt) throws IOException {
+        int[][] stateTable = automaton.getStateTable();
+        boolean[] finalStates = automaton.getFinalStates();
+        List<int[]> runs = automaton.getCharacterMap().getRuns();
+        int rejectLabel = newLabel();
+        int acceptLabel = newLabel();
+        int[] stateLabels = new int[stateTable.length];
+
+        if (automaton.getInitialState() == RegexCompiledAutomaton.REJECT_STATE) {
+            return false;
+        }
+
+        for (int s = 0; s < stateTable.length; s++) {
+            stateLabels[s] = newLabel();
+        }
+
+        /* int length = input.length(); int i = 0; */
+        code.writeByte(ALOAD_1);
+        code.writeByte(INVOKEINTERFACE);
+        code.writeShort(length);
+        code.writeByte(1);
+        code.writeByte(0);
+        code.writeByte(ISTORE_2);
+        code.writeByte(ICONST_0);
+        code.writeByte(ISTORE_3);
+
+        int initialState = automaton.getInitialState();
+        int[] order = new int[stateTable.length];
+        order[0] = initialState;
+
+        for (int s = 0, i = 1; s < stateTable.length; s++) {
+            if (s != initialState) {
+                order[i++] = s;
+            }
+        }
+
+        for (int s : order) {
+            placeLabel(stateLabels[s]);
+
+            /* if (i >= length) return final; */
+            code.writeByte(ILOAD_3);
+            code.writeByte(ILOAD_2);
+            branch(IF_ICMPGE, finalStates[s] ? acceptLabel : rejectLabel);
+
+            /* c = input.charAt(i++); */
+            code.writeByte(ALOAD_1);
+            code.writeByte(ILOAD_3);
+            code.writeByte(INVOKEINTERFACE);
+            code.writeShort(charAt);
+            code.writeByte(2);
+            code.writeByte(0);
+            code.writeByte(ISTORE);
+            code.writeByte(LOCAL_CHAR);
+            code.writeByte(IINC);
+            code.writeByte(3);
+            code.writeByte(1);
+
+            List<int[]> ranges = getRanges(stateTable[s], runs);
+            int[] targets = new int[ranges.size()];
+
+            for (int r = 0; r < targets.length; r++) {
+                int target = ranges.get(r)[1];
+                targets[r] = target == RegexCompiledAutomaton.REJECT_STATE ? rejectLabel
+                        : stateLabels[target];
+            }
+
+            generateSearch(ranges, targets, 0, ranges.size() - 1);
+
+            if (codeBytes.size() > MAX_CODE_SIZE) {
+                return false;
+            }
+        }
+
+        placeLabel(acceptLabel);
+        code.writeByte(ICONST_1);
+        code.writeByte(IRETURN);
+        placeLabel(rejectLabel);
+        code.writeByte(ICONST_0);
+        code.writeByte(IRETURN);
+
+        code.flush();
+
+        if (codeBytes.size() > MAX_CODE_SIZE) {
+            return false;
+        }
+
+        resolveBranches();
+
+        return true;
+    }
+
+    /**
+     * Returns the ranges of a row as arrays of first character and target
+     * state. Adjacent runs with the same target state are merged, the ranges
+     * cover all characters.
+     */
+    private static List<int[]> getRanges(int[] row, List<int[]> runs) {
+        List<int[]> ranges = new ArrayList<int[]>();
+
+        for (int[] run : runs) {
+            int target = row[run[2]];
+
+            if (ranges.isEmpty() || ranges.get(ranges.size() - 1)[1] != target) {
+                ranges.add(new int[] { run[0], target });
+            }
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Generates a binary search for the range which contains the character
+     * among the ranges <code>from</code> to <code>to</code> and a jump to
+     * the label of its target.
+     */
+    private void generateSearch(List<int[]> ranges, int[] targets, int from,
+            int to) throws IOException {
+        if (from == to) {
+            branch(GOTO, targets[from]);
+            return;
+        }
+
+        int middle = (from + to + 1) >>> 1;
+        int lowerLabel = newLabel();
+
+        /* if (c < first character of middle) goto lower half */
+        code.writeByte(ILOAD);
+        code.writeByte(LOCAL_CHAR);
+        pushInt(ranges.get(middle)[0]);
+        branch(IF_ICMPLT, lowerLabel);
+        generateSearch(ranges, targets, middle, to);
+        placeLabel(lowerLabel);
+        generateSearch(ranges, targets, from, middle - 1);
+    }
+
+    private void pushInt(int value) throws IOException {
+        if (value <= Short.MAX_VALUE) {
+            code.writeByte(SIPUSH);
+            code.writeShort(value);
+        } else {
+            code.writeByte(LDC_W);
+            code.writeShort(addInteger(value));
+        }
+    }
+
+    private int newLabel() {
+        labels.add(-1);
+        return labels.size() - 1;
+    }
+
+    private void placeLabel(int label) throws IOException {
+        code.flush();
+        labels.set(label, codeBytes.size());
+    }
+
+    private void branch(int opcode, int label) throws IOException {
+        code.flush();
+        branches.add(new int[] { codeBytes.size(), label });
+        code.writeByte(opcode);
+        code.writeShort(0);
+    }
+
+    private void resolveBranches() throws IOException {
+        byte[] bytes = codeBytes.toByteArray();
+
+        for (int[] branch : branches) {
+            int offset = labels.get(branch[1]) - branch[0];
+            bytes[branch[0] + 1] = (byte) (offset >> 8);
+            bytes[branch[0] + 2] = (byte) offset;
+        }
+
+        codeBytes.reset();
+        codeBytes.write(bytes);
+    }
+
+    private void writeMethod(DataOutputStream out, int name, int type,
+            int codeName, int maxStack, int maxLocals, byte[] bytes)
+            throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + bytes.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private int addUtf8(String value) throws IOException {
+        constantPool.writeByte(CONSTANT_UTF8);
+        constantPool.writeUTF(value);
+        return constantCount++;
+    }
+
+    private int addClass(String name) throws IOException {
+        int utf8 = addUtf8(name);
+        constantPool.writeByte(CONSTANT_CLASS);
+        constantPool.writeShort(utf8);
+        return constantCount++;
+    }
+
+    private int addMethodRef(int tag, int owner, String name, String type)
+            throws IOException {
+        int nameIndex = addUtf8(name);
+        int typeIndex = addUtf8(type);
+        constantPool.writeByte(CONSTANT_NAME_AND_TYPE);
+        constantPool.writeShort(nameIndex);
+        constantPool.writeShort(typeIndex);
+        int nameAndType = constantCount++;
+        constantPool.writeByte(tag);
+        constantPool.writeShort(owner);
+        constantPool.writeShort(nameAndType);
+        return constantCount++;
+    }
+
+    private int addInteger(int value) throws IOException {
+        Integer index = integerConstants.get(value);
+
+        if (index == null) {
+            constantPool.writeByte(CONSTANT_INTEGER);
+            constantPool.writeInt(value);
+            index = constantCount++;
+            integerConstants.put(value, index);
+        }
+
+        return index;
+    }
+
+    private static class MatcherClassLoader extends ClassLoader {
+
+        MatcherClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+    }
+
+}
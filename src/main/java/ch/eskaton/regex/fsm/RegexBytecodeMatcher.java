@@ -26,12 +26,18 @@
  */
 package ch.eskaton.regex.fsm;
 
-import ch.eskaton.regex.parser.RegexCharacterClass;
-
-public class RegexCharacterComplementEvent extends RegexCharacterEvent {
+/**
+ * Base class of the matchers which {@link RegexBytecodeCompiler} generates
+ * for a {@link RegexTableAutomaton}.
+ */
+public abstract class RegexBytecodeMatcher {
 
-    public RegexCharacterComplementEvent(RegexCharacterClass charClass) {
-        super(charClass);
+    protected RegexBytecodeMatcher() {
     }
 
+    /**
+     * Checks whether the automaton accepts the whole <code>input</code>.
+     */
+    public abstract boolean matches(CharSequence input);
+
 }
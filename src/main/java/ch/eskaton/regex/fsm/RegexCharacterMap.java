@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps characters to the columns of the state table of an automaton.
+ * <p>
+ * The map is organised as a two-level page table. The high byte of a
+ * character selects a page, the low byte the column within this page. Pages
+ * with the same content are shared, so an automaton which distinguishes only
+ * a few character ranges needs only a few pages.
+ * <p>
+ * Supplementary characters are read as surrogate pairs. The state reached
+ * by a high surrogate maps the low surrogates to their targets, so together
+ * with the page table of the surrogates it forms a further level of the
+ * table for characters above U+FFFF.
+ */
+public class RegexCharacterMap {
+
+    static final int PAGE_BITS = 8;
+
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    static final int PAGE_COUNT = (Character.MAX_VALUE + 1) >>> PAGE_BITS;
+
+    private int[][] pages = new int[PAGE_COUNT][];
+
+    private boolean[] writable = new boolean[PAGE_COUNT];
+
+    /**
+     * Creates a map which maps all characters to <code>defaultColumn</code>.
+     */
+    public RegexCharacterMap(int defaultColumn) {
+        int[] page = new int[PAGE_SIZE];
+
+        Arrays.fill(page, defaultColumn);
+        Arrays.fill(pages, page);
+    }
+
+    /**
+     * Maps all characters in the range <code>from</code> to <code>to</code>
+     * to <code>column</code>.
+     */
+    void put(char from, char to, int column) {
+        for (int c = from; c <= to;) {
+            int p = c >>> PAGE_BITS;
+            int end = Math.min(to, (p << PAGE_BITS) | PAGE_MASK);
+
+            if (!writable[p]) {
+                pages[p] = pages[p].clone();
+                writable[p] = true;
+            }
+
+            Arrays.fill(pages[p], c & PAGE_MASK, (end & PAGE_MASK) + 1, column);
+            c = end + 1;
+        }
+    }
+
+    /**
+     * Shares pages with identical content. Must be called after the last
+     * call to {@link #put(char, char, int)}.
+     */
+    void compact() {
+        Map<Integer, List<int[]>> distinctPages = new HashMap<Integer, List<int[]>>();
+
+        for (int p = 0; p < PAGE_COUNT; p++) {
+            if (!writable[p]) {
+                continue; // still the shared default page
+            }
+
+            Integer hash = Arrays.hashCode(pages[p]);
+            List<int[]> candidates = distinctPages.get(hash);
+
+            if (candidates == null) {
+                candidates = new ArrayList<int[]>();
+                distinctPages.put(hash, candidates);
+            }
+
+            int[] shared = null;
+
+            for (int[] candidate : candidates) {
+                if (Arrays.equals(candidate, pages[p])) {
+                    shared = candidate;
+                    break;
+                }
+            }
+
+            if (shared == null) {
+                candidates.add(pages[p]);
+            } else {
+                pages[p] = shared;
+            }
+        }
+
+        writable = null;
+    }
+
+    /**
+     * Returns the page of the characters whose high byte is <code>page</code>.
+     * Shared pages are the same array.
+     */
+    int[] getPage(int page) {
+        return pages[page];
+    }
+
+    /**
+     * Returns the ranges of characters which are mapped to the same column,
+     * as arrays of first character, last character and column, ordered by
+     * the first character.
+     */
+    List<int[]> getRuns() {
+        List<int[]> runs = new ArrayList<int[]>();
+        int[] run = null;
+
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            int column = getColumn((char) c);
+
+            if (run != null && run[2] == column) {
+                run[1] = c;
+            } else {
+                run = new int[] { c, c, column };
+                runs.add(run);
+            }
+        }
+
+        return runs;
+    }
+
+    /**
+     * Returns the column of the state table for character <code>c</code>.
+     */
+    public int getColumn(char c) {
+        return pages[c >>> PAGE_BITS][c & PAGE_MASK];
+    }
+
+}
@@ -0,0 +1,292 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.nio.CharBuffer;
+
+/**
+ * A compiled deterministic automaton.
+ * <p>
+ * An instance may be shared by multiple threads. The state of a match is
+ * kept in a {@link RegexMatcher}, which is cheap to create and must not be
+ * shared.
+ */
+public abstract class RegexCompiledAutomaton {
+
+    /** State number of the reject state */
+    public static final int REJECT_STATE = -1;
+
+    /**
+     * Returned by {@link #getNextState(int, char)} and
+     * {@link #getInitialState()} if the automaton can't represent the state
+     * by a number. The matcher then continues by simulating the NFA, see
+     * {@link #createSimulator()}.
+     */
+    static final int OVERFLOW_STATE = -2;
+
+    /** Automata used by searchers, see {@link RegexSearcher} */
+    private RegexCompiledAutomaton forwardSearchAutomaton;
+
+    private RegexCompiledAutomaton reverseSearchAutomaton;
+
+    /** Creates the search automata, null if there is none */
+    private RegexSearchAutomataFactory searchAutomataFactory;
+
+    /** Whether {@link #createSearchAutomata()} has been called */
+    private boolean searchAutomataCreated;
+
+    /** Literals of the accepted inputs, checked before the automaton runs */
+    private RegexPrefilter prefilter = RegexPrefilter.NONE;
+
+    public abstract int getInitialState();
+
+    /**
+     * Returns the number of states of the automaton.
+     */
+    public abstract int getStateCount();
+
+    /**
+     * Returns the state reached from <code>state</code> with character
+     * <code>c</code> or {@link #REJECT_STATE}.
+     */
+    public abstract int getNextState(int state, char c);
+
+    public abstract boolean isFinalState(int state);
+
+    /**
+     * Returns the object connected with the final state <code>state</code>
+     * or <code>null</code> if <code>state</code> isn't a final state.
+     */
+    public abstract Object getAcceptObject(int state);
+
+    /**
+     * Creates a simulator of the NFA of this automaton, which is used by a
+     * matcher if the automaton returns {@link #OVERFLOW_STATE}.
+     * 
+     * @throws UnsupportedOperationException
+     *             if the automaton never returns {@link #OVERFLOW_STATE}
+     */
+    RegexNfaSimulator createSimulator() {
+        throw new UnsupportedOperationException(
+                "automaton doesn't simulate an NFA");
+    }
+
+    /**
+     * Returns the set of NFA states of <code>state</code>, where the
+     * simulation continues if the next state is {@link #OVERFLOW_STATE}.
+     * 
+     * @throws UnsupportedOperationException
+     *             if the automaton never returns {@link #OVERFLOW_STATE}
+     */
+    int[] getStateSet(int state) {
+        throw new UnsupportedOperationException(
+                "automaton doesn't simulate an NFA");
+    }
+
+    /**
+     * Returns the state which consists of the current set of
+     * <code>simulator</code>, {@link #REJECT_STATE} if the set is empty or
+     * {@link #OVERFLOW_STATE} if the simulation has to continue.
+     */
+    int getState(RegexNfaSimulator simulator) {
+        return simulator.isEmpty() ? REJECT_STATE : OVERFLOW_STATE;
+    }
+
+    /**
+     * Creates a new matcher which runs this automaton.
+     */
+    public RegexMatcher matcher() {
+        return new RegexMatcher(this);
+    }
+
+    /**
+     * Checks for each input whether the automaton accepts it and stores the
+     * result in <code>results</code> at the same index.
+     * 
+     * @throws IllegalArgumentException
+     *             if <code>results</code> is shorter than
+     *             <code>inputs</code>
+     */
+    public void matchAll(CharSequence[] inputs, boolean[] results) {
+        checkResults(inputs.length, results);
+
+        RegexMatcher matcher = matcher();
+
+        for (int i = 0; i < inputs.length; i++) {
+            results[i] = prefilter.accepts(inputs[i])
+                    && matcher.matches(inputs[i]);
+        }
+    }
+
+    /**
+     * Checks for each input in <code>buffer</code> whether the automaton
+     * accepts it and stores the result in <code>results</code>. Input
+     * <code>i</code> consists of the characters from
+     * <code>offsets[i]</code> inclusive to <code>offsets[i + 1]</code>
+     * exclusive, so there are <code>offsets.length - 1</code> inputs.
+     * 
+     * @throws IllegalArgumentException
+     *             if <code>results</code> is too short or the offsets are
+     *             invalid
+     */
+    public void matchAll(char[] buffer, int[] offsets, boolean[] results) {
+        checkOffsets(buffer, offsets, results);
+
+        RegexMatcher matcher = matcher();
+
+        for (int i = 0; i < offsets.length - 1; i++) {
+            if (!prefilterAccepts(buffer, offsets[i], offsets[i + 1])) {
+                results[i] = false;
+                continue;
+            }
+
+            matcher.reset();
+
+            for (int j = offsets[i]; j < offsets[i + 1] && !matcher.rejects(); j++) {
+                matcher.processEvent(buffer[j]);
+            }
+
+            results[i] = matcher.accepts();
+        }
+    }
+
+    /**
+     * Checks the prefilter on the characters of <code>buffer</code> from
+     * <code>from</code> inclusive to <code>to</code> exclusive.
+     */
+    boolean prefilterAccepts(char[] buffer, int from, int to) {
+        return prefilter == RegexPrefilter.NONE
+                || prefilter.accepts(CharBuffer.wrap(buffer, from, to - from));
+    }
+
+    static void checkResults(int inputs, boolean[] results) {
+        if (results.length < inputs) {
+            throw new IllegalArgumentException("results too short for "
+                    + inputs + " inputs");
+        }
+    }
+
+    static void checkOffsets(char[] buffer, int[] offsets, boolean[] results) {
+        if (offsets.length == 0) {
+            throw new IllegalArgumentException("offsets are empty");
+        }
+
+        checkResults(offsets.length - 1, results);
+
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] < 0 || offsets[i] > buffer.length
+                    || (i > 0 && offsets[i] < offsets[i - 1])) {
+                throw new IllegalArgumentException("invalid offset "
+                        + offsets[i] + " at index " + i);
+            }
+        }
+    }
+
+    /**
+     * Creates a new searcher which finds the parts of <code>input</code>
+     * accepted by this automaton. The search automata are created by the
+     * first searcher.
+     * 
+     * @throws UnsupportedOperationException
+     *             if the automaton has no search automata
+     */
+    public RegexSearcher searcher(CharSequence input) {
+        RegexCompiledAutomaton forward;
+        RegexCompiledAutomaton reverse;
+
+        synchronized (this) {
+            if (!searchAutomataCreated) {
+                createSearchAutomata();
+                searchAutomataCreated = true;
+            }
+
+            forward = forwardSearchAutomaton;
+            reverse = reverseSearchAutomaton;
+        }
+
+        if (forward == null) {
+            throw new UnsupportedOperationException(
+                    "automaton doesn't support searching");
+        }
+
+        return new RegexSearcher(this, forward, reverse, prefilter, input);
+    }
+
+    /**
+     * Creates the search automata with the factory set by
+     * {@link #setSearchAutomataFactory(RegexSearchAutomataFactory)}, if
+     * any. Called while holding the lock of the automaton.
+     */
+    void createSearchAutomata() {
+        if (searchAutomataFactory != null) {
+            searchAutomataFactory.create(this);
+            searchAutomataFactory = null;
+        }
+    }
+
+    /**
+     * Returns the literals which every accepted input contains.
+     * {@link #matches(CharSequence)} and searchers check them before they
+     * run the automaton.
+     */
+    public RegexPrefilter getPrefilter() {
+        return prefilter;
+    }
+
+    void setPrefilter(RegexPrefilter prefilter) {
+        this.prefilter = prefilter;
+    }
+
+    /**
+     * Sets the factory which creates the search automata when the first
+     * searcher is created.
+     */
+    synchronized void setSearchAutomataFactory(
+            RegexSearchAutomataFactory searchAutomataFactory) {
+        this.searchAutomataFactory = searchAutomataFactory;
+    }
+
+    /**
+     * Sets the automata used by searchers. The forward automaton must accept
+     * every input which ends with a string accepted by this automaton, the
+     * reverse automaton every reversed input which ends with a reversed
+     * string accepted by this automaton.
+     */
+    void setSearchAutomata(RegexCompiledAutomaton forwardSearchAutomaton,
+            RegexCompiledAutomaton reverseSearchAutomaton) {
+        this.forwardSearchAutomaton = forwardSearchAutomaton;
+        this.reverseSearchAutomaton = reverseSearchAutomaton;
+    }
+
+    /**
+     * Checks whether the automaton accepts the whole <code>input</code>.
+     */
+    public boolean matches(CharSequence input) {
+        return prefilter.accepts(input) && matcher().matches(input);
+    }
+
+}
@@ -26,6 +26,7 @@
  */
 package ch.eskaton.regex.fsm;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -77,14 +78,26 @@ public class RegexCompoundState extends RegexState {
         return acceptingStates;
     }
 
+    /**
+     * Creates the id from the sorted ids of the states, so that equal sets
+     * of states get the same id.
+     */
     private void updateCompoundId() {
         StringBuilder sb = new StringBuilder();
+        int[] ids = new int[states.size()];
+        int i = 0;
 
         for (RegexState s : states) {
+            ids[i++] = s.getId();
+        }
+
+        Arrays.sort(ids);
+
+        for (int id : ids) {
             if (sb.length() > 0) {
                 sb.append("-");
             }
-            sb.append(s.getId());
+            sb.append(id);
         }
 
         compoundId = sb.toString();
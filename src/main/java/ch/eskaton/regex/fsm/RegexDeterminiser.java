@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Converts a {@link RegexNfa} to a deterministic automaton with the subset
+ * construction.
+ * <p>
+ * A state of the deterministic automaton is identified by the sorted numbers
+ * of the states of the NFA it consists of. The sets are numbered by a
+ * {@link RegexStateSetTable}, so equal sets always map to the same state.
+ * States are numbered in the order they are discovered, starting with 0 for
+ * the initial state, and the list of states is used as work list.
+ */
+class RegexDeterminiser {
+
+    private RegexNfa nfa;
+
+    private RegexStateSetTable stateSets = new RegexStateSetTable();
+
+    private int[][] transitionEvents = new int[16][];
+
+    private int[][] transitionTargets = new int[16][];
+
+    RegexDeterminiser(RegexNfa nfa) {
+        this.nfa = nfa;
+    }
+
+    /**
+     * Runs the subset construction starting with the set of NFA states
+     * <code>initialSet</code>.
+     */
+    public void determinise(int[] initialSet) {
+        determinise(initialSet, 0);
+    }
+
+    /**
+     * Runs the subset construction starting with the set of NFA states
+     * <code>initialSet</code>, but gives up as soon as the automaton has
+     * more than <code>maxStates</code> states. A value of 0 doesn't limit
+     * the number of states.
+     * 
+     * @return false if the construction has been given up
+     */
+    public boolean determinise(int[] initialSet, int maxStates) {
+        int eventCount = nfa.getEventCount();
+        BitSet[] targets = new BitSet[eventCount];
+        int[] touched = new int[eventCount];
+
+        stateSets.add(initialSet);
+
+        for (int d = 0; d < stateSets.size(); d++) {
+            int touchedCount = 0;
+
+            for (int s : stateSets.getSet(d)) {
+                int[] events = nfa.getTransitionEvents(s);
+                int[] stateTargets = nfa.getTransitionTargets(s);
+
+                for (int i = 0; i < events.length; i++) {
+                    BitSet set = targets[events[i]];
+
+                    if (set == null) {
+                        set = targets[events[i]] = new BitSet();
+                    }
+
+                    if (set.isEmpty()) {
+                        touched[touchedCount++] = events[i];
+                    }
+
+                    set.set(stateTargets[i]);
+                }
+            }
+
+            Arrays.sort(touched, 0, touchedCount);
+
+            int[] events = new int[touchedCount];
+            int[] stateTargets = new int[touchedCount];
+
+            for (int i = 0; i < touchedCount; i++) {
+                BitSet set = targets[touched[i]];
+                events[i] = touched[i];
+                stateTargets[i] = stateSets.add(RegexStateSetTable
+                        .toArray(set));
+                set.clear();
+            }
+
+            if (d == transitionEvents.length) {
+                transitionEvents = copyOf(transitionEvents, d * 2);
+                transitionTargets = copyOf(transitionTargets, d * 2);
+            }
+
+            transitionEvents[d] = events;
+            transitionTargets[d] = stateTargets;
+
+            if (maxStates > 0 && stateSets.size() > maxStates) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public int getStateCount() {
+        return stateSets.size();
+    }
+
+    /**
+     * Returns the sorted numbers of the NFA states of state <code>state</code>.
+     */
+    public int[] getStateSet(int state) {
+        return stateSets.getSet(state);
+    }
+
+    public int[] getTransitionEvents(int state) {
+        return transitionEvents[state];
+    }
+
+    public int[] getTransitionTargets(int state) {
+        return transitionTargets[state];
+    }
+
+    private static int[][] copyOf(int[][] array, int length) {
+        int[][] copy = new int[length][];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+}
@@ -0,0 +1,406 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.BitSet;
+
+/**
+ * A deterministic automaton whose states are constructed on demand.
+ * <p>
+ * The automaton starts with the initial state only. A state and its row of
+ * the state table are constructed from the NFA when the input reaches the
+ * state for the first time. At most <code>maxStates</code> states are
+ * cached. If the cache is full, a transition to a state which isn't cached
+ * yields {@link RegexCompiledAutomaton#OVERFLOW_STATE} and the
+ * {@link RegexMatcher} continues with a {@link RegexNfaSimulator} until it
+ * reaches a cached state again.
+ * <p>
+ * Transitions which have already been computed are read without locking.
+ * New transitions are computed while holding the lock of the automaton.
+ * Once the cache is full it doesn't change anymore: transitions to states
+ * which aren't cached are recorded as overflows too, and the cached state a
+ * simulation returns to is looked up in an index of the final sets of NFA
+ * states. Thus threads which simulate the NFA neither lock the automaton
+ * nor allocate memory per character.
+ */
+public class RegexLazyAutomaton extends RegexCompiledAutomaton {
+
+    /** Marks a transition which hasn't been computed yet */
+    private static final int UNKNOWN = 0;
+
+    /**
+     * Offset of the target states in the rows, so that 0 means UNKNOWN and
+     * {@link RegexCompiledAutomaton#OVERFLOW_STATE} can be recorded too
+     */
+    private static final int OFFSET = 3;
+
+    private final RegexNfa nfa;
+
+    private final RegexCharacterMap charMap;
+
+    /** Column of each event of the NFA */
+    private final int[] eventColumns;
+
+    private final int columns;
+
+    private final int maxStates;
+
+    /** Set of NFA states of the initial state */
+    private final int[] initialSet;
+
+    /** Whether the initial set is added to every state */
+    private final boolean unanchored;
+
+    /** Sets of NFA states of the cached states, guarded by this */
+    private final RegexStateSetTable stateSets = new RegexStateSetTable();
+
+    /** Cached states. The array is replaced if it grows. */
+    private volatile LazyState[] states = new LazyState[16];
+
+    /** Index of the cached sets, null until the cache is full */
+    private volatile SetIndex fullIndex;
+
+    RegexLazyAutomaton(RegexNfa nfa, RegexCharacterMap charMap,
+            int[] eventColumns, int columns, int maxStates) {
+        this(nfa, charMap, eventColumns, columns, maxStates, new int[] { 0 },
+                false);
+    }
+
+    /**
+     * Creates an automaton which starts in the set of NFA states
+     * <code>initialSet</code>. If <code>unanchored</code> is true, the
+     * initial set is added to every state, so that the automaton accepts
+     * every input which ends with a string accepted by the NFA.
+     */
+    RegexLazyAutomaton(RegexNfa nfa, RegexCharacterMap charMap,
+            int[] eventColumns, int columns, int maxStates, int[] initialSet,
+            boolean unanchored) {
+        this.nfa = nfa;
+        this.charMap = charMap;
+        this.eventColumns = eventColumns;
+        this.columns = columns;
+        this.maxStates = maxStates;
+        this.initialSet = initialSet;
+        this.unanchored = unanchored;
+
+        synchronized (this) {
+            addState(initialSet);
+        }
+    }
+
+    @Override
+    public int getInitialState() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of states constructed so far.
+     */
+    @Override
+    public synchronized int getStateCount() {
+        return stateSets.size();
+    }
+
+    public int getMaxStateCount() {
+        return maxStates;
+    }
+
+    @Override
+    public int getNextState(int state, char c) {
+        if (state == REJECT_STATE) {
+            return REJECT_STATE;
+        }
+
+        int column = charMap.getColumn(c);
+        LazyState[] cached = states;
+
+        if (state < cached.length && cached[state] != null) {
+            int target = cached[state].row[column];
+
+            if (target != UNKNOWN) {
+                return target - OFFSET;
+            }
+        }
+
+        return computeNextState(state, column);
+    }
+
+    @Override
+    public boolean isFinalState(int state) {
+        return state != REJECT_STATE && getState(state).finalState;
+    }
+
+    @Override
+    public Object getAcceptObject(int state) {
+        if (state == REJECT_STATE) {
+            return null;
+        }
+
+        return getState(state).acceptObject;
+    }
+
+    /**
+     * Returns the states constructed so far as state table, see
+     * {@link RegexStateMachine#getStateTable()}.
+     */
+    public synchronized int[][] getStateTable() {
+        int[][] table = new int[stateSets.size()][columns];
+
+        for (int s = 0; s < table.length; s++) {
+            for (int c = 0; c < columns; c++) {
+                int target = states[s].row[c];
+
+                table[s][c] = target == UNKNOWN ? OVERFLOW_STATE : target
+                        - OFFSET;
+            }
+        }
+
+        return table;
+    }
+
+    @Override
+    RegexNfaSimulator createSimulator() {
+        return new RegexNfaSimulator(nfa, charMap, eventColumns, initialSet,
+                unanchored);
+    }
+
+    /**
+     * Returns the set of NFA states of the cached state <code>state</code>.
+     */
+    @Override
+    int[] getStateSet(int state) {
+        SetIndex index = fullIndex;
+
+        if (index != null) {
+            return index.sets[state];
+        }
+
+        synchronized (this) {
+            return stateSets.getSet(state);
+        }
+    }
+
+    /**
+     * Returns the cached state which consists of the current set of
+     * <code>simulator</code>, {@link #REJECT_STATE} if the set is empty or
+     * {@link #OVERFLOW_STATE} if the state isn't cached.
+     */
+    @Override
+    int getState(RegexNfaSimulator simulator) {
+        if (simulator.isEmpty()) {
+            return REJECT_STATE;
+        }
+
+        SetIndex index = fullIndex;
+
+        if (index != null) {
+            return index.get(simulator);
+        }
+
+        int[] set = simulator.toSortedArray();
+
+        synchronized (this) {
+            int state = stateSets.get(set);
+
+            return state == -1 ? OVERFLOW_STATE : state;
+        }
+    }
+
+    private LazyState getState(int state) {
+        LazyState[] cached = states;
+
+        if (state < cached.length && cached[state] != null) {
+            return cached[state];
+        }
+
+        synchronized (this) {
+            return states[state];
+        }
+    }
+
+    private synchronized int computeNextState(int state, int column) {
+        LazyState lazyState = states[state];
+        int target = lazyState.row[column];
+
+        if (target != UNKNOWN) {
+            return target - OFFSET;
+        }
+
+        int[] set = step(stateSets.getSet(state), column);
+
+        if (set.length == 0) {
+            target = REJECT_STATE;
+        } else {
+            target = stateSets.get(set);
+
+            if (target == -1) {
+                if (stateSets.size() >= maxStates) {
+                    /* the cache doesn't change anymore */
+                    lazyState.row[column] = OVERFLOW_STATE + OFFSET;
+                    return OVERFLOW_STATE;
+                }
+
+                target = addState(set);
+            }
+        }
+
+        lazyState.row[column] = target + OFFSET;
+
+        return target;
+    }
+
+    /**
+     * Computes the set of NFA states reached from <code>set</code> with
+     * a character of column <code>column</code>. An unanchored automaton
+     * adds the initial set to the result.
+     */
+    private int[] step(int[] set, int column) {
+        BitSet targets = new BitSet();
+
+        for (int s : set) {
+            int[] events = nfa.getTransitionEvents(s);
+            int[] stateTargets = nfa.getTransitionTargets(s);
+
+            for (int i = 0; i < events.length; i++) {
+                if (eventColumns[events[i]] == column) {
+                    targets.set(stateTargets[i]);
+                }
+            }
+        }
+
+        if (unanchored) {
+            for (int s : initialSet) {
+                targets.set(s);
+            }
+        }
+
+        return RegexStateSetTable.toArray(targets);
+    }
+
+    private int addState(int[] set) {
+        int state = stateSets.add(set);
+        boolean finalState = nfa.isFinalStateSet(set);
+        LazyState lazyState = new LazyState(finalState, finalState ? nfa
+                .getAcceptObject(set) : null, new int[columns]);
+
+        if (state < states.length) {
+            states[state] = lazyState;
+        } else {
+            LazyState[] newStates = new LazyState[states.length * 2];
+            System.arraycopy(states, 0, newStates, 0, states.length);
+            newStates[state] = lazyState;
+            states = newStates;
+        }
+
+        if (stateSets.size() >= maxStates) {
+            fullIndex = new SetIndex(stateSets);
+        }
+
+        return state;
+    }
+
+    /**
+     * Immutable index of the sets of NFA states of a full cache. The hash
+     * codes don't depend on the order of the states, so the current set of
+     * a simulator can be looked up without sorting it.
+     */
+    private static class SetIndex {
+
+        final int[][] sets;
+
+        final int[] hashes;
+
+        /** Numbers of the sets + 1, 0 denotes an empty slot */
+        final int[] slots;
+
+        SetIndex(RegexStateSetTable table) {
+            int count = table.size();
+            int length = 2;
+
+            while (length < count * 2) {
+                length *= 2;
+            }
+
+            sets = new int[count][];
+            hashes = new int[count];
+            slots = new int[length];
+
+            for (int number = 0; number < count; number++) {
+                sets[number] = table.getSet(number);
+                hashes[number] = RegexNfaSimulator.hashCode(sets[number]);
+
+                int i = hashes[number] & (length - 1);
+
+                while (slots[i] != 0) {
+                    i = (i + 1) & (length - 1);
+                }
+
+                slots[i] = number + 1;
+            }
+        }
+
+        /**
+         * Returns the number of the current set of <code>simulator</code>
+         * or {@link RegexCompiledAutomaton#OVERFLOW_STATE} if the set isn't
+         * cached.
+         */
+        int get(RegexNfaSimulator simulator) {
+            int hash = simulator.setHashCode();
+            int mask = slots.length - 1;
+
+            for (int i = hash & mask; slots[i] != 0; i = (i + 1) & mask) {
+                int number = slots[i] - 1;
+
+                if (hashes[number] == hash
+                        && simulator.equalsSet(sets[number])) {
+                    return number;
+                }
+            }
+
+            return OVERFLOW_STATE;
+        }
+
+    }
+
+    private static class LazyState {
+
+        final boolean finalState;
+
+        final Object acceptObject;
+
+        /** Target states + OFFSET, UNKNOWN if not computed yet */
+        final int[] row;
+
+        LazyState(boolean finalState, Object acceptObject, int[] row) {
+            this.finalState = finalState;
+            this.acceptObject = acceptObject;
+            this.row = row;
+        }
+
+    }
+
+}
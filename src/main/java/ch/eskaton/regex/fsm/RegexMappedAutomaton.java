@@ -0,0 +1,352 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A deterministic automaton which runs directly on its precompiled binary
+ * representation.
+ * <p>
+ * A {@link RegexTableAutomaton} is written with
+ * {@link #write(RegexTableAutomaton, OutputStream)} and loaded with
+ * {@link #load(File, Object[])}, which maps the file into memory instead of
+ * reading it. The tables are never copied to the heap, so loading takes
+ * constant time and JVMs which load the same file share its pages.
+ * <p>
+ * The format consists of big-endian 32 bit integers:
+ * <ol>
+ * <li>Header: magic number, version, number of states, number of columns,
+ * initial state, number of distinct pages of the character map, number of
+ * accept objects.</li>
+ * <li>Page index of the character map, 256 page numbers.</li>
+ * <li>Pages of the character map, 256 columns each.</li>
+ * <li>State table, one row per state, {@link #REJECT_STATE} for rejecting
+ * transitions.</li>
+ * <li>Accept object index per state, -1 for states which aren't final.</li>
+ * <li>Names of the accept objects, the length followed by the UTF-16 code
+ * units, or -1 for <code>null</code>.</li>
+ * </ol>
+ * Accept objects are stored as indices. The objects themselves are supplied
+ * when the automaton is loaded, by default their names are used.
+ * <p>
+ * The contents of the file aren't validated beyond the header. A corrupt
+ * file may yield wrong results or an {@link IndexOutOfBoundsException}.
+ */
+public class RegexMappedAutomaton extends RegexCompiledAutomaton {
+
+    /** "RGXA" */
+    static final int MAGIC = 0x52475841;
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 7 * 4;
+
+    private final ByteBuffer buffer;
+
+    private final int stateCount;
+
+    private final int columns;
+
+    private final int initialState;
+
+    private final int pagesOffset;
+
+    private final int tableOffset;
+
+    private final int acceptOffset;
+
+    private final Object[] acceptObjects;
+
+    /**
+     * Creates an automaton which runs on <code>buffer</code>, starting at
+     * its position.
+     * 
+     * @param acceptObjects
+     *            the objects by their index or <code>null</code> to use the
+     *            stored names
+     * @throws IOException
+     *             if the buffer doesn't contain an automaton of a known
+     *             version
+     */
+    public RegexMappedAutomaton(ByteBuffer buffer, Object[] acceptObjects)
+            throws IOException {
+        ByteBuffer data = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+
+        if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("not a precompiled automaton");
+        }
+
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("unsupported version " + data.getInt(4));
+        }
+
+        stateCount = data.getInt(8);
+        columns = data.getInt(12);
+        initialState = data.getInt(16);
+
+        int pageCount = data.getInt(20);
+        int acceptCount = data.getInt(24);
+
+        pagesOffset = HEADER_SIZE + RegexCharacterMap.PAGE_COUNT * 4;
+        tableOffset = pagesOffset + pageCount * RegexCharacterMap.PAGE_SIZE
+                * 4;
+        acceptOffset = tableOffset + stateCount * columns * 4;
+
+        if (data.remaining() < acceptOffset + stateCount * 4) {
+            throw new IOException("truncated precompiled automaton");
+        }
+
+        if (acceptObjects == null) {
+            acceptObjects = readNames(data, acceptOffset + stateCount * 4,
+                    acceptCount);
+        } else if (acceptObjects.length < acceptCount) {
+            throw new IllegalArgumentException("automaton needs "
+                    + acceptCount + " accept objects");
+        }
+
+        this.buffer = data;
+        this.acceptObjects = acceptObjects;
+    }
+
+    /**
+     * Maps <code>file</code> into memory and creates an automaton which
+     * runs on it.
+     * 
+     * @see #RegexMappedAutomaton(ByteBuffer, Object[])
+     */
+    public static RegexMappedAutomaton load(File file, Object[] acceptObjects)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+
+            return new RegexMappedAutomaton(channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    acceptObjects);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes <code>automaton</code> to <code>out</code>.
+     * 
+     * @return the accept objects by their index in the written automaton
+     */
+    public static Object[] write(RegexTableAutomaton automaton,
+            OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        RegexCharacterMap charMap = automaton.getCharacterMap();
+        int[][] stateTable = automaton.getStateTable();
+        boolean[] finalStates = automaton.getFinalStates();
+        Object[] objects = automaton.getAcceptObjects();
+        int columns = stateTable.length > 0 ? stateTable[0].length : 0;
+
+        Map<int[], Integer> pageNumbers = new IdentityHashMap<int[], Integer>();
+        List<int[]> pages = new ArrayList<int[]>();
+        int[] pageIndex = new int[RegexCharacterMap.PAGE_COUNT];
+
+        for (int p = 0; p < pageIndex.length; p++) {
+            int[] page = charMap.getPage(p);
+            Integer number = pageNumbers.get(page);
+
+            if (number == null) {
+                number = pages.size();
+                pageNumbers.put(page, number);
+                pages.add(page);
+            }
+
+            pageIndex[p] = number;
+        }
+
+        Map<Object, Integer> acceptNumbers = new HashMap<Object, Integer>();
+        List<Object> acceptObjects = new ArrayList<Object>();
+        int[] acceptIndex = new int[stateTable.length];
+
+        for (int s = 0; s < stateTable.length; s++) {
+            acceptIndex[s] = -1;
+
+            if (finalStates[s]) {
+                Integer number = acceptNumbers.get(objects[s]);
+
+                if (number == null) {
+                    number = acceptObjects.size();
+                    acceptNumbers.put(objects[s], number);
+                    acceptObjects.add(objects[s]);
+                }
+
+                acceptIndex[s] = number;
+            }
+        }
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(stateTable.length);
+        data.writeInt(columns);
+        data.writeInt(automaton.getInitialState());
+        data.writeInt(pages.size());
+        data.writeInt(acceptObjects.size());
+
+        for (int number : pageIndex) {
+            data.writeInt(number);
+        }
+
+        for (int[] page : pages) {
+            for (int column : page) {
+                data.writeInt(column);
+            }
+        }
+
+        for (int[] row : stateTable) {
+            for (int target : row) {
+                data.writeInt(target);
+            }
+        }
+
+        for (int number : acceptIndex) {
+            data.writeInt(number);
+        }
+
+        for (Object object : acceptObjects) {
+            if (object == null) {
+                data.writeInt(-1);
+            } else {
+                String name = object.toString();
+                data.writeInt(name.length());
+                data.writeChars(name);
+            }
+        }
+
+        data.flush();
+
+        return acceptObjects.toArray();
+    }
+
+    @Override
+    public int getInitialState() {
+        return initialState;
+    }
+
+    @Override
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int getNextState(int state, char c) {
+        if (state == REJECT_STATE) {
+            return REJECT_STATE;
+        }
+
+        return buffer.getInt(tableOffset + (state * columns + getColumn(c))
+                * 4);
+    }
+
+    @Override
+    public boolean isFinalState(int state) {
+        return state != REJECT_STATE
+                && buffer.getInt(acceptOffset + state * 4) != -1;
+    }
+
+    @Override
+    public Object getAcceptObject(int state) {
+        if (state == REJECT_STATE) {
+            return null;
+        }
+
+        int index = buffer.getInt(acceptOffset + state * 4);
+
+        return index == -1 ? null : acceptObjects[index];
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        int state = initialState;
+
+        for (int i = 0; i < input.length() && state != REJECT_STATE; i++) {
+            state = buffer.getInt(tableOffset
+                    + (state * columns + getColumn(input.charAt(i))) * 4);
+        }
+
+        return isFinalState(state);
+    }
+
+    private int getColumn(char c) {
+        int page = buffer.getInt(HEADER_SIZE
+                + (c >>> RegexCharacterMap.PAGE_BITS) * 4);
+
+        return buffer.getInt(pagesOffset
+                + ((page << RegexCharacterMap.PAGE_BITS) | (c & RegexCharacterMap.PAGE_MASK))
+                * 4);
+    }
+
+    private static Object[] readNames(ByteBuffer data, int offset, int count)
+            throws IOException {
+        Object[] names = new Object[count];
+
+        for (int i = 0; i < count; i++) {
+            if (offset + 4 > data.limit()) {
+                throw new IOException("truncated precompiled automaton");
+            }
+
+            int length = data.getInt(offset);
+            offset += 4;
+
+            if (length == -1) {
+                continue;
+            } else if (length < 0 || offset + length * 2 > data.limit()) {
+                throw new IOException("truncated precompiled automaton");
+            }
+
+            char[] chars = new char[length];
+
+            for (int j = 0; j < length; j++) {
+                chars[j] = data.getChar(offset);
+                offset += 2;
+            }
+
+            names[i] = new String(chars);
+        }
+
+        return names;
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+/**
+ * A cursor which runs a {@link RegexCompiledAutomaton}.
+ * <p>
+ * A matcher keeps the current state of a single match and must therefore
+ * not be used by multiple threads concurrently. Create a matcher per thread
+ * instead, the automaton itself can be shared.
+ */
+public class RegexMatcher {
+
+    private final RegexCompiledAutomaton automaton;
+
+    private int currentState;
+
+    /** Simulator of the NFA, created when it's needed for the first time */
+    private RegexNfaSimulator simulator;
+
+    /**
+     * Whether the NFA is currently simulated, because the automaton can't
+     * represent the current state by a number.
+     */
+    private boolean simulating;
+
+    public RegexMatcher(RegexCompiledAutomaton automaton) {
+        this.automaton = automaton;
+        reset();
+    }
+
+    public RegexCompiledAutomaton getAutomaton() {
+        return automaton;
+    }
+
+    public void reset() {
+        currentState = automaton.getInitialState();
+        simulating = currentState == RegexCompiledAutomaton.OVERFLOW_STATE;
+
+        if (simulating) {
+            getSimulator().reset();
+        }
+    }
+
+    /**
+     * Returns the number of the current state. While the NFA is simulated
+     * there is no such number and -2 is returned.
+     */
+    public int getState() {
+        return currentState;
+    }
+
+    public void processEvent(char c) {
+        if (!simulating) {
+            int nextState = automaton.getNextState(currentState, c);
+
+            if (nextState != RegexCompiledAutomaton.OVERFLOW_STATE) {
+                currentState = nextState;
+                return;
+            }
+
+            getSimulator().reset(automaton.getStateSet(currentState));
+            simulating = true;
+        }
+
+        simulator.step(c);
+        currentState = automaton.getState(simulator);
+
+        if (currentState != RegexCompiledAutomaton.OVERFLOW_STATE) {
+            /* back in a numbered state */
+            simulating = false;
+        }
+    }
+
+    public boolean rejects() {
+        return currentState == RegexCompiledAutomaton.REJECT_STATE;
+    }
+
+    public boolean accepts() {
+        if (simulating) {
+            return simulator.accepts();
+        }
+
+        return automaton.isFinalState(currentState);
+    }
+
+    public Object getAcceptObject() {
+        if (simulating) {
+            return simulator.getAcceptObject();
+        }
+
+        return automaton.getAcceptObject(currentState);
+    }
+
+    /**
+     * Resets the matcher and checks whether the whole <code>input</code> is
+     * accepted.
+     */
+    public boolean matches(CharSequence input) {
+        reset();
+
+        for (int i = 0; i < input.length() && !rejects(); i++) {
+            processEvent(input.charAt(i));
+        }
+
+        return accepts();
+    }
+
+    private RegexNfaSimulator getSimulator() {
+        if (simulator == null) {
+            simulator = automaton.createSimulator();
+        }
+
+        return simulator;
+    }
+
+}
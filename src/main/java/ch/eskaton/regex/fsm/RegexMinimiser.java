@@ -0,0 +1,292 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+/**
+ * Minimises a deterministic automaton with Hopcroft's algorithm.
+ * <p>
+ * The automaton is given by its state table, where <code>-1</code> denotes
+ * the reject state, and an initial partition of the states. States are only
+ * merged if they are in the same block of the initial partition, which
+ * allows to keep final states with different accept objects apart.
+ */
+class RegexMinimiser {
+
+    private int states;
+
+    private int columns;
+
+    /** Inverse transitions: sources of state t with column c */
+    private int[][] inverseStart;
+
+    private int[][] inverseSources;
+
+    /** States ordered by block, each block occupies a contiguous range */
+    private int[] elements;
+
+    /** Position of each state in <code>elements</code> */
+    private int[] location;
+
+    private int[] blockOf;
+
+    private int[] blockStart;
+
+    private int[] blockEnd;
+
+    /** Number of marked states, marked states are at the block's start */
+    private int[] marked;
+
+    private int blocks;
+
+    private int[] touched;
+
+    private int touchedCount;
+
+    private int[] workList;
+
+    private boolean[] inWorkList;
+
+    private int workListSize;
+
+    /**
+     * Computes the minimal automaton.
+     * 
+     * @param stateTable
+     *            The state table of the deterministic automaton
+     * @param partition
+     *            The block of the initial partition of each state. Non-final
+     *            states must be in block 0.
+     * @return The number of each state in the minimal automaton or
+     *         <code>-1</code> if a state is equivalent to the reject state.
+     *         The states of the minimal automaton are numbered in the order
+     *         of their first occurrence.
+     */
+    public static int[] minimise(int[][] stateTable, int[] partition) {
+        return new RegexMinimiser().run(stateTable, partition);
+    }
+
+    private int[] run(int[][] stateTable, int[] partition) {
+        int rejectState = stateTable.length;
+
+        states = stateTable.length + 1;
+        columns = states > 1 ? stateTable[0].length : 0;
+
+        buildInverseTransitions(stateTable, rejectState);
+        buildInitialPartition(partition, rejectState);
+        refine();
+
+        int[] numbers = new int[stateTable.length];
+        int[] blockNumbers = new int[blocks];
+        int next = 0;
+
+        for (int b = 0; b < blocks; b++) {
+            blockNumbers[b] = -1;
+        }
+
+        for (int s = 0; s < stateTable.length; s++) {
+            int b = blockOf[s];
+            if (b == blockOf[rejectState]) {
+                numbers[s] = -1;
+            } else {
+                if (blockNumbers[b] == -1) {
+                    blockNumbers[b] = next++;
+                }
+                numbers[s] = blockNumbers[b];
+            }
+        }
+
+        return numbers;
+    }
+
+    private void buildInverseTransitions(int[][] stateTable, int rejectState) {
+        inverseStart = new int[columns][states + 1];
+        inverseSources = new int[columns][states];
+
+        for (int c = 0; c < columns; c++) {
+            int[] start = inverseStart[c];
+
+            for (int s = 0; s < states; s++) {
+                start[target(stateTable, s, c, rejectState) + 1]++;
+            }
+
+            for (int t = 0; t < states; t++) {
+                start[t + 1] += start[t];
+            }
+
+            int[] fill = start.clone();
+
+            for (int s = 0; s < states; s++) {
+                inverseSources[c][fill[target(stateTable, s, c, rejectState)]++] = s;
+            }
+        }
+    }
+
+    private int target(int[][] stateTable, int state, int column,
+            int rejectState) {
+        if (state == rejectState) {
+            return rejectState;
+        }
+
+        int target = stateTable[state][column];
+
+        return target == -1 ? rejectState : target;
+    }
+
+    private void buildInitialPartition(int[] partition, int rejectState) {
+        int initialBlocks = 1;
+
+        for (int s = 0; s < rejectState; s++) {
+            initialBlocks = Math.max(initialBlocks, partition[s] + 1);
+        }
+
+        elements = new int[states];
+        location = new int[states];
+        blockOf = new int[states];
+        blockStart = new int[states];
+        blockEnd = new int[states];
+        marked = new int[states];
+        touched = new int[states];
+        workList = new int[states];
+        inWorkList = new boolean[states];
+
+        int[] sizes = new int[initialBlocks];
+
+        for (int s = 0; s < states; s++) {
+            sizes[s == rejectState ? 0 : partition[s]]++;
+        }
+
+        /* empty blocks are skipped */
+        int[] blockNumbers = new int[initialBlocks];
+        int position = 0;
+
+        for (int b = 0; b < initialBlocks; b++) {
+            if (sizes[b] > 0) {
+                blockNumbers[b] = blocks;
+                blockStart[blocks] = position;
+                blockEnd[blocks] = position;
+                position += sizes[b];
+                blocks++;
+            }
+        }
+
+        for (int s = 0; s < states; s++) {
+            int b = blockNumbers[s == rejectState ? 0 : partition[s]];
+            blockOf[s] = b;
+            location[s] = blockEnd[b];
+            elements[blockEnd[b]++] = s;
+        }
+
+        for (int b = 0; b < blocks; b++) {
+            addToWorkList(b);
+        }
+    }
+
+    private void refine() {
+        int[] splitter = new int[states];
+
+        while (workListSize > 0) {
+            int b = workList[--workListSize];
+            inWorkList[b] = false;
+
+            int size = blockEnd[b] - blockStart[b];
+            System.arraycopy(elements, blockStart[b], splitter, 0, size);
+
+            for (int c = 0; c < columns; c++) {
+                int[] start = inverseStart[c];
+                int[] sources = inverseSources[c];
+
+                for (int i = 0; i < size; i++) {
+                    int t = splitter[i];
+                    for (int j = start[t]; j < start[t + 1]; j++) {
+                        mark(sources[j]);
+                    }
+                }
+
+                split();
+            }
+        }
+    }
+
+    private void mark(int state) {
+        int b = blockOf[state];
+        int position = blockStart[b] + marked[b];
+
+        if (location[state] < position) {
+            /* already marked */
+            return;
+        }
+
+        if (marked[b] == 0) {
+            touched[touchedCount++] = b;
+        }
+
+        int other = elements[position];
+        elements[location[state]] = other;
+        location[other] = location[state];
+        elements[position] = state;
+        location[state] = position;
+        marked[b]++;
+    }
+
+    private void split() {
+        for (int i = 0; i < touchedCount; i++) {
+            int b = touched[i];
+            int count = marked[b];
+
+            marked[b] = 0;
+
+            if (count == blockEnd[b] - blockStart[b]) {
+                continue;
+            }
+
+            int newBlock = blocks++;
+            blockStart[newBlock] = blockStart[b];
+            blockEnd[newBlock] = blockStart[b] + count;
+            blockStart[b] = blockEnd[newBlock];
+
+            for (int p = blockStart[newBlock]; p < blockEnd[newBlock]; p++) {
+                blockOf[elements[p]] = newBlock;
+            }
+
+            if (inWorkList[b]) {
+                addToWorkList(newBlock);
+            } else if (count <= blockEnd[b] - blockStart[b]) {
+                addToWorkList(newBlock);
+            } else {
+                addToWorkList(b);
+            }
+        }
+
+        touchedCount = 0;
+    }
+
+    private void addToWorkList(int block) {
+        inWorkList[block] = true;
+        workList[workListSize++] = block;
+    }
+
+}
@@ -0,0 +1,320 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A dense representation of an automaton without lambda transitions.
+ * <p>
+ * States and events are numbered in the order in which they are reached
+ * from the initial state, which has number 0. The transitions of a state are
+ * stored as two parallel arrays with the numbers of the events and of the
+ * target states.
+ * <p>
+ * Transitions to dead states, from which no final state can be reached, are
+ * removed. Inputs which lead only to dead states are thus rejected as soon
+ * as possible, because the sets of states reached by them are empty.
+ */
+class RegexNfa {
+
+    private RegexState[] states;
+
+    private RegexEvent[] events;
+
+    private int[][] transitionEvents;
+
+    private int[][] transitionTargets;
+
+    private boolean[] finalStates;
+
+    /** Objects and final flags of the states at construction */
+    private Object[] objects;
+
+    private boolean[] finalFlags;
+
+    /** Whether a state had transitions before dead states were removed */
+    private boolean[] hasTransitions;
+
+    RegexNfa(RegexState initialState, Set<RegexState> finalStates) {
+        Map<RegexState, Integer> stateNumbers = new HashMap<RegexState, Integer>();
+        Map<RegexEvent, Integer> eventNumbers = new HashMap<RegexEvent, Integer>();
+        List<RegexState> stateList = new ArrayList<RegexState>();
+        List<RegexEvent> eventList = new ArrayList<RegexEvent>();
+        List<int[]> eventsList = new ArrayList<int[]>();
+        List<int[]> targetsList = new ArrayList<int[]>();
+
+        stateNumbers.put(initialState, 0);
+        stateList.add(initialState);
+
+        for (int s = 0; s < stateList.size(); s++) {
+            Set<RegexTransition> transitions = stateList.get(s)
+                    .getTransitions();
+            int[] stateEvents = new int[transitions.size()];
+            int[] stateTargets = new int[transitions.size()];
+            int i = 0;
+
+            for (RegexTransition t : transitions) {
+                Integer target = stateNumbers.get(t.getTargetState());
+                Integer event = eventNumbers.get(t.getEvent());
+
+                if (target == null) {
+                    target = stateList.size();
+                    stateNumbers.put(t.getTargetState(), target);
+                    stateList.add(t.getTargetState());
+                }
+
+                if (event == null) {
+                    event = eventList.size();
+                    eventNumbers.put(t.getEvent(), event);
+                    eventList.add(t.getEvent());
+                }
+
+                stateEvents[i] = event;
+                stateTargets[i++] = target;
+            }
+
+            eventsList.add(stateEvents);
+            targetsList.add(stateTargets);
+        }
+
+        states = stateList.toArray(new RegexState[stateList.size()]);
+        events = eventList.toArray(new RegexEvent[eventList.size()]);
+        transitionEvents = eventsList.toArray(new int[states.length][]);
+        transitionTargets = targetsList.toArray(new int[states.length][]);
+        this.finalStates = new boolean[states.length];
+        objects = new Object[states.length];
+        finalFlags = new boolean[states.length];
+
+        hasTransitions = new boolean[states.length];
+
+        for (int s = 0; s < states.length; s++) {
+            this.finalStates[s] = finalStates.contains(states[s]);
+            objects[s] = states[s].getObject();
+            finalFlags[s] = states[s].isFinalState();
+            hasTransitions[s] = transitionEvents[s].length > 0;
+        }
+
+        removeDeadStates();
+    }
+
+    private RegexNfa(RegexEvent[] events, int[][] transitionEvents,
+            int[][] transitionTargets, boolean[] finalStates) {
+        this.events = events;
+        this.transitionEvents = transitionEvents;
+        this.transitionTargets = transitionTargets;
+        this.finalStates = finalStates;
+        objects = new Object[finalStates.length];
+        finalFlags = new boolean[finalStates.length];
+        hasTransitions = new boolean[finalStates.length];
+    }
+
+    /**
+     * Removes the transitions to states from which no final state can be
+     * reached. The dead states keep their numbers but can't be reached
+     * anymore.
+     */
+    private void removeDeadStates() {
+        int count = getStateCount();
+        RegexNfa reverse = reverse();
+        boolean[] live = new boolean[count];
+        int[] stack = new int[count];
+        int size = 0;
+
+        for (int s = 0; s < count; s++) {
+            if (finalStates[s]) {
+                live[s] = true;
+                stack[size++] = s;
+            }
+        }
+
+        while (size > 0) {
+            for (int source : reverse.transitionTargets[stack[--size]]) {
+                if (!live[source]) {
+                    live[source] = true;
+                    stack[size++] = source;
+                }
+            }
+        }
+
+        for (int s = 0; s < count; s++) {
+            int[] targets = transitionTargets[s];
+            int liveCount = 0;
+
+            for (int target : targets) {
+                if (live[target]) {
+                    liveCount++;
+                }
+            }
+
+            if (liveCount == targets.length) {
+                continue;
+            }
+
+            int[] events = transitionEvents[s];
+            int[] liveEvents = new int[liveCount];
+            int[] liveTargets = new int[liveCount];
+            int i = 0;
+
+            for (int t = 0; t < targets.length; t++) {
+                if (live[targets[t]]) {
+                    liveEvents[i] = events[t];
+                    liveTargets[i++] = targets[t];
+                }
+            }
+
+            transitionEvents[s] = liveEvents;
+            transitionTargets[s] = liveTargets;
+        }
+    }
+
+    /**
+     * Returns the automaton which accepts the reversed strings. All
+     * transitions are reversed, the final states of this automaton are the
+     * initial states of the reversed automaton and state 0 is its only final
+     * state. The states keep their numbers but aren't connected with
+     * {@link RegexState}s and objects.
+     */
+    public RegexNfa reverse() {
+        int count = getStateCount();
+        int[] sizes = new int[count];
+
+        for (int s = 0; s < count; s++) {
+            for (int target : transitionTargets[s]) {
+                sizes[target]++;
+            }
+        }
+
+        int[][] reverseEvents = new int[count][];
+        int[][] reverseTargets = new int[count][];
+
+        for (int s = 0; s < count; s++) {
+            reverseEvents[s] = new int[sizes[s]];
+            reverseTargets[s] = new int[sizes[s]];
+            sizes[s] = 0;
+        }
+
+        for (int s = 0; s < count; s++) {
+            for (int i = 0; i < transitionTargets[s].length; i++) {
+                int target = transitionTargets[s][i];
+
+                reverseEvents[target][sizes[target]] = transitionEvents[s][i];
+                reverseTargets[target][sizes[target]++] = s;
+            }
+        }
+
+        boolean[] reverseFinalStates = new boolean[count];
+        reverseFinalStates[0] = true;
+
+        return new RegexNfa(events, reverseEvents, reverseTargets,
+                reverseFinalStates);
+    }
+
+    public int getStateCount() {
+        return transitionEvents.length;
+    }
+
+    public RegexState getState(int state) {
+        return states[state];
+    }
+
+    public int getEventCount() {
+        return events.length;
+    }
+
+    public RegexEvent getEvent(int event) {
+        return events[event];
+    }
+
+    public int[] getTransitionEvents(int state) {
+        return transitionEvents[state];
+    }
+
+    public int[] getTransitionTargets(int state) {
+        return transitionTargets[state];
+    }
+
+    public boolean isFinalState(int state) {
+        return finalStates[state];
+    }
+
+    /**
+     * Returns the sorted numbers of the final states.
+     */
+    public int[] getFinalStateSet() {
+        BitSet set = new BitSet();
+
+        for (int s = 0; s < finalStates.length; s++) {
+            if (finalStates[s]) {
+                set.set(s);
+            }
+        }
+
+        return RegexStateSetTable.toArray(set);
+    }
+
+    /**
+     * Checks whether the set of states <code>set</code> contains a final
+     * state.
+     */
+    public boolean isFinalStateSet(int[] set) {
+        for (int s : set) {
+            if (finalStates[s]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the object of the set of states <code>set</code>, following
+     * the rules of {@link RegexCompoundState#getObject()}.
+     */
+    public Object getAcceptObject(int[] set) {
+        Object object = null;
+
+        for (int s : set) {
+            if (!finalFlags[s]) {
+                continue;
+            }
+            if (object == null) {
+                object = objects[s];
+            } else if (!hasTransitions[s]) {
+                object = objects[s];
+            }
+        }
+
+        return object;
+    }
+
+}
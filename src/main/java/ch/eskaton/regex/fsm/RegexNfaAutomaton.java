@@ -0,0 +1,119 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+/**
+ * An automaton which simulates the NFA instead of making it deterministic.
+ * <p>
+ * The subset construction may create a number of states which is
+ * exponential in the size of the NFA, e.g. for <code>(a|b)*a(a|b)(a|b)</code>
+ * with many repetitions of <code>(a|b)</code>. A
+ * {@link RegexStateMachine} therefore falls back to this automaton if the
+ * deterministic automaton gets too large. Each {@link RegexMatcher} tracks
+ * the set of current NFA states with a {@link RegexNfaSimulator}, so
+ * matching takes time proportional to the length of the input times the
+ * size of the NFA and memory proportional to the size of the NFA.
+ * <p>
+ * The states of the automaton aren't numbered: the initial state and every
+ * state except {@link #REJECT_STATE} are represented by
+ * {@link RegexCompiledAutomaton#OVERFLOW_STATE}, and an input can only be
+ * matched with a matcher.
+ */
+public class RegexNfaAutomaton extends RegexCompiledAutomaton {
+
+    private final RegexNfa nfa;
+
+    private final RegexCharacterMap charMap;
+
+    /** Column of each event of the NFA */
+    private final int[] eventColumns;
+
+    RegexNfaAutomaton(RegexNfa nfa, RegexCharacterMap charMap,
+            int[] eventColumns) {
+        this.nfa = nfa;
+        this.charMap = charMap;
+        this.eventColumns = eventColumns;
+    }
+
+    @Override
+    public int getInitialState() {
+        return OVERFLOW_STATE;
+    }
+
+    /**
+     * Returns the number of states of the NFA.
+     */
+    @Override
+    public int getStateCount() {
+        return nfa.getStateCount();
+    }
+
+    @Override
+    public int getNextState(int state, char c) {
+        return state == REJECT_STATE ? REJECT_STATE : OVERFLOW_STATE;
+    }
+
+    /**
+     * Always returns false, since the automaton has no numbered final states.
+     * Use {@link RegexMatcher#accepts()} instead.
+     */
+    @Override
+    public boolean isFinalState(int state) {
+        return false;
+    }
+
+    /**
+     * Always returns <code>null</code>, since the automaton has no numbered
+     * final states. Use {@link RegexMatcher#getAcceptObject()} instead.
+     */
+    @Override
+    public Object getAcceptObject(int state) {
+        return null;
+    }
+
+    @Override
+    RegexNfaSimulator createSimulator() {
+        return new RegexNfaSimulator(nfa, charMap, eventColumns,
+                new int[] { 0 }, false);
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        if (!getPrefilter().accepts(input)) {
+            return false;
+        }
+
+        RegexNfaSimulator simulator = createSimulator();
+
+        for (int i = 0; i < input.length() && !simulator.isEmpty(); i++) {
+            simulator.step(input.charAt(i));
+        }
+
+        return simulator.accepts();
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.Arrays;
+
+/**
+ * Simulates a {@link RegexNfa} one character at a time.
+ * <p>
+ * The current set of NFA states is kept as a sparse set: a dense array
+ * holds the members in the order they were added and a sparse array maps
+ * each NFA state to its index in the dense array. Adding a state, testing
+ * membership and clearing the set take constant time, so a step costs time
+ * proportional to the transitions of the current states and matching an
+ * input of length n takes O(n * m) time for an NFA with m transitions. The
+ * memory is allocated once and bounded by the number of NFA states.
+ * <p>
+ * A simulator keeps the state of a single match and must not be shared by
+ * threads.
+ */
+class RegexNfaSimulator {
+
+    private final RegexNfa nfa;
+
+    private final RegexCharacterMap charMap;
+
+    /** Column of each event of the NFA */
+    private final int[] eventColumns;
+
+    /** Set of NFA states the simulation starts with */
+    private final int[] initialSet;
+
+    /** Whether the initial set is added after every step */
+    private final boolean unanchored;
+
+    /** Members of the current set */
+    private int[] dense;
+
+    private int size;
+
+    /** Members of the set under construction, swapped with dense */
+    private int[] nextDense;
+
+    private int nextSize;
+
+    /**
+     * Index of each state in nextDense while a set is constructed. After the
+     * sets are swapped it indexes the current set until the next step, so
+     * both sets share the array.
+     */
+    private final int[] sparse;
+
+    RegexNfaSimulator(RegexNfa nfa, RegexCharacterMap charMap,
+            int[] eventColumns, int[] initialSet, boolean unanchored) {
+        this.nfa = nfa;
+        this.charMap = charMap;
+        this.eventColumns = eventColumns;
+        this.initialSet = initialSet;
+        this.unanchored = unanchored;
+
+        int count = nfa.getStateCount();
+
+        dense = new int[count];
+        nextDense = new int[count];
+        sparse = new int[count];
+        reset();
+    }
+
+    /**
+     * Restarts the simulation with the initial set.
+     */
+    public void reset() {
+        reset(initialSet);
+    }
+
+    /**
+     * Restarts the simulation with the set of NFA states <code>set</code>.
+     */
+    public void reset(int[] set) {
+        nextSize = 0;
+
+        for (int s : set) {
+            add(s);
+        }
+
+        swap();
+    }
+
+    /**
+     * Moves to the set of NFA states reached with character <code>c</code>.
+     */
+    public void step(char c) {
+        int column = charMap.getColumn(c);
+
+        nextSize = 0;
+
+        for (int i = 0; i < size; i++) {
+            int[] events = nfa.getTransitionEvents(dense[i]);
+            int[] targets = nfa.getTransitionTargets(dense[i]);
+
+            for (int j = 0; j < events.length; j++) {
+                if (eventColumns[events[j]] == column) {
+                    add(targets[j]);
+                }
+            }
+        }
+
+        if (unanchored) {
+            for (int s : initialSet) {
+                add(s);
+            }
+        }
+
+        swap();
+    }
+
+    /**
+     * Checks whether the current set is empty, i.e. the input is rejected.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean accepts() {
+        for (int i = 0; i < size; i++) {
+            if (nfa.isFinalState(dense[i])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the object of the current set, see
+     * {@link RegexNfa#getAcceptObject(int[])}, or <code>null</code> if the
+     * set doesn't contain a final state.
+     */
+    public Object getAcceptObject() {
+        return accepts() ? nfa.getAcceptObject(toSortedArray()) : null;
+    }
+
+    /**
+     * Returns the hash code of the current set, see {@link #hashCode(int[])}.
+     */
+    public int setHashCode() {
+        int hash = 0;
+
+        for (int i = 0; i < size; i++) {
+            hash += mix(dense[i]);
+        }
+
+        return mix(hash);
+    }
+
+    /**
+     * Returns a hash code of a set of NFA states which doesn't depend on the
+     * order of the states.
+     */
+    static int hashCode(int[] set) {
+        int hash = 0;
+
+        for (int s : set) {
+            hash += mix(s);
+        }
+
+        return mix(hash);
+    }
+
+    /**
+     * Checks whether the current set consists of the NFA states of
+     * <code>set</code>, which must not contain duplicates.
+     */
+    public boolean equalsSet(int[] set) {
+        if (set.length != size) {
+            return false;
+        }
+
+        for (int s : set) {
+            int index = sparse[s];
+
+            if (index >= size || dense[index] != s) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the sorted numbers of the NFA states of the current set.
+     */
+    public int[] toSortedArray() {
+        int[] set = new int[size];
+        System.arraycopy(dense, 0, set, 0, size);
+        Arrays.sort(set);
+        return set;
+    }
+
+    private void add(int state) {
+        int index = sparse[state];
+
+        if (index < nextSize && nextDense[index] == state) {
+            return;
+        }
+
+        sparse[state] = nextSize;
+        nextDense[nextSize++] = state;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void swap() {
+        int[] tmp = dense;
+        dense = nextDense;
+        nextDense = tmp;
+        size = nextSize;
+    }
+
+}
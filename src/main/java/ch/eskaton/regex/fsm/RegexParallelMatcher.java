@@ -0,0 +1,253 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Matches large inputs on multiple threads.
+ * <p>
+ * The input is split into chunks which are processed in parallel. The
+ * first chunk is processed from the initial state. The state in which the
+ * other chunks start isn't known in advance, so each of them is processed
+ * from every state of the automaton at once, which yields a map from start
+ * states to end states. Runs which reach the same state are merged and
+ * runs which reject are dropped, so that usually only a few runs remain
+ * after a few characters. Finally the maps are applied one after the other
+ * to the end state of the first chunk.
+ * <p>
+ * Only a {@link RegexTableAutomaton} is processed in parallel, other
+ * automata and short inputs are matched sequentially.
+ */
+public class RegexParallelMatcher {
+
+    /** Default minimum number of characters of a chunk */
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 1 << 16;
+
+    /** Mask of the number of characters after which interrupts are checked */
+    private static final int CHECK_INTERVAL = (1 << 12) - 1;
+
+    private final RegexCompiledAutomaton automaton;
+
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    private int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+
+    /**
+     * @param parallelism
+     *            maximum number of chunks
+     */
+    public RegexParallelMatcher(RegexCompiledAutomaton automaton,
+            ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("invalid parallelism "
+                    + parallelism);
+        }
+
+        this.automaton = automaton;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    public void setMinChunkSize(int minChunkSize) {
+        if (minChunkSize < 1) {
+            throw new IllegalArgumentException("invalid chunk size "
+                    + minChunkSize);
+        }
+
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Checks whether the automaton accepts the whole <code>input</code>.
+     * The input must not be modified until the method returns.
+     */
+    public boolean matches(final CharSequence input)
+            throws InterruptedException {
+        int length = input.length();
+        int chunks = Math.min(parallelism, length / minChunkSize);
+
+        if (chunks < 2 || !(automaton instanceof RegexTableAutomaton)) {
+            return automaton.matches(input);
+        }
+
+        final RegexTableAutomaton table = (RegexTableAutomaton) automaton;
+        List<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+
+        for (int i = 1; i < chunks; i++) {
+            final int from = (int) ((long) length * i / chunks);
+            final int to = (int) ((long) length * (i + 1) / chunks);
+
+            futures.add(executor.submit(new Callable<int[]>() {
+                public int[] call() {
+                    return runAll(table, input, from, to);
+                }
+            }));
+        }
+
+        try {
+            int state = run(table, table.getInitialState(), input, 0, length
+                    / chunks);
+
+            for (Future<int[]> future : futures) {
+                if (state == RegexCompiledAutomaton.REJECT_STATE) {
+                    return false;
+                }
+
+                state = future.get()[state];
+            }
+
+            return table.isFinalState(state);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<int[]> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Runs the automaton from <code>state</code> over the characters from
+     * <code>from</code> to <code>to</code> and returns the end state.
+     */
+    private static int run(RegexTableAutomaton automaton, int state,
+            CharSequence input, int from, int to) {
+        int[][] stateTable = automaton.getStateTable();
+        RegexCharacterMap charMap = automaton.getCharacterMap();
+
+        for (int i = from; i < to
+                && state != RegexCompiledAutomaton.REJECT_STATE; i++) {
+            state = stateTable[state][charMap.getColumn(input.charAt(i))];
+        }
+
+        return state;
+    }
+
+    /**
+     * Runs the automaton from every state over the characters from
+     * <code>from</code> to <code>to</code> and returns the end state of
+     * each start state.
+     */
+    private static int[] runAll(RegexTableAutomaton automaton,
+            CharSequence input, int from, int to) {
+        int[][] stateTable = automaton.getStateTable();
+        RegexCharacterMap charMap = automaton.getCharacterMap();
+        int states = stateTable.length;
+
+        /* index of the run of each start state, -1 if it rejected */
+        int[] runs = new int[states];
+
+        /* current states of the distinct runs */
+        int[] current = new int[states];
+
+        /* index of the run in the current state, valid if stamp matches */
+        int[] runOfState = new int[states];
+        int[] stamps = new int[states];
+        int[] remap = new int[states];
+        int count = states;
+
+        for (int s = 0; s < states; s++) {
+            runs[s] = s;
+            current[s] = s;
+        }
+
+        int i = from;
+
+        for (; i < to && count > 1; i++) {
+            int column = charMap.getColumn(input.charAt(i));
+            int stamp = i - from + 1;
+            int newCount = 0;
+
+            for (int r = 0; r < count; r++) {
+                int target = stateTable[current[r]][column];
+
+                if (target == RegexCompiledAutomaton.REJECT_STATE) {
+                    remap[r] = -1;
+                } else if (stamps[target] == stamp) {
+                    remap[r] = runOfState[target];
+                } else {
+                    stamps[target] = stamp;
+                    runOfState[target] = newCount;
+                    current[newCount] = target;
+                    remap[r] = newCount++;
+                }
+            }
+
+            if (newCount < count) {
+                /* runs were merged or dropped */
+                for (int s = 0; s < states; s++) {
+                    if (runs[s] != -1) {
+                        runs[s] = remap[runs[s]];
+                    }
+                }
+
+                count = newCount;
+            }
+
+            if ((stamp & CHECK_INTERVAL) == 0
+                    && Thread.currentThread().isInterrupted()) {
+                /* the result isn't needed anymore */
+                return null;
+            }
+        }
+
+        if (count == 1) {
+            /* all remaining start states lead to the same run */
+            current[0] = run(automaton, current[0], input, i, to);
+        }
+
+        int[] endStates = new int[states];
+
+        for (int s = 0; s < states; s++) {
+            endStates[s] = runs[s] == -1 ? RegexCompiledAutomaton.REJECT_STATE
+                    : current[runs[s]];
+        }
+
+        return endStates;
+    }
+
+}
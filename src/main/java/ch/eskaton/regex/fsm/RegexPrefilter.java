@@ -0,0 +1,246 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+/**
+ * Literal strings which every input accepted by an automaton contains.
+ * <p>
+ * A prefilter consists of a prefix and a suffix of every accepted input and
+ * of a string which occurs somewhere in every accepted input. Checking them
+ * with <code>startsWith</code>, <code>endsWith</code> and
+ * <code>indexOf</code> is much cheaper than running the automaton, so most
+ * inputs which don't match are rejected without reading them completely.
+ * <p>
+ * Prefilters are built bottom up from a syntax tree: a character is a
+ * literal, and {@link #concat(RegexPrefilter)}, {@link #or(RegexPrefilter)}
+ * and {@link #repeat()} derive the literals of a sequence, a selection and
+ * a repetition. The literals are never wrong but may be shorter than
+ * possible, e.g. an optional part empties them.
+ * <p>
+ * Instances are immutable.
+ */
+public final class RegexPrefilter {
+
+    /** A prefilter which accepts every input */
+    public static final RegexPrefilter NONE = new RegexPrefilter(null, "",
+            "", "");
+
+    /** The only string accepted, null if there are others */
+    private final String exact;
+
+    private final String prefix;
+
+    private final String suffix;
+
+    /** The longest literal known to occur in every accepted input */
+    private final String required;
+
+    /** Whether the required literal isn't implied by prefix and suffix */
+    private final boolean checkRequired;
+
+    private RegexPrefilter(String exact, String prefix, String suffix,
+            String inner) {
+        this.exact = exact;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.required = longest(longest(prefix, suffix), inner);
+        this.checkRequired = required.length() > 0
+                && !prefix.contains(required) && !suffix.contains(required);
+    }
+
+    /**
+     * Returns the prefilter of an automaton which only accepts
+     * <code>literal</code>.
+     */
+    public static RegexPrefilter literal(String literal) {
+        return new RegexPrefilter(literal, literal, literal, literal);
+    }
+
+    /**
+     * Returns the prefilter of the inputs which consist of an input accepted
+     * by this prefilter followed by one accepted by <code>other</code>.
+     */
+    public RegexPrefilter concat(RegexPrefilter other) {
+        if (exact != null && other.exact != null) {
+            return literal(exact + other.exact);
+        }
+
+        return new RegexPrefilter(null, exact != null ? exact + other.prefix
+                : prefix, other.exact != null ? suffix + other.exact
+                : other.suffix, longest(suffix + other.prefix, longest(
+                required, other.required)));
+    }
+
+    /**
+     * Returns the prefilter of the inputs accepted by this prefilter or by
+     * <code>other</code>.
+     */
+    public RegexPrefilter or(RegexPrefilter other) {
+        if (exact != null && exact.equals(other.exact)) {
+            return this;
+        }
+
+        return new RegexPrefilter(null, commonPrefix(prefix, other.prefix),
+                commonSuffix(suffix, other.suffix), required
+                        .equals(other.required) ? required : "");
+    }
+
+    /**
+     * Returns the prefilter of an optional or repeated input accepted by this
+     * prefilter, which may also be empty.
+     */
+    public RegexPrefilter repeat() {
+        return exact != null && exact.length() == 0 ? this : NONE;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Returns the longest literal which occurs in every accepted input.
+     */
+    public String getRequired() {
+        return required;
+    }
+
+    /**
+     * Checks whether <code>input</code> contains the literals. If it
+     * doesn't, the automaton rejects the input.
+     */
+    public boolean accepts(CharSequence input) {
+        if (input.length() < required.length()) {
+            return false;
+        }
+
+        return startsWith(input, prefix) && endsWith(input, suffix)
+                && (!checkRequired || indexOf(input, required, 0) != -1);
+    }
+
+    /**
+     * Checks whether the part of <code>input</code> from <code>from</code>
+     * contains the required literal. If it doesn't, the automaton accepts no
+     * part of it.
+     */
+    public boolean mayFind(CharSequence input, int from) {
+        return required.length() == 0 || indexOf(input, required, from) != -1;
+    }
+
+    @Override
+    public String toString() {
+        return "[RegexPrefilter prefix=" + prefix + ", suffix=" + suffix
+                + ", required=" + required + "]";
+    }
+
+    private static boolean startsWith(CharSequence input, String prefix) {
+        if (input instanceof String) {
+            return ((String) input).startsWith(prefix);
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (input.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean endsWith(CharSequence input, String suffix) {
+        if (input instanceof String) {
+            return ((String) input).endsWith(suffix);
+        }
+
+        int offset = input.length() - suffix.length();
+
+        for (int i = 0; i < suffix.length(); i++) {
+            if (input.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int indexOf(CharSequence input, String literal, int from) {
+        if (input instanceof String) {
+            return ((String) input).indexOf(literal, from);
+        }
+
+        char first = literal.charAt(0);
+        int last = input.length() - literal.length();
+
+        for (int i = from; i <= last; i++) {
+            if (input.charAt(i) != first) {
+                continue;
+            }
+
+            int j = 1;
+
+            while (j < literal.length()
+                    && input.charAt(i + j) == literal.charAt(j)) {
+                j++;
+            }
+
+            if (j == literal.length()) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static String longest(String a, String b) {
+        return b.length() > a.length() ? b : a;
+    }
+
+    private static String commonPrefix(String a, String b) {
+        int i = 0;
+
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+
+        return a.substring(0, i);
+    }
+
+    private static String commonSuffix(String a, String b) {
+        int i = 0;
+
+        while (i < a.length() && i < b.length()
+                && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+            i++;
+        }
+
+        return a.substring(a.length() - i);
+    }
+
+}
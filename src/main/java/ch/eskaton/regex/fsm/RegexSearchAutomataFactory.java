@@ -0,0 +1,67 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+/**
+ * Creates the unanchored automata used to search in an input, see
+ * {@link RegexSearcher}, from the NFA of an automaton. Both are lazy
+ * automata, the reversed NFA is only built when the factory is used.
+ */
+class RegexSearchAutomataFactory {
+
+    private final RegexNfa nfa;
+
+    private final RegexCharacterMap charMap;
+
+    /** Column of each event of the NFA */
+    private final int[] eventColumns;
+
+    private final int columns;
+
+    /** Maximum number of states of each search automaton */
+    private final int maxStates;
+
+    RegexSearchAutomataFactory(RegexNfa nfa, RegexCharacterMap charMap,
+            int[] eventColumns, int columns, int maxStates) {
+        this.nfa = nfa;
+        this.charMap = charMap;
+        this.eventColumns = eventColumns;
+        this.columns = columns;
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Creates the search automata and sets them on <code>automaton</code>.
+     */
+    void create(RegexCompiledAutomaton automaton) {
+        automaton.setSearchAutomata(new RegexLazyAutomaton(nfa, charMap,
+                eventColumns, columns, maxStates, new int[] { 0 }, true),
+                new RegexLazyAutomaton(nfa.reverse(), charMap, eventColumns,
+                        columns, maxStates, nfa.getFinalStateSet(), true));
+    }
+
+}
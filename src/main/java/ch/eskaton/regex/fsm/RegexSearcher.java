@@ -0,0 +1,332 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.BitSet;
+
+/**
+ * A cursor which finds the parts of an input accepted by a
+ * {@link RegexCompiledAutomaton}.
+ * <p>
+ * The searcher finds the leftmost longest matches, which don't overlap.
+ * Instead of trying the automaton at every position of the input, the input
+ * is searched in three passes:
+ * <ol>
+ * <li>An unanchored automaton, which stays in its initial state on every
+ * character, finds the end of the last match. If there is none, the search
+ * fails after a single pass. This pass reads the input up to its end before
+ * the first match is returned.</li>
+ * <li>An unanchored automaton of the reversed language runs backwards from
+ * the end of the last match and marks the positions where a match starts.</li>
+ * <li>The automaton itself runs from each marked position which follows the
+ * previous match to find the end of the longest match.</li>
+ * </ol>
+ * The runs of the third pass stop at the end of the last match. A run also
+ * stops as soon as it reaches a state in which an earlier run has already
+ * been at the same position: the earlier run didn't accept after the start
+ * of the current one, so the current run won't either. Every state is
+ * therefore entered at most once per position and the third pass takes
+ * time linear in the length of the input times the number of states of the
+ * automaton, no matter how long the runs are. If the input doesn't contain
+ * the literal required by the {@link RegexPrefilter} of the automaton, the
+ * search fails without running the automata.
+ * <p>
+ * A searcher must not be used by multiple threads concurrently.
+ */
+public class RegexSearcher {
+
+    private final RegexMatcher matcher;
+
+    private final RegexMatcher forwardMatcher;
+
+    private final RegexMatcher reverseMatcher;
+
+    private final RegexPrefilter prefilter;
+
+    private CharSequence input;
+
+    /** Position where the next search starts */
+    private int position;
+
+    /** Positions where a match starts, null if not scanned yet */
+    private BitSet starts;
+
+    /** End of the last match in the input, -1 if there is none */
+    private int lastEnd;
+
+    /**
+     * Positions per state of the automaton at which a previous run of
+     * {@link #matchLongest(int)} has been in this state
+     */
+    private BitSet[] visited = new BitSet[0];
+
+    private int start;
+
+    private int end;
+
+    private Object acceptObject;
+
+    RegexSearcher(RegexCompiledAutomaton automaton,
+            RegexCompiledAutomaton forwardAutomaton,
+            RegexCompiledAutomaton reverseAutomaton, RegexPrefilter prefilter,
+            CharSequence input) {
+        matcher = automaton.matcher();
+        forwardMatcher = forwardAutomaton.matcher();
+        reverseMatcher = reverseAutomaton.matcher();
+        this.prefilter = prefilter;
+        reset(input);
+    }
+
+    /**
+     * Resets the searcher to search in <code>input</code> from the
+     * beginning.
+     */
+    public void reset(CharSequence input) {
+        this.input = input;
+        position = 0;
+        starts = null;
+
+        for (BitSet positions : visited) {
+            if (positions != null) {
+                positions.clear();
+            }
+        }
+
+        start = -1;
+        end = -1;
+        acceptObject = null;
+    }
+
+    /**
+     * Finds the next match which starts at or after the end of the previous
+     * match. An empty match is followed by a match which starts at least
+     * one code point later.
+     * 
+     * @return true if a match was found
+     */
+    public boolean find() {
+        if (position > input.length()) {
+            return false;
+        }
+
+        if (starts == null) {
+            scan();
+        }
+
+        while (lastEnd != -1) {
+            int nextStart = starts.nextSetBit(position);
+
+            if (nextStart == -1 || nextStart > lastEnd) {
+                break;
+            }
+
+            matchLongest(nextStart);
+
+            if (end != -1) {
+                position = end > start ? end : nextCodePoint(start);
+                return true;
+            }
+
+            position = nextStart + 1;
+        }
+
+        position = input.length() + 1;
+        start = -1;
+        end = -1;
+        acceptObject = null;
+
+        return false;
+    }
+
+    /**
+     * Returns the position after the code point at <code>index</code>, so
+     * that the search after an empty match doesn't start between the two
+     * halves of a surrogate pair.
+     */
+    private int nextCodePoint(int index) {
+        if (index + 1 < input.length()
+                && Character.isHighSurrogate(input.charAt(index))
+                && Character.isLowSurrogate(input.charAt(index + 1))) {
+            return index + 2;
+        }
+
+        return index + 1;
+    }
+
+    /**
+     * Resets the searcher and finds the first match which starts at or after
+     * <code>from</code>.
+     * 
+     * @return true if a match was found
+     */
+    public boolean find(int from) {
+        if (from < 0 || from > input.length()) {
+            throw new IndexOutOfBoundsException("Illegal start index: "
+                    + from);
+        }
+
+        reset(input);
+        position = from;
+
+        return find();
+    }
+
+    /**
+     * Returns the start of the current match or -1 if there is none.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the exclusive end of the current match or -1 if there is none.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public Object getAcceptObject() {
+        return acceptObject;
+    }
+
+    /**
+     * Finds the end of the last match and marks the start positions of the
+     * matches from the current position.
+     */
+    private void scan() {
+        int length = input.length();
+
+        lastEnd = -1;
+        starts = new BitSet();
+
+        if (!prefilter.mayFind(input, position)) {
+            return;
+        }
+
+        forwardMatcher.reset();
+
+        if (forwardMatcher.accepts()) {
+            lastEnd = position;
+        }
+
+        for (int i = position; i < length; i++) {
+            forwardMatcher.processEvent(input.charAt(i));
+
+            if (forwardMatcher.accepts()) {
+                lastEnd = i + 1;
+            }
+        }
+
+        if (lastEnd == -1) {
+            return;
+        }
+
+        reverseMatcher.reset();
+
+        if (reverseMatcher.accepts()) {
+            starts.set(lastEnd);
+        }
+
+        for (int i = lastEnd - 1; i >= position; i--) {
+            reverseMatcher.processEvent(input.charAt(i));
+
+            if (reverseMatcher.accepts()) {
+                starts.set(i);
+            }
+        }
+    }
+
+    /**
+     * Runs the automaton from <code>from</code> until it rejects, reaches the
+     * end of the last match or reaches a state which a previous run has
+     * already been in at the same position, and remembers the last position
+     * where it accepted.
+     */
+    private void matchLongest(int from) {
+        matcher.reset();
+        start = from;
+        end = -1;
+        acceptObject = null;
+
+        if (matcher.accepts()) {
+            end = from;
+            acceptObject = matcher.getAcceptObject();
+        }
+
+        if (visit(matcher.getState(), from)) {
+            return;
+        }
+
+        for (int i = from; i < lastEnd; i++) {
+            matcher.processEvent(input.charAt(i));
+
+            if (matcher.rejects()) {
+                break;
+            } else if (matcher.accepts()) {
+                end = i + 1;
+                acceptObject = matcher.getAcceptObject();
+            }
+
+            if (visit(matcher.getState(), i + 1)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Marks that a run has been in <code>state</code> at
+     * <code>position</code>. States of a simulated NFA have no number and
+     * are not marked.
+     * 
+     * @return true if a previous run has already been there
+     */
+    private boolean visit(int state, int position) {
+        if (state < 0) {
+            return false;
+        }
+
+        if (state >= visited.length) {
+            BitSet[] newVisited = new BitSet[Math.max(state + 1,
+                    2 * visited.length)];
+            System.arraycopy(visited, 0, newVisited, 0, visited.length);
+            visited = newVisited;
+        }
+
+        BitSet positions = visited[state];
+
+        if (positions == null) {
+            positions = visited[state] = new BitSet();
+        } else if (positions.get(position)) {
+            return true;
+        }
+
+        positions.set(position);
+
+        return false;
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the Java source of a class which implements a deterministic
+ * automaton without tables.
+ * <p>
+ * Each state becomes a method which compares the character with the ranges
+ * of its transitions and returns the next state. The generated class has no
+ * dependencies, so a lexer can be compiled together with the code which
+ * uses it and the JIT compiler can inline the transitions. It provides:
+ * <ul>
+ * <li><code>INITIAL_STATE</code> and <code>REJECT_STATE</code></li>
+ * <li><code>int nextState(int state, char c)</code></li>
+ * <li><code>boolean isFinalState(int state)</code></li>
+ * <li><code>String getAcceptName(int state)</code>, the result of
+ * <code>toString()</code> of the accept object of a final state</li>
+ * <li><code>boolean matches(CharSequence input)</code></li>
+ * <li><code>int longestMatch(CharSequence input, int from)</code>, the end
+ * of the longest match at <code>from</code> or -1</li>
+ * </ul>
+ * The switches on the state are split into methods of at most
+ * {@value #CHUNK_SIZE} states, so the methods don't exceed the size limit
+ * of the class file format for large automata.
+ */
+public class RegexSourceGenerator {
+
+    private static final int CHUNK_BITS = 10;
+
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final String packageName;
+
+    private final String simpleName;
+
+    /**
+     * @param className
+     *            fully qualified name of the generated class
+     */
+    public RegexSourceGenerator(String className) {
+        int dot = className.lastIndexOf('.');
+
+        packageName = dot == -1 ? null : className.substring(0, dot);
+        simpleName = className.substring(dot + 1);
+    }
+
+    /**
+     * Writes the source of the class which implements the automaton of
+     * <code>machine</code> to <code>writer</code>.
+     * 
+     * @throws IllegalStateException
+     *             if the automaton is lazy or the NFA is simulated
+     */
+    public void generate(RegexStateMachine machine, Writer writer)
+            throws IOException {
+        if (machine.isLazy()) {
+            throw new IllegalStateException(
+                    "source can't be generated for a lazy automaton");
+        }
+
+        if (machine.isSimulated()) {
+            throw new IllegalStateException(
+                    "source can't be generated for a simulated NFA");
+        }
+
+        RegexTableAutomaton automaton = machine.getTableAutomaton();
+        PrintWriter out = new PrintWriter(writer);
+
+        generate(automaton, out);
+        out.flush();
+
+        if (out.checkError()) {
+            throw new IOException("failed to write " + simpleName);
+        }
+    }
+
+    private void generate(RegexTableAutomaton automaton, PrintWriter out) {
+        int[][] stateTable = automaton.getStateTable();
+        final boolean[] finalStates = automaton.getFinalStates();
+        final Object[] acceptObjects = automaton.getAcceptObjects();
+        List<int[]> runs = automaton.getCharacterMap().getRuns();
+
+        if (packageName != null) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+
+        out.println("/**");
+        out.println(" * Generated by " + getClass().getName()
+                + ", don't edit.");
+        out.println(" */");
+        out.println("public final class " + simpleName + " {");
+        out.println();
+        out.println("    public static final int REJECT_STATE = -1;");
+        out.println();
+        out.println("    public static final int INITIAL_STATE = "
+                + automaton.getInitialState() + ";");
+        out.println();
+        out.println("    private " + simpleName + "() {");
+        out.println("    }");
+        out.println();
+
+        generateSwitch("int", "nextState", ", char c", ", c", "REJECT_STATE",
+                stateTable.length, new Cases() {
+                    public String getResult(int state) {
+                        return "nextState" + state + "(c)";
+                    }
+                }, out);
+
+        generateSwitch("boolean", "isFinalState", "", "", "false",
+                stateTable.length, new Cases() {
+                    public String getResult(int state) {
+                        return finalStates[state] ? "true" : null;
+                    }
+                }, out);
+
+        generateSwitch("String", "getAcceptName", "", "", "null",
+                stateTable.length, new Cases() {
+                    public String getResult(int state) {
+                        Object object = acceptObjects[state];
+
+                        if (!finalStates[state] || object == null) {
+                            return null;
+                        }
+
+                        return toStringLiteral(object.toString());
+                    }
+                }, out);
+
+        out.println("    public static boolean matches(CharSequence input) {");
+        out.println("        int state = INITIAL_STATE;");
+        out.println();
+        out.println("        for (int i = 0; i < input.length() "
+                + "&& state != REJECT_STATE; i++) {");
+        out.println("            state = nextState(state, input.charAt(i));");
+        out.println("        }");
+        out.println();
+        out.println("        return isFinalState(state);");
+        out.println("    }");
+        out.println();
+
+        out.println("    public static int longestMatch(CharSequence input, "
+                + "int from) {");
+        out.println("        int state = INITIAL_STATE;");
+        out.println("        int end = isFinalState(state) ? from : -1;");
+        out.println();
+        out.println("        for (int i = from; i < input.length(); i++) {");
+        out.println("            state = nextState(state, input.charAt(i));");
+        out.println();
+        out.println("            if (state == REJECT_STATE) {");
+        out.println("                break;");
+        out.println("            } else if (isFinalState(state)) {");
+        out.println("                end = i + 1;");
+        out.println("            }");
+        out.println("        }");
+        out.println();
+        out.println("        return end;");
+        out.println("    }");
+
+        for (int s = 0; s < stateTable.length; s++) {
+            out.println();
+            generateState(s, stateTable[s], runs, out);
+        }
+
+        out.println();
+        out.println("}");
+    }
+
+    /**
+     * Provides the result of a state in a switch on the state.
+     */
+    private interface Cases {
+
+        /**
+         * Returns the expression which is returned for <code>state</code>,
+         * or null if the default is returned.
+         */
+        String getResult(int state);
+
+    }
+
+    /**
+     * Generates the public method <code>name</code> which switches on the
+     * state. If there are more than {@value #CHUNK_SIZE} states, it switches
+     * on the chunk of the state and calls a method which switches on the
+     * states of the chunk.
+     */
+    private void generateSwitch(String type, String name, String parameters,
+            String arguments, String defaultResult, int states, Cases cases,
+            PrintWriter out) {
+        if (states <= CHUNK_SIZE) {
+            generateSwitch("public", type, name, parameters, defaultResult, 0,
+                    states, cases, out);
+            return;
+        }
+
+        int chunks = (states + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+
+        out.println("    public static " + type + " " + name + "(int state"
+                + parameters + ") {");
+        out.println("        switch (state >>> " + CHUNK_BITS + ") {");
+
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            out.println("        case " + chunk + ":");
+            out.println("            return " + name + "Chunk" + chunk
+                    + "(state" + arguments + ");");
+        }
+
+        out.println("        default:");
+        out.println("            return " + defaultResult + ";");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = chunk << CHUNK_BITS;
+
+            generateSwitch("private", type, name + "Chunk" + chunk,
+                    parameters, defaultResult, from, Math.min(states, from
+                            + CHUNK_SIZE), cases, out);
+        }
+    }
+
+    /**
+     * Generates a method which switches on the states from <code>from</code>
+     * to <code>to</code>. Consecutive states with the same result share
+     * their return statement.
+     */
+    private void generateSwitch(String modifier, String type, String name,
+            String parameters, String defaultResult, int from, int to,
+            Cases cases, PrintWriter out) {
+        out.println("    " + modifier + " static " + type + " " + name
+                + "(int state" + parameters + ") {");
+        out.println("        switch (state) {");
+
+        String pending = null;
+
+        for (int s = from; s < to; s++) {
+            String result = cases.getResult(s);
+
+            if (result == null) {
+                continue;
+            }
+
+            if (pending != null && !pending.equals(result)) {
+                out.println("            return " + pending + ";");
+            }
+
+            out.println("        case " + s + ":");
+            pending = result;
+        }
+
+        if (pending != null) {
+            out.println("            return " + pending + ";");
+        }
+
+        out.println("        default:");
+        out.println("            return " + defaultResult + ";");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+    }
+
+    /**
+     * Generates the method which returns the next state of state
+     * <code>state</code>. The conditions are ordered by the first character
+     * of each target state.
+     */
+    private void generateState(int state, int[] row, List<int[]> runs,
+            PrintWriter out) {
+        Map<Integer, List<int[]>> rangesByTarget = new LinkedHashMap<Integer, List<int[]>>();
+        int[] last = null;
+
+        for (int[] run : runs) {
+            int target = row[run[2]];
+
+            if (target == RegexCompiledAutomaton.REJECT_STATE) {
+                last = null;
+                continue;
+            }
+
+            List<int[]> ranges = rangesByTarget.get(target);
+
+            if (ranges == null) {
+                ranges = new ArrayList<int[]>();
+                rangesByTarget.put(target, ranges);
+            }
+
+            if (last != null && row[last[2]] == target) {
+                ranges.get(ranges.size() - 1)[1] = run[1];
+            } else {
+                ranges.add(new int[] { run[0], run[1] });
+            }
+
+            last = run;
+        }
+
+        out.println("    private static int nextState" + state + "(char c) {");
+
+        for (Map.Entry<Integer, List<int[]>> entry : rangesByTarget
+                .entrySet()) {
+            StringBuilder condition = new StringBuilder();
+
+            for (int[] range : entry.getValue()) {
+                if (condition.length() > 0) {
+                    condition.append("\n                || ");
+                }
+
+                if (range[0] == range[1]) {
+                    condition.append("c == ").append(toCharLiteral(range[0]));
+                } else if (range[0] == Character.MIN_VALUE) {
+                    condition.append("c <= ").append(toCharLiteral(range[1]));
+                } else if (range[1] == Character.MAX_VALUE) {
+                    condition.append("c >= ").append(toCharLiteral(range[0]));
+                } else {
+                    condition.append("c >= ").append(toCharLiteral(range[0]))
+                            .append(" && c <= ").append(
+                                    toCharLiteral(range[1]));
+                }
+            }
+
+            out.println("        if (" + condition + ") {");
+            out.println("            return " + entry.getKey() + ";");
+            out.println("        }");
+            out.println();
+        }
+
+        out.println("        return REJECT_STATE;");
+        out.println("    }");
+    }
+
+    private static String toCharLiteral(int c) {
+        if (c >= 0x20 && c < 0x7f && c != '\'' && c != '\\') {
+            return "'" + (char) c + "'";
+        }
+
+        return String.format("0x%04x", c);
+    }
+
+    private static String toStringLiteral(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c >= 0x20 && c < 0x7f) {
+                sb.append(c);
+            } else if (c < 0x20) {
+                /* a unicode escape of a line terminator would end the literal */
+                sb.append(String.format("\\%03o", (int) c));
+            } else {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+        }
+
+        return sb.append('"').toString();
+    }
+
+}
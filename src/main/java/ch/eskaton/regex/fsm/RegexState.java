@@ -28,13 +28,14 @@ package ch.eskaton.regex.fsm;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * State for a regex automaton.
  */
 public class RegexState {
 
-    private static int stateId = 1;
+    private static final AtomicInteger stateId = new AtomicInteger(1);
 
     private int id;
 
@@ -45,7 +46,7 @@ public class RegexState {
     private boolean finalState = false;
 
     public RegexState() {
-        id = stateId++;
+        id = stateId.getAndIncrement();
         transitions = new HashSet<RegexTransition>();
     }
 
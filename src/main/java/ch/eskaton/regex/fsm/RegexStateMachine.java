@@ -26,21 +26,42 @@
  */
 package ch.eskaton.regex.fsm;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
 import ch.eskaton.regex.parser.RegexCharacterClass;
+import ch.eskaton.regex.parser.RegexCharacterRange;
+import ch.eskaton.regex.parser.RegexIntervalSet;
 
 public class RegexStateMachine {
 
+    /**
+     * Default maximum number of states of a deterministic automaton, see
+     * {@link #RegexStateMachine(RegexState, Set, int, int)}
+     */
+    public static final int DEFAULT_MAX_DFA_STATES = 100000;
+
+    /** Maximum number of states of each search automaton */
+    private static final int MAX_SEARCH_STATES = 1024;
+
     private RegexState initialState;
 
     private Set<RegexState> finalStates;
 
-    private int currentState;
+    private RegexCompiledAutomaton automaton;
+
+    /** Dense representation of the automaton without lambda transitions */
+    private RegexNfa nfa;
+
+    /** Cursor used by {@link #processEvent(char)} */
+    private RegexMatcher matcher;
 
     private int[][] stateTable;
 
@@ -54,85 +75,398 @@ public class RegexStateMachine {
 
     private Set<RegexEvent> allEvents;
 
+    /** Maps each character to an index in the state table */
+    private RegexCharacterMap charMap;
+
+    /** Events by their index in the state table, used for debugging */
+    private RegexEvent[] columnEvents;
+
     private Map<Integer, RegexState> finalStatesMap;
 
+    /** Maximum number of states of a lazy automaton, 0 if not lazy */
+    private int maxCachedStates;
+
+    /** Maximum number of states of a deterministic automaton, 0 if unlimited */
+    private int maxDfaStates;
+
+    /**
+     * Accepted strings and their objects if the automaton accepts only
+     * literals, null otherwise
+     */
+    private Map<String, Object> literals;
+
+    /**
+     * Table automaton of an automaton which accepts only literals, null
+     * until its states are constructed
+     */
+    private RegexTableAutomaton literalTableAutomaton;
+
     private boolean debugMode = false;
 
+    /**
+     * Creates an automaton which accepts exactly the keys of
+     * <code>literals</code>, each connected with its value as object. The
+     * automaton is a trie, see {@link RegexAhoCorasickAutomaton}, which is
+     * constructed without making an NFA deterministic. The states of a
+     * deterministic automaton are only constructed if they're requested,
+     * e.g. by {@link #getStateTable()}. {@link #getAutomaton()} and
+     * {@link #processEvent(char)} keep using the trie.
+     */
+    public RegexStateMachine(Map<String, Object> literals) {
+        super();
+
+        if (literals.isEmpty()) {
+            throw new IllegalArgumentException("no literals");
+        }
+
+        this.literals = Collections
+                .unmodifiableMap(new LinkedHashMap<String, Object>(literals));
+        automaton = new RegexAhoCorasickAutomaton(literals);
+        matcher = automaton.matcher();
+    }
+
     public RegexStateMachine(RegexState initialState,
             Set<RegexState> finalStates) {
+        this(initialState, finalStates, 0, DEFAULT_MAX_DFA_STATES);
+    }
+
+    /**
+     * Creates an automaton which is made deterministic lazily. The states of
+     * the deterministic automaton are constructed when the input reaches
+     * them for the first time, and at most <code>maxCachedStates</code>
+     * states are kept. See {@link RegexLazyAutomaton}.
+     */
+    public RegexStateMachine(RegexState initialState,
+            Set<RegexState> finalStates, int maxCachedStates) {
+        this(initialState, finalStates, checkCachedStates(maxCachedStates),
+                0);
+    }
+
+    /**
+     * Creates an automaton which is lazy if <code>maxCachedStates</code> is
+     * greater than 0. Otherwise the deterministic automaton is constructed
+     * completely unless it gets more than <code>maxDfaStates</code> states,
+     * in which case the NFA is simulated by a {@link RegexNfaAutomaton}. A
+     * value of 0 for <code>maxDfaStates</code> doesn't limit the number of
+     * states.
+     */
+    public RegexStateMachine(RegexState initialState,
+            Set<RegexState> finalStates, int maxCachedStates, int maxDfaStates) {
         super();
+
+        if (maxCachedStates < 0 || maxDfaStates < 0) {
+            throw new IllegalArgumentException("negative number of states");
+        }
+
         this.initialState = initialState;
         this.finalStates = finalStates;
+        this.maxCachedStates = maxCachedStates;
+        this.maxDfaStates = maxDfaStates;
         initialise();
     }
 
+    private static int checkCachedStates(int maxCachedStates) {
+        if (maxCachedStates < 1) {
+            throw new IllegalArgumentException(
+                    "a lazy automaton needs at least one state");
+        }
+
+        return maxCachedStates;
+    }
+
     private void initialise() {
         eliminateLambdaTransitions();
-        makeDeterministic();
-        // here the automaton should be minimised
-        buildTables();
-        reset();
+
+        if (maxCachedStates > 0) {
+            buildColumns();
+            createLazyAutomaton();
+        } else if (makeDeterministic()) {
+            buildColumns();
+            buildTables();
+            minimise();
+            createAutomaton();
+        } else {
+            buildColumns();
+            createNfaAutomaton();
+        }
+
+        createSearchAutomata();
+        matcher = automaton.matcher();
+    }
+
+    /**
+     * Constructs the deterministic automaton of an automaton which accepts
+     * only literals if it hasn't been constructed yet. The states of the
+     * NFA form a trie. The trie and the match in progress are kept.
+     */
+    private void createStates() {
+        if (literals == null || initialState != null) {
+            return;
+        }
+
+        RegexPrefilter prefilter = automaton.getPrefilter();
+        Map<String, RegexState> prefixes = new HashMap<String, RegexState>();
+
+        initialState = new RegexState();
+        finalStates = new HashSet<RegexState>();
+        prefixes.put("", initialState);
+
+        for (Map.Entry<String, Object> entry : literals.entrySet()) {
+            String literal = entry.getKey();
+            RegexState state = initialState;
+
+            for (int i = 0; i < literal.length(); i++) {
+                String prefix = literal.substring(0, i + 1);
+                RegexState next = prefixes.get(prefix);
+
+                if (next == null) {
+                    char c = literal.charAt(i);
+                    next = new RegexState();
+                    prefixes.put(prefix, next);
+                    state.addTransition(new RegexTransition(next,
+                            new RegexCharacterEvent(new RegexCharacterClass(
+                                    new RegexCharacterRange(c, c)))));
+                }
+
+                state = next;
+            }
+
+            state.setObject(entry.getValue());
+            state.setFinalState(true);
+            finalStates.add(state);
+        }
+
+        RegexCompiledAutomaton trie = automaton;
+        RegexMatcher trieMatcher = matcher;
+
+        initialise();
+        literalTableAutomaton = (RegexTableAutomaton) automaton;
+        literalTableAutomaton.setPrefilter(prefilter);
+        automaton = trie;
+        matcher = trieMatcher;
+    }
+
+    /**
+     * Checks whether the automaton only accepts literals, which are matched
+     * by a trie. See {@link #RegexStateMachine(Map)}.
+     */
+    public boolean isLiteral() {
+        return literals != null;
+    }
+
+    /**
+     * Returns the accepted strings and their objects if the automaton only
+     * accepts literals, otherwise <code>null</code>.
+     */
+    public Map<String, Object> getLiterals() {
+        return literals;
     }
 
     public RegexState getInitialState() {
+        createStates();
         return initialState;
     }
 
     public Set<RegexState> getFinalStates() {
+        createStates();
         return finalStates;
     }
 
     public Set<RegexState> getStates() {
+        createStates();
         return allStates;
     }
 
     public Set<RegexEvent> getEvents() {
+        createStates();
         return allEvents;
     }
 
+    /**
+     * Returns the compiled tables of this automaton. Contrary to the state
+     * machine itself, the compiled automaton may be shared by threads.
+     */
+    public RegexCompiledAutomaton getAutomaton() {
+        return automaton;
+    }
+
+    public boolean isLazy() {
+        return maxCachedStates > 0;
+    }
+
+    /**
+     * Checks whether the deterministic automaton exceeded the maximum number
+     * of states and the NFA is simulated instead, see
+     * {@link RegexNfaAutomaton}.
+     */
+    public boolean isSimulated() {
+        return literals == null && automaton instanceof RegexNfaAutomaton;
+    }
+
+    /**
+     * Returns the state table. The state table of a lazy automaton only
+     * contains the states constructed so far, where -2 denotes transitions
+     * which haven't been computed yet.
+     * 
+     * @throws IllegalStateException
+     *             if the NFA is simulated
+     */
     public int[][] getStateTable() {
+        createStates();
+        checkNotSimulated();
+
+        if (isLazy()) {
+            return ((RegexLazyAutomaton) automaton).getStateTable();
+        }
+
         return stateTable.clone();
     }
 
     public int getStateNumber(RegexState state) {
+        createStates();
+        checkNotSimulated();
+
+        if (isLazy()) {
+            throw new IllegalStateException(
+                    "states of a lazy automaton aren't numbered");
+        }
+
         return stateMap.get(state);
     }
 
+    /**
+     * Writes the deterministic automaton to <code>out</code>, so that it can
+     * be loaded with {@link RegexMappedAutomaton#load(java.io.File, Object[])}.
+     * 
+     * @return the accept objects by their index in the written automaton
+     * @throws IllegalStateException
+     *             if the automaton is lazy or the NFA is simulated
+     */
+    public Object[] write(OutputStream out) throws IOException {
+        if (isLazy()) {
+            throw new IllegalStateException(
+                    "a lazy automaton can't be written");
+        }
+
+        return RegexMappedAutomaton.write(getTableAutomaton(), out);
+    }
+
+    /**
+     * Creates an automaton which matches the UTF-8 encoding of the inputs
+     * accepted by this automaton. Transitions on surrogates are dropped.
+     *
+     * @throws IllegalStateException
+     *             if the automaton is lazy or the NFA is simulated
+     */
+    public RegexByteAutomaton createByteAutomaton() {
+        if (isLazy()) {
+            throw new IllegalStateException(
+                    "a lazy automaton can't be converted to UTF-8");
+        }
+
+        return RegexUtf8Compiler.compile(getTableAutomaton());
+    }
+
+    /**
+     * Returns the automaton as table automaton, which is constructed first
+     * if the automaton only accepts literals.
+     * 
+     * @throws IllegalStateException
+     *             if the automaton is lazy or the NFA is simulated
+     */
+    RegexTableAutomaton getTableAutomaton() {
+        createStates();
+        checkNotSimulated();
+
+        if (isLazy()) {
+            throw new IllegalStateException("the automaton is lazy");
+        }
+
+        if (literals != null) {
+            return literalTableAutomaton;
+        }
+
+        return (RegexTableAutomaton) automaton;
+    }
+
+    private void checkNotSimulated() {
+        if (isSimulated()) {
+            throw new IllegalStateException(
+                    "the automaton has no states, the NFA is simulated");
+        }
+    }
+
+    /**
+     * Sets the literals which every accepted input contains, which are
+     * checked before the automaton runs. The literals must be derived from
+     * the pattern of the automaton, see {@link RegexPrefilter}.
+     */
+    public void setPrefilter(RegexPrefilter prefilter) {
+        automaton.setPrefilter(prefilter);
+
+        if (literalTableAutomaton != null) {
+            literalTableAutomaton.setPrefilter(prefilter);
+        }
+    }
+
+    public RegexPrefilter getPrefilter() {
+        return automaton.getPrefilter();
+    }
+
     public int getEventNumber(RegexEvent event) {
+        createStates();
         return eventMap.get(event);
     }
 
-    private void buildTables() {
+    /**
+     * Collects the states and events and numbers the events, i.e. the columns
+     * of the state table.
+     */
+    private void buildColumns() {
         allStates = new HashSet<RegexState>();
         allEvents = new HashSet<RegexEvent>();
-        finalStatesMap = new HashMap<Integer, RegexState>();
         collectStatesAndEvents(initialState, allStates, allEvents);
-        Set<RegexCharacterClass> chars = new HashSet<RegexCharacterClass>();
+        eventMap = new HashMap<RegexEvent, Integer>();
+
+        int e = 0;
 
         for (RegexEvent event : allEvents) {
-            if (event instanceof RegexCharacterEvent) {
-                chars.add(((RegexCharacterEvent) event).getCharClass());
-            }
+            eventMap.put(event, e++);
         }
 
-        stateMap = new HashMap<RegexState, Integer>();
-        eventMap = new HashMap<RegexEvent, Integer>();
+        int otherColumn = e++;
+        eventMap.put(new RegexOtherEvent(), otherColumn);
 
-        int s = 0, e = 0;
-        Set<RegexEvent> duplicateEvents = new HashSet<RegexEvent>();
+        charMap = new RegexCharacterMap(otherColumn);
+        columnEvents = new RegexEvent[eventMap.size()];
+
+        for (Map.Entry<RegexEvent, Integer> entry : eventMap.entrySet()) {
+            columnEvents[entry.getValue()] = entry.getKey();
+        }
 
         for (RegexEvent event : allEvents) {
-            if (event instanceof RegexCharacterComplementEvent
-                    && chars.contains(((RegexCharacterComplementEvent) event)
-                            .getCharClass())) {
-                duplicateEvents.add(event);
+            if (event instanceof RegexCharacterEvent) {
+                int c = eventMap.get(event);
+                RegexIntervalSet set = ((RegexCharacterEvent) event)
+                        .getCharClass().getIntervalSet();
+
+                for (int i = 0; i < set.getIntervalCount(); i++) {
+                    charMap.put((char) set.getFrom(i), (char) set.getTo(i), c);
+                }
             } else {
-                eventMap.put(event, e++);
+                throw new IllegalStateException(
+                        "invalid event found in event table");
             }
         }
 
-        eventMap.put(new RegexOtherEvent(), e++);
-        allEvents.removeAll(duplicateEvents);
+        charMap.compact();
+    }
+
+    private void buildTables() {
+        stateMap = new HashMap<RegexState, Integer>();
+        finalStatesMap = new HashMap<Integer, RegexState>();
+
+        int s = 0;
 
         for (RegexState state : allStates) {
             stateMap.put(state, s);
@@ -155,22 +489,9 @@ public class RegexStateMachine {
 
         for (RegexState state : allStates) {
             int r = stateMap.get(state);
-            boolean complement = false;
             for (RegexTransition trans : state.getTransitions()) {
                 RegexEvent evt = trans.getEvent();
-                if (evt instanceof RegexCharacterComplementEvent) {
-                    if (!complement) {
-                        complement = true;
-                        int targetState = stateMap.get(trans.getTargetState());
-
-                        for (int i = 0; i < eventMap.size(); i++) {
-                            if (stateTable[r][i] == -1) {
-                                stateTable[r][i] = targetState;
-                            }
-                        }
-                    }
-
-                } else if (evt instanceof RegexCharacterEvent) {
+                if (evt instanceof RegexCharacterEvent) {
                     int c = eventMap.get(evt);
                     int targetState = stateMap.get(trans.getTargetState());
                     stateTable[r][c] = targetState;
@@ -180,6 +501,119 @@ public class RegexStateMachine {
 
     }
 
+    /**
+     * Merges equivalent states of the state table. Final states are only
+     * merged if they accept the same object, so that combined automata still
+     * report which automaton matched.
+     */
+    private void minimise() {
+        int[] partition = new int[stateTable.length];
+        Map<Object, Integer> acceptObjects = new HashMap<Object, Integer>();
+
+        for (Map.Entry<Integer, RegexState> entry : finalStatesMap.entrySet()) {
+            Object object = entry.getValue().getObject();
+            Integer block = acceptObjects.get(object);
+
+            if (block == null) {
+                block = acceptObjects.size() + 1;
+                acceptObjects.put(object, block);
+            }
+
+            partition[entry.getKey()] = block;
+        }
+
+        int[] numbers = RegexMinimiser.minimise(stateTable, partition);
+        int rows = 0;
+
+        for (int number : numbers) {
+            rows = Math.max(rows, number + 1);
+        }
+
+        int[][] minimalTable = new int[rows][];
+        Map<Integer, RegexState> minimalFinalStatesMap = new HashMap<Integer, RegexState>();
+
+        for (int r = 0; r < stateTable.length; r++) {
+            int number = numbers[r];
+
+            if (number == -1 || minimalTable[number] != null) {
+                continue;
+            }
+
+            minimalTable[number] = new int[stateTable[r].length];
+
+            for (int c = 0; c < stateTable[r].length; c++) {
+                int target = stateTable[r][c];
+                minimalTable[number][c] = target == -1 ? -1 : numbers[target];
+            }
+
+            if (finalStatesMap.containsKey(r)) {
+                minimalFinalStatesMap.put(number, finalStatesMap.get(r));
+            }
+        }
+
+        for (Map.Entry<RegexState, Integer> entry : stateMap.entrySet()) {
+            entry.setValue(numbers[entry.getValue()]);
+        }
+
+        stateTable = minimalTable;
+        finalStatesMap = minimalFinalStatesMap;
+    }
+
+    private void createLazyAutomaton() {
+        nfa = new RegexNfa(initialState, finalStates);
+        automaton = new RegexLazyAutomaton(nfa, charMap, getEventColumns(),
+                eventMap.size(), maxCachedStates);
+    }
+
+    /**
+     * Creates the automaton which simulates the NFA if the deterministic
+     * automaton has too many states.
+     */
+    private void createNfaAutomaton() {
+        automaton = new RegexNfaAutomaton(nfa, charMap, getEventColumns());
+    }
+
+    /**
+     * Prepares the unanchored automata used to search in an input, see
+     * {@link RegexSearcher}. They are created by the first searcher.
+     */
+    private void createSearchAutomata() {
+        int maxStates = maxCachedStates > 0 ? maxCachedStates
+                : MAX_SEARCH_STATES;
+
+        automaton.setSearchAutomataFactory(new RegexSearchAutomataFactory(
+                nfa, charMap, getEventColumns(), eventMap.size(), maxStates));
+    }
+
+    /**
+     * Returns the column of each event of the NFA. Events which only label
+     * transitions to dead states have no column and get -1.
+     */
+    private int[] getEventColumns() {
+        int[] eventColumns = new int[nfa.getEventCount()];
+
+        for (int e = 0; e < eventColumns.length; e++) {
+            Integer column = eventMap.get(nfa.getEvent(e));
+            eventColumns[e] = column == null ? -1 : column;
+        }
+
+        return eventColumns;
+    }
+
+    private void createAutomaton() {
+        int rows = stateTable.length;
+        boolean[] finals = new boolean[rows];
+        Object[] acceptObjects = new Object[rows];
+
+        for (Map.Entry<Integer, RegexState> entry : finalStatesMap.entrySet()) {
+            finals[entry.getKey()] = true;
+            acceptObjects[entry.getKey()] = entry.getValue().getObject();
+        }
+
+        automaton = new RegexTableAutomaton(charMap, stateTable, stateMap
+                .get(initialState), finals, acceptObjects);
+    }
+
     private void collectStatesAndEvents(RegexState currentState,
             Set<RegexState> allStates, Set<RegexEvent> allEvents) {
 
@@ -195,55 +629,57 @@ public class RegexStateMachine {
         }
     }
 
-    private void makeDeterministic() {
-        Map<String, RegexCompoundState> newStates = new HashMap<String, RegexCompoundState>();
-        Stack<RegexCompoundState> stack = new Stack<RegexCompoundState>();
+    /**
+     * Converts the automaton to a deterministic one. The subset construction
+     * works on the dense representation of the automaton, the resulting
+     * states are then converted to {@link RegexCompoundState}s.
+     * 
+     * @return false if the deterministic automaton exceeds the maximum
+     *         number of states, the automaton is left unchanged then
+     */
+    private boolean makeDeterministic() {
+        nfa = new RegexNfa(initialState, finalStates);
+        RegexDeterminiser determiniser = new RegexDeterminiser(nfa);
+
+        if (!determiniser.determinise(new int[] { 0 }, maxDfaStates)) {
+            return false;
+        }
 
-        RegexCompoundState newInitialState = new RegexCompoundState(
-                initialState);
+        RegexCompoundState[] newStates = new RegexCompoundState[determiniser
+                .getStateCount()];
+        Set<RegexState> newFinalStates = new HashSet<RegexState>();
 
-        stack.add(newInitialState);
-        newStates.put(newInitialState.getComboundId(), newInitialState);
+        for (int d = 0; d < newStates.length; d++) {
+            Set<RegexState> states = new HashSet<RegexState>();
+            boolean isFinal = false;
 
-        while (!stack.isEmpty()) {
-            RegexCompoundState state = stack.pop();
-            Set<RegexEvent> events = state.getAcceptedEvents();
-            for (RegexEvent evt : events) {
-                Set<RegexState> cmpStates = state.getAcceptingStates(evt);
+            for (int s : determiniser.getStateSet(d)) {
+                states.add(nfa.getState(s));
+                isFinal |= nfa.isFinalState(s);
+            }
 
-                if (cmpStates.size() > 0) {
-                    RegexCompoundState cmpState = new RegexCompoundState(
-                            cmpStates);
-                    if (newStates.containsKey(cmpState.getComboundId())) {
-                        cmpState = newStates.get(cmpState.getComboundId());
-                        RegexTransition t = new RegexTransition(cmpState, evt);
-                        state.addTransition(t);
-                    } else {
-                        RegexTransition t = new RegexTransition(cmpState, evt);
-                        state.addTransition(t);
-                        stack.push(cmpState);
-                        newStates.put(cmpState.getComboundId(), cmpState);
-                    }
-                }
+            newStates[d] = new RegexCompoundState(states);
+
+            if (isFinal) {
+                newStates[d].setFinalState(true);
+                newFinalStates.add(newStates[d]);
             }
         }
 
-        Set<RegexState> newFinalStates = new HashSet<RegexState>();
+        for (int d = 0; d < newStates.length; d++) {
+            int[] events = determiniser.getTransitionEvents(d);
+            int[] targets = determiniser.getTransitionTargets(d);
 
-        for (Map.Entry<String, RegexCompoundState> entry : newStates.entrySet()) {
-            RegexCompoundState cs = entry.getValue();
-            for (RegexState s : cs.getStates()) {
-                if (finalStates.contains(s)) {
-                    RegexState finalState = cs;
-                    finalState.setFinalState(true);
-                    newFinalStates.add(finalState);
-                    break;
-                }
+            for (int i = 0; i < events.length; i++) {
+                newStates[d].addTransition(new RegexTransition(
+                        newStates[targets[i]], nfa.getEvent(events[i])));
             }
         }
 
-        initialState = newInitialState;
+        initialState = newStates[0];
         finalStates = newFinalStates;
+
+        return true;
     }
 
     private void eliminateLambdaTransitions() {
@@ -266,25 +702,33 @@ public class RegexStateMachine {
          * Determine the target states.
          */
         states.push(initialState);
+        handledStates.add(initialState);
         nonLambdaStates.add(initialState);
 
         while (!states.isEmpty()) {
-            Stack<RegexState> path = new Stack<RegexState>();
             Set<RegexTransition> directTransitions = new HashSet<RegexTransition>();
             RegexState currentState = states.pop();
-            handledStates.add(currentState);
-            searchDirectTransitions(currentState, path, directTransitions);
+            Set<RegexState> closure = getLambdaClosure(currentState);
+
+            for (RegexState s : closure) {
+                for (RegexTransition t : s.getTransitions()) {
+                    if (!(t.getEvent() instanceof RegexLambdaEvent)) {
+                        directTransitions.add(t);
+                    }
+                }
+            }
+
             currentState.addTransitions(directTransitions);
 
             if (nonLambdaStates.contains(currentState)) {
-                if (canReachFinalState(currentState, path, finalState)) {
+                if (closure.contains(finalState)) {
                     currentState.setFinalState(true);
                     finalStates.add(currentState);
                 }
             }
 
             for (RegexTransition t : directTransitions) {
-                if (!handledStates.contains(t.getTargetState())) {
+                if (handledStates.add(t.getTargetState())) {
                     if (!(t.getEvent() instanceof RegexLambdaEvent)) {
                         nonLambdaStates.add(t.getTargetState());
                     }
@@ -298,16 +742,16 @@ public class RegexStateMachine {
          */
         states.push(initialState);
         handledStates.clear();
+        handledStates.add(initialState);
 
         while (!states.isEmpty()) {
             Set<RegexTransition> lambdaTransitions = new HashSet<RegexTransition>();
             RegexState currentState = states.pop();
-            handledStates.add(currentState);
 
             for (RegexTransition t : currentState.getTransitions()) {
                 if (t.getEvent() instanceof RegexLambdaEvent) {
                     lambdaTransitions.add(t);
-                } else if (!handledStates.contains(t.getTargetState())) {
+                } else if (handledStates.add(t.getTargetState())) {
                     states.push(t.getTargetState());
                 }
             }
@@ -317,131 +761,71 @@ public class RegexStateMachine {
 
     }
 
-    private boolean canReachFinalState(RegexState currentState,
-            Stack<RegexState> path, RegexState finalState) {
-        if (currentState.equals(finalState)) {
-            return true;
-        }
-
-        if (path.contains(currentState)) {
-            /* recognised a cycle */
-            return false;
-        }
+    /**
+     * Returns the states which are reachable from <code>state</code> with
+     * lambda transitions, including <code>state</code>. Each state is
+     * visited once, so the closure is found in linear time even if there
+     * are many lambda paths between two states.
+     */
+    private Set<RegexState> getLambdaClosure(RegexState state) {
+        Set<RegexState> closure = new HashSet<RegexState>();
+        Stack<RegexState> states = new Stack<RegexState>();
 
-        path.push(currentState);
+        closure.add(state);
+        states.push(state);
 
-        for (RegexTransition t : currentState.getTransitions()) {
-            if (t.getEvent() instanceof RegexLambdaEvent) {
-                if (canReachFinalState(t.getTargetState(), path, finalState)) {
-                    path.pop();
-                    return true;
+        while (!states.isEmpty()) {
+            for (RegexTransition t : states.pop().getTransitions()) {
+                if (t.getEvent() instanceof RegexLambdaEvent
+                        && closure.add(t.getTargetState())) {
+                    states.push(t.getTargetState());
                 }
             }
         }
 
-        path.pop();
-
-        return false;
-    }
-
-    private void searchDirectTransitions(RegexState startState,
-            Stack<RegexState> path, Set<RegexTransition> directTransitions) {
-
-        if (path.contains(startState)) {
-            /* recognised a cycle */
-            return;
-        }
-
-        path.push(startState);
-
-        for (RegexTransition t : startState.getTransitions()) {
-            if (t.getEvent() instanceof RegexLambdaEvent) {
-                searchDirectTransitions(t.getTargetState(), path,
-                        directTransitions);
-            } else {
-                directTransitions.add(t);
-            }
-        }
-
-        path.pop();
+        return closure;
     }
 
     public void reset() {
-        currentState = stateMap.get(initialState);
+        matcher.reset();
     }
 
     public void processEvent(char c) {
-        RegexEvent event = null;
-
-        if (currentState == -1) {
-            /* in reject state */
-            return;
-        }
-
-        for (RegexEvent e : allEvents) {
-            if (e instanceof RegexCharacterComplementEvent) {
-                ; // ignore
-            } else if (e instanceof RegexCharacterEvent) {
-                if (((RegexCharacterEvent) e).getCharClass().contains(c)) {
-                    event = e;
-                    break;
-                }
-            } else {
-                throw new IllegalStateException(
-                        "invalid event found in event table");
-            }
-        }
-
-        if (event == null) {
-            // try the complement
-            currentState = stateTable[currentState][eventMap.size() - 1];
-            if (debugMode) {
-                System.out.println("Event: other");
-            }
-        } else {
-            currentState = stateTable[currentState][eventMap.get(event)];
-            if (debugMode) {
-                System.out.println("Event: " + event);
-            }
-        }
+        matcher.processEvent(c);
 
         if (debugMode) {
-            System.out.println("New state: " + currentState);
+            System.out.println("Event: "
+                    + columnEvents[charMap.getColumn(c)]);
+            System.out.println("New state: " + matcher.getState());
         }
 
     }
 
     public boolean rejects() {
-        return currentState == -1;
+        return matcher.rejects();
     }
 
     public boolean accepts() {
-        if (currentState == -1) {
-            return false;
-        }
-
-        if (finalStatesMap.containsKey(currentState)) {
-            return true;
-        }
-
-        return false;
+        return matcher.accepts();
     }
 
     public Object getAcceptObject() {
-        if (currentState == -1) {
+        if (matcher.rejects()) {
             return false;
         }
 
-        return finalStatesMap.get(currentState).getObject();
+        return matcher.getAcceptObject();
     }
 
     public void setDebugging(boolean debug) {
+        createStates();
         debugMode = debug;
     }
 
     public String toString() {
         StringBuilder sb = new StringBuilder();
 
+        createStates();
         sb.append("[RegexStateMachine\n");
 
         for (RegexState s : allStates) {
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Numbers sets of NFA states.
+ * <p>
+ * A set is represented by the sorted array of the numbers of its states.
+ * The sets are kept in an open-addressing hash table, so equal sets always
+ * get the same number. Sets are numbered in the order they are added,
+ * starting with 0.
+ */
+class RegexStateSetTable {
+
+    private int count;
+
+    private int[][] sets = new int[16][];
+
+    private int[] hashes = new int[16];
+
+    /** Numbers of the sets + 1, 0 denotes an empty slot */
+    private int[] slots = new int[32];
+
+    public int size() {
+        return count;
+    }
+
+    public int[] getSet(int number) {
+        return sets[number];
+    }
+
+    /**
+     * Returns the number of <code>set</code> or -1 if it isn't in the table.
+     */
+    public int get(int[] set) {
+        int hash = Arrays.hashCode(set);
+        int mask = slots.length - 1;
+
+        for (int i = mix(hash) & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int number = slots[i] - 1;
+
+            if (hashes[number] == hash && Arrays.equals(sets[number], set)) {
+                return number;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the number of <code>set</code>. The set is added if it isn't
+     * in the table yet.
+     */
+    public int add(int[] set) {
+        int hash = Arrays.hashCode(set);
+        int mask = slots.length - 1;
+        int i = mix(hash) & mask;
+
+        for (; slots[i] != 0; i = (i + 1) & mask) {
+            int number = slots[i] - 1;
+
+            if (hashes[number] == hash && Arrays.equals(sets[number], set)) {
+                return number;
+            }
+        }
+
+        if (count == sets.length) {
+            int[][] newSets = new int[count * 2][];
+            int[] newHashes = new int[count * 2];
+            System.arraycopy(sets, 0, newSets, 0, count);
+            System.arraycopy(hashes, 0, newHashes, 0, count);
+            sets = newSets;
+            hashes = newHashes;
+        }
+
+        slots[i] = count + 1;
+        sets[count] = set;
+        hashes[count] = hash;
+
+        if (++count * 2 > slots.length) {
+            rehash();
+        }
+
+        return count - 1;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+
+        for (int number = 0; number < count; number++) {
+            int i = mix(hashes[number]) & mask;
+
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+
+            slots[i] = number + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 13);
+    }
+
+    /**
+     * Converts a bit set to a sorted array of the set bits.
+     */
+    public static int[] toArray(BitSet set) {
+        int[] array = new int[set.cardinality()];
+
+        for (int i = set.nextSetBit(0), j = 0; i >= 0; i = set.nextSetBit(i + 1)) {
+            array[j++] = i;
+        }
+
+        return array;
+    }
+
+}
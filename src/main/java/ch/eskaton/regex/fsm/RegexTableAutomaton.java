@@ -0,0 +1,324 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+/**
+ * A deterministic automaton whose state table was built completely at
+ * construction. The tables are immutable.
+ * <p>
+ * After {@link #matches(CharSequence)} has been called more often than the
+ * compile threshold, the automaton is compiled to bytecode by
+ * {@link RegexBytecodeCompiler} and <code>matches()</code> runs the compiled
+ * code instead of the table. If the automaton is too large for a method,
+ * it keeps using the table.
+ */
+public class RegexTableAutomaton extends RegexCompiledAutomaton {
+
+    /** Number of inputs processed together by matchAll() */
+    private static final int INTERLEAVE = 4;
+
+    /** Default number of calls of matches() before the automaton is compiled */
+    public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+
+    private final RegexCharacterMap charMap;
+
+    private final int[][] stateTable;
+
+    private final int initialState;
+
+    private final boolean[] finalStates;
+
+    private final Object[] acceptObjects;
+
+    /** Calls of matches() before compiling, -1 if not to be compiled */
+    private volatile int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+
+    /** Number of calls of matches(), updated without synchronisation */
+    private int matchCount;
+
+    private volatile RegexBytecodeMatcher compiledMatcher;
+
+    RegexTableAutomaton(RegexCharacterMap charMap, int[][] stateTable,
+            int initialState, boolean[] finalStates, Object[] acceptObjects) {
+        this.charMap = charMap;
+        this.stateTable = stateTable;
+        this.initialState = initialState;
+        this.finalStates = finalStates;
+        this.acceptObjects = acceptObjects;
+    }
+
+    @Override
+    public int getInitialState() {
+        return initialState;
+    }
+
+    @Override
+    public int getStateCount() {
+        return stateTable.length;
+    }
+
+    @Override
+    public int getNextState(int state, char c) {
+        if (state == REJECT_STATE) {
+            return REJECT_STATE;
+        }
+
+        return stateTable[state][charMap.getColumn(c)];
+    }
+
+    @Override
+    public boolean isFinalState(int state) {
+        return state != REJECT_STATE && finalStates[state];
+    }
+
+    @Override
+    public Object getAcceptObject(int state) {
+        if (state == REJECT_STATE) {
+            return null;
+        }
+
+        return acceptObjects[state];
+    }
+
+    RegexCharacterMap getCharacterMap() {
+        return charMap;
+    }
+
+    int[][] getStateTable() {
+        return stateTable;
+    }
+
+    boolean[] getFinalStates() {
+        return finalStates;
+    }
+
+    Object[] getAcceptObjects() {
+        return acceptObjects;
+    }
+
+    /**
+     * Sets the number of calls of {@link #matches(CharSequence)} after which
+     * the automaton is compiled to bytecode, -1 to never compile it.
+     */
+    public void setCompileThreshold(int compileThreshold) {
+        if (compileThreshold < -1) {
+            throw new IllegalArgumentException("invalid threshold "
+                    + compileThreshold);
+        }
+
+        this.compileThreshold = compileThreshold;
+    }
+
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    /**
+     * Checks whether the automaton has been compiled to bytecode.
+     */
+    public boolean isCompiled() {
+        return compiledMatcher != null;
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        if (!getPrefilter().accepts(input)) {
+            return false;
+        }
+
+        RegexBytecodeMatcher compiled = compiledMatcher;
+
+        if (compiled != null) {
+            return compiled.matches(input);
+        }
+
+        int threshold = compileThreshold;
+
+        if (threshold != -1 && ++matchCount > threshold) {
+            compiled = compile();
+
+            if (compiled != null) {
+                return compiled.matches(input);
+            }
+        }
+
+        return matchTable(input);
+    }
+
+    private boolean matchTable(CharSequence input) {
+        int state = initialState;
+
+        for (int i = 0; i < input.length() && state != REJECT_STATE; i++) {
+            state = stateTable[state][charMap.getColumn(input.charAt(i))];
+        }
+
+        return isFinalState(state);
+    }
+
+    /**
+     * Compiles the automaton unless another thread did it already. If the
+     * automaton can't be compiled, compiling is disabled.
+     */
+    private synchronized RegexBytecodeMatcher compile() {
+        if (compiledMatcher == null && compileThreshold != -1) {
+            compiledMatcher = RegexBytecodeCompiler.compile(this);
+
+            if (compiledMatcher == null) {
+                compileThreshold = -1;
+            }
+        }
+
+        return compiledMatcher;
+    }
+
+    /**
+     * Runs the automaton on four inputs at a time in the same loop, so that
+     * the loads of the rows of different inputs overlap. Inputs rejected by
+     * the prefilter start in the reject state.
+     */
+    @Override
+    public void matchAll(CharSequence[] inputs, boolean[] results) {
+        checkResults(inputs.length, results);
+
+        RegexPrefilter prefilter = getPrefilter();
+        int i = 0;
+
+        for (; i + INTERLEAVE <= inputs.length; i += INTERLEAVE) {
+            CharSequence in0 = inputs[i];
+            CharSequence in1 = inputs[i + 1];
+            CharSequence in2 = inputs[i + 2];
+            CharSequence in3 = inputs[i + 3];
+            int end0 = in0.length();
+            int end1 = in1.length();
+            int end2 = in2.length();
+            int end3 = in3.length();
+            int s0 = prefilter.accepts(in0) ? initialState : REJECT_STATE;
+            int s1 = prefilter.accepts(in1) ? initialState : REJECT_STATE;
+            int s2 = prefilter.accepts(in2) ? initialState : REJECT_STATE;
+            int s3 = prefilter.accepts(in3) ? initialState : REJECT_STATE;
+            int pos = 0;
+            int end = Math.max(Math.max(end0, end1), Math.max(end2, end3));
+
+            for (; pos < end; pos++) {
+                if (pos < end0 && s0 != REJECT_STATE) {
+                    s0 = stateTable[s0][charMap.getColumn(in0.charAt(pos))];
+                }
+                if (pos < end1 && s1 != REJECT_STATE) {
+                    s1 = stateTable[s1][charMap.getColumn(in1.charAt(pos))];
+                }
+                if (pos < end2 && s2 != REJECT_STATE) {
+                    s2 = stateTable[s2][charMap.getColumn(in2.charAt(pos))];
+                }
+                if (pos < end3 && s3 != REJECT_STATE) {
+                    s3 = stateTable[s3][charMap.getColumn(in3.charAt(pos))];
+                }
+                if (s0 == REJECT_STATE && s1 == REJECT_STATE
+                        && s2 == REJECT_STATE && s3 == REJECT_STATE) {
+                    break;
+                }
+            }
+
+            results[i] = isFinalState(s0);
+            results[i + 1] = isFinalState(s1);
+            results[i + 2] = isFinalState(s2);
+            results[i + 3] = isFinalState(s3);
+        }
+
+        for (; i < inputs.length; i++) {
+            results[i] = prefilter.accepts(inputs[i]) && matchTable(inputs[i]);
+        }
+    }
+
+    /**
+     * Runs the automaton on four inputs at a time in the same loop, see
+     * {@link #matchAll(CharSequence[], boolean[])}.
+     */
+    @Override
+    public void matchAll(char[] buffer, int[] offsets, boolean[] results) {
+        checkOffsets(buffer, offsets, results);
+
+        int count = offsets.length - 1;
+        int i = 0;
+
+        for (; i + INTERLEAVE <= count; i += INTERLEAVE) {
+            int p0 = offsets[i], end0 = offsets[i + 1];
+            int p1 = end0, end1 = offsets[i + 2];
+            int p2 = end1, end2 = offsets[i + 3];
+            int p3 = end2, end3 = offsets[i + 4];
+            int s0 = prefilterAccepts(buffer, p0, end0) ? initialState
+                    : REJECT_STATE;
+            int s1 = prefilterAccepts(buffer, p1, end1) ? initialState
+                    : REJECT_STATE;
+            int s2 = prefilterAccepts(buffer, p2, end2) ? initialState
+                    : REJECT_STATE;
+            int s3 = prefilterAccepts(buffer, p3, end3) ? initialState
+                    : REJECT_STATE;
+
+            while (true) {
+                boolean active = false;
+
+                if (p0 < end0 && s0 != REJECT_STATE) {
+                    s0 = stateTable[s0][charMap.getColumn(buffer[p0++])];
+                    active = true;
+                }
+                if (p1 < end1 && s1 != REJECT_STATE) {
+                    s1 = stateTable[s1][charMap.getColumn(buffer[p1++])];
+                    active = true;
+                }
+                if (p2 < end2 && s2 != REJECT_STATE) {
+                    s2 = stateTable[s2][charMap.getColumn(buffer[p2++])];
+                    active = true;
+                }
+                if (p3 < end3 && s3 != REJECT_STATE) {
+                    s3 = stateTable[s3][charMap.getColumn(buffer[p3++])];
+                    active = true;
+                }
+                if (!active) {
+                    break;
+                }
+            }
+
+            results[i] = isFinalState(s0);
+            results[i + 1] = isFinalState(s1);
+            results[i + 2] = isFinalState(s2);
+            results[i + 3] = isFinalState(s3);
+        }
+
+        for (; i < count; i++) {
+            int state = prefilterAccepts(buffer, offsets[i], offsets[i + 1])
+                    ? initialState : REJECT_STATE;
+
+            for (int j = offsets[i]; j < offsets[i + 1]
+                    && state != REJECT_STATE; j++) {
+                state = stateTable[state][charMap.getColumn(buffer[j])];
+            }
+
+            results[i] = isFinalState(state);
+        }
+    }
+
+}
@@ -26,9 +26,11 @@
  */
 package ch.eskaton.regex.fsm;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class RegexTransition {
 
-    private static int transitionId = 1;
+    private static final AtomicInteger transitionId = new AtomicInteger(1);
 
     private int id;
 
@@ -38,7 +40,7 @@ public class RegexTransition {
 
     public RegexTransition(RegexState targetState, RegexEvent event) {
         super();
-        id = transitionId++;
+        id = transitionId.getAndIncrement();
         this.targetState = targetState;
         this.event = event;
     }
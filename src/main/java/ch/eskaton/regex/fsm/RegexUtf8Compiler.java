@@ -0,0 +1,389 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts a deterministic automaton over characters to a
+ * {@link RegexByteAutomaton} over their UTF-8 encoding.
+ * <p>
+ * The character ranges of the transitions of each state are split into
+ * ranges of byte sequences of the same length, so that each sequence
+ * consists of one byte range per byte. Each sequence becomes a path of
+ * states from the state to the target of the transition. The resulting
+ * automaton is made deterministic over the 256 byte values and minimised.
+ * <p>
+ * A supplementary character is read by the character automaton as a high
+ * surrogate followed by a low surrogate. Both transitions are replaced by
+ * the four byte encoding of the character. Unpaired surrogates can't be
+ * encoded in UTF-8, so other transitions on surrogates are dropped.
+ */
+class RegexUtf8Compiler {
+
+    private static final int BYTES = 256;
+
+    private static final int[] MAX_CODE_POINTS = { 0x7f, 0x7ff, 0xffff };
+
+    private static final Comparator<int[]> RANGE_ORDER = new Comparator<int[]>() {
+        public int compare(int[] r1, int[] r2) {
+            return r1[0] < r2[0] ? -1 : (r1[0] == r2[0] ? 0 : 1);
+        }
+    };
+
+    /** Byte transitions of each state as first byte, last byte and target */
+    private final List<List<int[]>> transitions = new ArrayList<List<int[]>>();
+
+    private RegexUtf8Compiler() {
+    }
+
+    static RegexByteAutomaton compile(RegexTableAutomaton automaton) {
+        return new RegexUtf8Compiler().convert(automaton);
+    }
+
+    private RegexByteAutomaton convert(RegexTableAutomaton automaton) {
+        int[][] stateTable = automaton.getStateTable();
+        boolean[] finalStates = automaton.getFinalStates();
+        Object[] acceptObjects = automaton.getAcceptObjects();
+        List<int[]> runs = automaton.getCharacterMap().getRuns();
+        List<List<int[]>> ranges = new ArrayList<List<int[]>>();
+
+        for (int s = 0; s < stateTable.length; s++) {
+            transitions.add(new ArrayList<int[]>());
+            ranges.add(getRanges(stateTable[s], runs));
+        }
+
+        for (int s = 0; s < stateTable.length; s++) {
+            List<int[]> codePointRanges = new ArrayList<int[]>();
+
+            for (int[] range : ranges.get(s)) {
+                addCodePoints(range, ranges, codePointRanges);
+            }
+
+            Collections.sort(codePointRanges, RANGE_ORDER);
+            int[] last = null;
+
+            for (int[] range : codePointRanges) {
+                if (last != null && last[1] + 1 == range[0]
+                        && last[2] == range[2]) {
+                    last[1] = range[1];
+                } else {
+                    if (last != null) {
+                        addRange(s, last[0], last[1], last[2]);
+                    }
+
+                    last = range;
+                }
+            }
+
+            if (last != null) {
+                addRange(s, last[0], last[1], last[2]);
+            }
+        }
+
+        if (automaton.getInitialState() == RegexCompiledAutomaton.REJECT_STATE) {
+            return new RegexByteAutomaton(new int[0],
+                    RegexByteAutomaton.REJECT_STATE, new boolean[0],
+                    new Object[0]);
+        }
+
+        return determinise(automaton.getInitialState(), stateTable.length,
+                finalStates, acceptObjects);
+    }
+
+    /**
+     * Returns the character ranges of the transitions of a state as first
+     * character, last character and target, ordered by character.
+     */
+    private static List<int[]> getRanges(int[] row, List<int[]> runs) {
+        List<int[]> ranges = new ArrayList<int[]>();
+        int[] last = null;
+
+        for (int[] run : runs) {
+            int target = row[run[2]];
+
+            if (target == RegexCompiledAutomaton.REJECT_STATE) {
+                last = null;
+            } else if (last != null && last[2] == target) {
+                last[1] = run[1];
+            } else {
+                last = new int[] { run[0], run[1], target };
+                ranges.add(last);
+            }
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Adds the code points read by the transition <code>range</code> to
+     * <code>codePointRanges</code>. A range of high
+     * surrogates is combined with the low surrogates read by its target.
+     */
+    private static void addCodePoints(int[] range, List<List<int[]>> ranges,
+            List<int[]> codePointRanges) {
+        int from = range[0];
+        int to = range[1];
+
+        if (from < Character.MIN_SURROGATE) {
+            codePointRanges.add(new int[] { from,
+                    Math.min(to, Character.MIN_SURROGATE - 1), range[2] });
+        }
+
+        int highFrom = Math.max(from, Character.MIN_HIGH_SURROGATE);
+        int highTo = Math.min(to, Character.MAX_HIGH_SURROGATE);
+
+        for (int high = highFrom; high <= highTo; high++) {
+            for (int[] low : ranges.get(range[2])) {
+                int lowFrom = Math.max(low[0], Character.MIN_LOW_SURROGATE);
+                int lowTo = Math.min(low[1], Character.MAX_LOW_SURROGATE);
+
+                if (lowFrom <= lowTo) {
+                    codePointRanges.add(new int[] {
+                            Character.toCodePoint((char) high, (char) lowFrom),
+                            Character.toCodePoint((char) high, (char) lowTo),
+                            low[2] });
+                }
+            }
+        }
+
+        if (to > Character.MAX_SURROGATE) {
+            codePointRanges.add(new int[] {
+                    Math.max(from, Character.MAX_SURROGATE + 1), to, range[2] });
+        }
+    }
+
+    /**
+     * Adds the paths for the characters from <code>from</code> to
+     * <code>to</code> from state <code>state</code> to <code>target</code>.
+     */
+    private void addRange(int state, int from, int to, int target) {
+        List<int[][]> sequences = new ArrayList<int[][]>();
+        splitRange(from, to, sequences);
+
+        for (int[][] sequence : sequences) {
+            int current = state;
+
+            for (int i = 0; i < sequence.length; i++) {
+                int next;
+
+                if (i == sequence.length - 1) {
+                    next = target;
+                } else {
+                    next = transitions.size();
+                    transitions.add(new ArrayList<int[]>());
+                }
+
+                transitions.get(current).add(
+                        new int[] { sequence[i][0], sequence[i][1], next });
+                current = next;
+            }
+        }
+    }
+
+    /**
+     * Splits the code points from <code>from</code> to <code>to</code>
+     * into sequences of byte ranges. The code points of a sequence are
+     * encoded with the same number of bytes and all combinations of the
+     * bytes in the ranges are valid encodings.
+     */
+    static void splitRange(int from, int to, List<int[][]> sequences) {
+        if (from > to) {
+            return;
+        }
+
+        for (int max : MAX_CODE_POINTS) {
+            if (from <= max && to > max) {
+                splitRange(from, max, sequences);
+                splitRange(max + 1, to, sequences);
+                return;
+            }
+        }
+
+        if (to <= MAX_CODE_POINTS[0]) {
+            sequences.add(new int[][] { { from, to } });
+            return;
+        }
+
+        int length = encode(from).length;
+
+        for (int i = 1; i < length; i++) {
+            int mask = (1 << (6 * i)) - 1;
+
+            if ((from & ~mask) != (to & ~mask)) {
+                if ((from & mask) != 0) {
+                    splitRange(from, from | mask, sequences);
+                    splitRange((from | mask) + 1, to, sequences);
+                    return;
+                }
+
+                if ((to & mask) != mask) {
+                    splitRange(from, (to & ~mask) - 1, sequences);
+                    splitRange(to & ~mask, to, sequences);
+                    return;
+                }
+            }
+        }
+
+        byte[] fromBytes = encode(from);
+        byte[] toBytes = encode(to);
+        int[][] sequence = new int[length][];
+
+        for (int i = 0; i < length; i++) {
+            sequence[i] = new int[] { fromBytes[i] & 0xff, toBytes[i] & 0xff };
+        }
+
+        sequences.add(sequence);
+    }
+
+    /**
+     * Returns the UTF-8 encoding of the code point <code>c</code>.
+     */
+    static byte[] encode(int c) {
+        if (c <= 0x7f) {
+            return new byte[] { (byte) c };
+        } else if (c <= 0x7ff) {
+            return new byte[] { (byte) (0xc0 | (c >> 6)),
+                    (byte) (0x80 | (c & 0x3f)) };
+        } else if (c <= 0xffff) {
+            return new byte[] { (byte) (0xe0 | (c >> 12)),
+                    (byte) (0x80 | ((c >> 6) & 0x3f)),
+                    (byte) (0x80 | (c & 0x3f)) };
+        }
+
+        return new byte[] { (byte) (0xf0 | (c >> 18)),
+                (byte) (0x80 | ((c >> 12) & 0x3f)),
+                (byte) (0x80 | ((c >> 6) & 0x3f)),
+                (byte) (0x80 | (c & 0x3f)) };
+    }
+
+    /**
+     * Makes the byte transitions deterministic by the subset construction
+     * and minimises the result. The states below <code>states</code> are
+     * the states of the character automaton, the others are intermediate
+     * states of byte sequences.
+     */
+    private RegexByteAutomaton determinise(int initialState, int states,
+            boolean[] finalStates, Object[] acceptObjects) {
+        RegexStateSetTable sets = new RegexStateSetTable();
+        List<int[]> rows = new ArrayList<int[]>();
+        BitSet[] targets = new BitSet[BYTES];
+
+        for (int b = 0; b < BYTES; b++) {
+            targets[b] = new BitSet();
+        }
+
+        sets.add(new int[] { initialState });
+
+        for (int d = 0; d < sets.size(); d++) {
+            int[] row = new int[BYTES];
+
+            for (int s : sets.getSet(d)) {
+                for (int[] t : transitions.get(s)) {
+                    for (int b = t[0]; b <= t[1]; b++) {
+                        targets[b].set(t[2]);
+                    }
+                }
+            }
+
+            for (int b = 0; b < BYTES; b++) {
+                if (targets[b].isEmpty()) {
+                    row[b] = RegexByteAutomaton.REJECT_STATE;
+                    continue;
+                }
+
+                row[b] = sets.add(RegexStateSetTable.toArray(targets[b]));
+                targets[b].clear();
+            }
+
+            rows.add(row);
+        }
+
+        /*
+         * UTF-8 is prefix free, so a set which contains a state of the
+         * character automaton contains no other state
+         */
+        int[][] table = rows.toArray(new int[rows.size()][]);
+        int[] partition = new int[table.length];
+        Object[] objects = new Object[table.length];
+        Map<Object, Integer> blocks = new HashMap<Object, Integer>();
+
+        for (int d = 0; d < table.length; d++) {
+            int s = sets.getSet(d)[0];
+
+            if (s < states && finalStates[s]) {
+                Integer block = blocks.get(acceptObjects[s]);
+
+                if (block == null) {
+                    block = blocks.size() + 1;
+                    blocks.put(acceptObjects[s], block);
+                }
+
+                partition[d] = block;
+                objects[d] = acceptObjects[s];
+            }
+        }
+
+        int[] numbers = RegexMinimiser.minimise(table, partition);
+        int count = 0;
+
+        for (int number : numbers) {
+            count = Math.max(count, number + 1);
+        }
+
+        int[] minimalTable = new int[count * BYTES];
+        boolean[] minimalFinalStates = new boolean[count];
+        Object[] minimalObjects = new Object[count];
+
+        for (int d = 0; d < table.length; d++) {
+            int number = numbers[d];
+
+            if (number == -1) {
+                continue;
+            }
+
+            for (int b = 0; b < BYTES; b++) {
+                int target = table[d][b];
+                minimalTable[number * BYTES + b] = target == -1 ? -1
+                        : numbers[target];
+            }
+
+            minimalFinalStates[number] = partition[d] != 0;
+            minimalObjects[number] = objects[d];
+        }
+
+        return new RegexByteAutomaton(minimalTable, numbers[0],
+                minimalFinalStates, minimalObjects);
+    }
+
+}
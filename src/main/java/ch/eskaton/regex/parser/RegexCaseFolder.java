@@ -0,0 +1,189 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the character classes of a syntax tree, so that they match the
+ * case variants of their characters.
+ * <p>
+ * Two characters are case variants if they have the same simple case
+ * folding, i.e. <code>Character.toLowerCase(Character.toUpperCase(c))</code>
+ * is equal, as in {@link java.util.regex.Pattern#UNICODE_CASE}. Without
+ * Unicode case only the ASCII letters are folded. The automaton then
+ * matches case-insensitively without converting its input.
+ * <p>
+ * A class is folded before it is inverted, so <code>[^a]</code> matches
+ * neither <code>a</code> nor <code>A</code>.
+ */
+class RegexCaseFolder {
+
+    private static final int[][] ASCII_VARIANTS = new int[26][];
+
+    static {
+        for (int i = 0; i < ASCII_VARIANTS.length; i++) {
+            ASCII_VARIANTS[i] = new int[] { 'A' + i, 'a' + i };
+        }
+    }
+
+    /** Sets of characters which are case variants of each other */
+    private final int[][] variants;
+
+    private final Map<RegexNode, RegexNode> folded = new IdentityHashMap<RegexNode, RegexNode>();
+
+    /** Folded sets, so that a shared set is folded once */
+    private final Map<RegexIntervalSet, RegexIntervalSet> foldedSets = new IdentityHashMap<RegexIntervalSet, RegexIntervalSet>();
+
+    private RegexCaseFolder(boolean unicode) {
+        variants = unicode ? UnicodeVariants.VARIANTS : ASCII_VARIANTS;
+    }
+
+    /**
+     * Returns the rewritten tree. Nodes other than character classes are
+     * changed in place.
+     */
+    static RegexNode fold(RegexNode node, boolean unicode) {
+        return new RegexCaseFolder(unicode).foldNode(node);
+    }
+
+    private RegexNode foldNode(RegexNode node) {
+        RegexNode result = folded.get(node);
+
+        if (result != null) {
+            return result;
+        }
+
+        if (node instanceof RegexCharacterClass) {
+            RegexCharacterClass chrClass = (RegexCharacterClass) node;
+            RegexCharacterClass foldedClass = new RegexCharacterClass(
+                    foldSet(chrClass.getIntervalSet()));
+
+            if (chrClass.isInverted()) {
+                foldedClass.invert();
+            }
+
+            result = foldedClass;
+        } else {
+            for (int i = 0; i < node.nodes.size(); i++) {
+                node.nodes.set(i, foldNode(node.nodes.get(i)));
+            }
+
+            result = node;
+        }
+
+        folded.put(node, result);
+        folded.put(result, result);
+
+        return result;
+    }
+
+    private RegexIntervalSet foldSet(RegexIntervalSet set) {
+        RegexIntervalSet result = foldedSets.get(set);
+
+        if (result != null) {
+            return result;
+        }
+
+        List<RegexCharacterRange> ranges = new ArrayList<RegexCharacterRange>();
+
+        for (int[] chars : variants) {
+            for (int c : chars) {
+                if (set.contains(c)) {
+                    for (int variant : chars) {
+                        ranges.add(new RegexCharacterRange(variant, variant));
+                    }
+
+                    break;
+                }
+            }
+        }
+
+        result = ranges.isEmpty() ? set : set.union(RegexIntervalSet
+                .of(ranges));
+        foldedSets.put(set, result);
+
+        return result;
+    }
+
+    /**
+     * The case variants of all characters, which are computed on first use.
+     */
+    private static class UnicodeVariants {
+
+        static final int[][] VARIANTS;
+
+        static {
+            Map<Integer, List<Integer>> byFolding = new HashMap<Integer, List<Integer>>();
+
+            for (int c = 0; c <= Character.MAX_CODE_POINT; c++) {
+                int folding = Character.toLowerCase(Character.toUpperCase(c));
+
+                if (folding != c) {
+                    List<Integer> chars = byFolding.get(folding);
+
+                    if (chars == null) {
+                        chars = new ArrayList<Integer>();
+                        byFolding.put(folding, chars);
+                    }
+
+                    chars.add(c);
+                }
+            }
+
+            List<int[]> variants = new ArrayList<int[]>();
+
+            for (Map.Entry<Integer, List<Integer>> entry : byFolding
+                    .entrySet()) {
+                int folding = entry.getKey();
+                List<Integer> chars = entry.getValue();
+
+                if (Character.toLowerCase(Character.toUpperCase(folding)) == folding) {
+                    chars.add(folding);
+                }
+
+                if (chars.size() > 1) {
+                    int[] array = new int[chars.size()];
+
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = chars.get(i);
+                    }
+
+                    variants.add(array);
+                }
+            }
+
+            VARIANTS = variants.toArray(new int[variants.size()][]);
+        }
+
+    }
+
+}
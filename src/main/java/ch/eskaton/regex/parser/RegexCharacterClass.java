@@ -26,7 +26,7 @@
  */
 package ch.eskaton.regex.parser;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import ch.eskaton.yajpg.api.ParseException;
@@ -37,24 +37,34 @@ import ch.eskaton.yajpg.api.Token;
  * or more character ranges.
  * <p>
  * All characters, whether it's a single character or a class like [a-z]
- * are converted to a character class.
+ * are converted to a character class. The characters are kept as
+ * {@link RegexIntervalSet}.
  */
 public class RegexCharacterClass extends RegexNode {
 
     private boolean inverted = false;
 
-    public Set<RegexCharacterRange> chars = new HashSet<RegexCharacterRange>();
+    private RegexIntervalSet set;
 
     public RegexCharacterClass(Token t) {
-        chars.add(new RegexCharacterRange(t.getBuffer(), t.getBuffer()));
+        this(new RegexCharacterRange(t.getBuffer(), t.getBuffer()));
     }
 
     public RegexCharacterClass(Token t1, Token t2) {
-        chars.add(new RegexCharacterRange(t1.getBuffer(), t2.getBuffer()));
+        this(new RegexCharacterRange(t1.getBuffer(), t2.getBuffer()));
     }
 
     public RegexCharacterClass(RegexCharacterRange range) {
-        chars.add(range);
+        set = RegexIntervalSet.of(range.getFromCodePoint(), range
+                .getToCodePoint());
+    }
+
+    public RegexCharacterClass(Set<RegexCharacterRange> ranges) {
+        set = RegexIntervalSet.of(ranges);
+    }
+
+    public RegexCharacterClass(RegexIntervalSet set) {
+        this.set = set;
     }
 
     @Override
@@ -62,27 +72,26 @@ public class RegexCharacterClass extends RegexNode {
         if (!(node instanceof RegexCharacterClass)) {
             throw new ParseException("character-class-node expected");
         }
-        chars.addAll(((RegexCharacterClass) node).chars);
+        set = set.union(((RegexCharacterClass) node).set);
+    }
+
+    public RegexIntervalSet getIntervalSet() {
+        return set;
     }
 
+    /**
+     * Returns the ranges of the class. Adjacent ranges are merged.
+     */
     public Set<RegexCharacterRange> getCharacterRanges() {
-        return chars;
+        return new LinkedHashSet<RegexCharacterRange>(set.getRanges());
     }
 
     public void setCharacterRanges(Set<RegexCharacterRange> chars) {
-        this.chars = chars;
+        set = RegexIntervalSet.of(chars);
     }
 
-    public boolean contains(char c) {
-        RegexCharacterRange cr = new RegexCharacterRange(String.valueOf(c),
-                String.valueOf(c));
-        for (RegexCharacterRange r : chars) {
-            if (r.intersects(cr)) {
-                return true;
-            }
-        }
-
-        return false;
+    public boolean contains(int codePoint) {
+        return set.contains(codePoint);
     }
 
     @Override
@@ -91,21 +100,16 @@ public class RegexCharacterClass extends RegexNode {
     }
 
     public String toString() {
-        StringBuffer sb = new StringBuffer();
-        sb.append("[");
-        for (RegexCharacterRange chr : chars) {
-            sb.append(chr);
+        if (inverted) {
+            return "[^" + set.toString().substring(1);
         }
-        sb.append("]");
-        return sb.toString();
+
+        return set.toString();
     }
 
     @Override
     public int hashCode() {
-        final int PRIME = 31;
-        int result = 1;
-        result = PRIME * result + ((chars == null) ? 0 : chars.hashCode());
-        return result;
+        return set.hashCode() * 31 + (inverted ? 1 : 0);
     }
 
     @Override
@@ -117,12 +121,7 @@ public class RegexCharacterClass extends RegexNode {
         if (getClass() != obj.getClass())
             return false;
         final RegexCharacterClass other = (RegexCharacterClass) obj;
-        if (chars == null) {
-            if (other.chars != null)
-                return false;
-        } else if (!chars.equals(other.chars))
-            return false;
-        return true;
+        return inverted == other.inverted && set.equals(other.set);
     }
 
     public void invert() {
@@ -27,6 +27,9 @@
 package ch.eskaton.regex.parser;
 
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -37,9 +40,16 @@ public class RegexCharacterClassCollector implements RegexNodeVisitor {
 
     private Set<RegexCharacterRange> chars = new HashSet<RegexCharacterRange>();
 
+    /** Sets whose ranges are collected, a shared set is collected once */
+    private Map<RegexIntervalSet, Boolean> sets = new IdentityHashMap<RegexIntervalSet, Boolean>();
+
     public void processNode(RegexNode node) {
         if (node instanceof RegexCharacterClass) {
-            chars.addAll(((RegexCharacterClass) node).getCharacterRanges());
+            RegexCharacterClass chrClass = (RegexCharacterClass) node;
+
+            if (sets.put(chrClass.getIntervalSet(), Boolean.TRUE) == null) {
+                chars.addAll(chrClass.getCharacterRanges());
+            }
         }
     }
 
@@ -47,4 +57,11 @@ public class RegexCharacterClassCollector implements RegexNodeVisitor {
         return chars;
     }
 
+    /**
+     * Returns the distinct sets of the character classes.
+     */
+    public Set<RegexIntervalSet> getIntervalSets() {
+        return new LinkedHashSet<RegexIntervalSet>(sets.keySet());
+    }
+
 }
@@ -26,32 +26,250 @@
  */
 package ch.eskaton.regex.parser;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * A visitor class to substitute character ranges in a syntax tree.
+ * Splits character classes into ranges of a partition.
  * <p>
- * Replaces all ranges that overlap with ranges configured in this class.
+ * The partition consists of the fewest non-overlapping ranges, such that
+ * each of the ranges the splitter is created with is a union of ranges of
+ * the partition. It is computed with a sweep over the sorted bounds of the
+ * ranges in O(n log n). Each class is then represented by the ranges of the
+ * partition it contains, so that the transitions of an automaton never
+ * overlap. The ranges covering a class are found by binary search.
+ * <p>
+ * A splitter created with {@link #forSets(Collection)} also merges the
+ * ranges of the partition which are contained in exactly the same sets into
+ * an equivalence class. A set like <code>\p{L}</code> then needs a single
+ * transition instead of one per range, see
+ * {@link #splitClasses(RegexIntervalSet)}.
  */
-public class RegexCharacterClassSplitter implements RegexNodeVisitor {
+public class RegexCharacterClassSplitter {
+
+    private RegexCharacterRange[] partition;
+
+    /** The equivalence class of each range of the partition */
+    private int[] classOf;
+
+    private RegexIntervalSet[] classes;
+
+    private Map<RegexIntervalSet, List<RegexIntervalSet>> splitSets = new IdentityHashMap<RegexIntervalSet, List<RegexIntervalSet>>();
+
+    /**
+     * Creates a splitter for the partition of <code>ranges</code>, which
+     * may overlap.
+     */
+    public RegexCharacterClassSplitter(Collection<RegexCharacterRange> ranges) {
+        partition = partition(ranges);
+    }
+
+    /**
+     * Creates a splitter for the partition of the ranges of
+     * <code>sets</code> which groups the ranges of the partition into
+     * equivalence classes.
+     */
+    public static RegexCharacterClassSplitter forSets(
+            Collection<RegexIntervalSet> sets) {
+        List<RegexCharacterRange> ranges = new ArrayList<RegexCharacterRange>();
+
+        for (RegexIntervalSet set : sets) {
+            ranges.addAll(set.getRanges());
+        }
+
+        RegexCharacterClassSplitter splitter = new RegexCharacterClassSplitter(
+                ranges);
+        splitter.classify(sets);
+        return splitter;
+    }
+
+    /**
+     * Assigns each range of the partition to the class of the ranges which
+     * are contained in the same sets.
+     */
+    private void classify(Collection<RegexIntervalSet> sets) {
+        List<List<Integer>> signatures = new ArrayList<List<Integer>>();
+
+        for (int i = 0; i < partition.length; i++) {
+            signatures.add(new ArrayList<Integer>());
+        }
+
+        int index = 0;
+
+        for (RegexIntervalSet set : sets) {
+            for (int i = 0; i < set.getIntervalCount(); i++) {
+                int end = find(set.getTo(i) + 1);
+
+                for (int k = find(set.getFrom(i)); k < end; k++) {
+                    signatures.get(k).add(index);
+                }
+            }
+
+            index++;
+        }
+
+        Map<List<Integer>, Integer> ids = new HashMap<List<Integer>, Integer>();
+        List<List<RegexCharacterRange>> members = new ArrayList<List<RegexCharacterRange>>();
+        classOf = new int[partition.length];
+
+        for (int k = 0; k < partition.length; k++) {
+            Integer id = ids.get(signatures.get(k));
+
+            if (id == null) {
+                id = members.size();
+                ids.put(signatures.get(k), id);
+                members.add(new ArrayList<RegexCharacterRange>());
+            }
+
+            classOf[k] = id;
+            members.get(id).add(partition[k]);
+        }
+
+        classes = new RegexIntervalSet[members.size()];
+
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = RegexIntervalSet.of(members.get(i));
+        }
+    }
+
+    /**
+     * Returns the partition of <code>ranges</code> in ascending order.
+     */
+    public static RegexCharacterRange[] partition(
+            Collection<RegexCharacterRange> ranges) {
+        int n = ranges.size();
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        int i = 0;
+
+        for (RegexCharacterRange range : ranges) {
+            starts[i] = range.getFromCodePoint();
+            ends[i++] = range.getToCodePoint() + 1;
+        }
 
-    private Set<RegexCharacterRange> chars = new HashSet<RegexCharacterRange>();
+        Arrays.sort(starts);
+        Arrays.sort(ends);
 
-    public RegexCharacterClassSplitter(Set<RegexCharacterRange> chars) {
-        this.chars = chars;
+        RegexCharacterRange[] partition = new RegexCharacterRange[2 * n];
+        int count = 0;
+        int covering = 0;
+        int previous = 0;
+        int s = 0;
+        int e = 0;
+
+        while (e < n) {
+            int bound = s < n ? Math.min(starts[s], ends[e]) : ends[e];
+
+            if (covering > 0 && previous < bound) {
+                partition[count++] = new RegexCharacterRange(previous,
+                        bound - 1);
+            }
+
+            for (; s < n && starts[s] == bound; s++) {
+                covering++;
+            }
+
+            for (; e < n && ends[e] == bound; e++) {
+                covering--;
+            }
+
+            previous = bound;
+        }
+
+        RegexCharacterRange[] result = new RegexCharacterRange[count];
+        System.arraycopy(partition, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Returns the ranges of the partition which make up <code>set</code> in
+     * ascending order.
+     */
+    public List<RegexCharacterRange> split(RegexIntervalSet set) {
+        if (set.getIntervalCount() == 1) {
+            return split(set.getFrom(0), set.getTo(0));
+        }
+
+        List<RegexCharacterRange> ranges = new ArrayList<RegexCharacterRange>();
+
+        for (int i = 0; i < set.getIntervalCount(); i++) {
+            ranges.addAll(split(set.getFrom(i), set.getTo(i)));
+        }
+
+        return ranges;
     }
 
-    public void processNode(RegexNode node) {
-        if (node instanceof RegexCharacterClass) {
-            Set<RegexCharacterRange> ranges = ((RegexCharacterClass) node)
-                    .getCharacterRanges();
-            Set<RegexCharacterRange> newRanges = new HashSet<RegexCharacterRange>();
-            for (RegexCharacterRange range : ranges) {
-                newRanges.addAll(range.getAllIntersectingRanges(chars));
+    /**
+     * Returns the equivalence classes which make up <code>set</code>,
+     * ordered by their first character. Without classes, each range of the
+     * partition is a class of its own. The classes of a set are kept, so
+     * that a shared set is split once.
+     */
+    public List<RegexIntervalSet> splitClasses(RegexIntervalSet set) {
+        List<RegexIntervalSet> result = splitSets.get(set);
+
+        if (result != null) {
+            return result;
+        }
+
+        result = new ArrayList<RegexIntervalSet>();
+
+        if (classes == null) {
+            for (RegexCharacterRange range : split(set)) {
+                result.add(RegexIntervalSet.of(range.getFromCodePoint(), range
+                        .getToCodePoint()));
+            }
+        } else {
+            boolean[] added = new boolean[classes.length];
+
+            for (int i = 0; i < set.getIntervalCount(); i++) {
+                int end = find(set.getTo(i) + 1);
+
+                for (int k = find(set.getFrom(i)); k < end; k++) {
+                    if (!added[classOf[k]]) {
+                        added[classOf[k]] = true;
+                        result.add(classes[classOf[k]]);
+                    }
+                }
             }
-            ((RegexCharacterClass) node).setCharacterRanges(newRanges);
         }
+
+        splitSets.put(set, result);
+        return result;
+    }
+
+    /**
+     * Returns the ranges of the partition which make up the range from
+     * <code>from</code> to <code>to</code>.
+     */
+    public List<RegexCharacterRange> split(int from, int to) {
+        return Arrays.asList(partition).subList(find(from), find(to + 1));
+    }
+
+    /**
+     * Returns the index of the first range of the partition which starts at
+     * or after <code>codePoint</code>.
+     */
+    private int find(int codePoint) {
+        int low = 0;
+        int high = partition.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (partition[mid].getFromCodePoint() < codePoint) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
     }
 
 }
@@ -26,53 +26,58 @@
  */
 package ch.eskaton.regex.parser;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
  * A character range contains one ore more characters of a character class of
- * a regular expression.
+ * a regular expression. The bounds of the range are code points, so that a
+ * range may contain supplementary characters.
  * <p>
  * E.g. [a-z0] contains two character ranges. One for a-z and one for 0.
  */
 public class RegexCharacterRange implements Comparable<RegexCharacterRange> {
 
-    private String chrFrom;
+    private int from;
 
-    private String chrTo;
+    private int to;
 
+    /**
+     * Creates a range from the first code point of <code>chr1</code> to the
+     * first code point of <code>chr2</code>.
+     */
     public RegexCharacterRange(String chr1, String chr2) {
-        chrFrom = chr1;
-        chrTo = chr2;
+        this(chr1.codePointAt(0), chr2.codePointAt(0));
+    }
+
+    public RegexCharacterRange(int from, int to) {
+        this.from = from;
+        this.to = to;
     }
 
     public String getFrom() {
-        return chrFrom;
+        return new String(Character.toChars(from));
     }
 
     public String getTo() {
-        return chrTo;
+        return new String(Character.toChars(to));
     }
 
-    public boolean intersects(RegexCharacterRange range) {
-        char f1 = chrFrom.charAt(0);
-        char f2 = range.getFrom().charAt(0);
-        char t1 = chrTo.charAt(0);
-        char t2 = range.getTo().charAt(0);
+    public int getFromCodePoint() {
+        return from;
+    }
 
-        if (f2 >= f1 && f2 <= t1) {
-            return true;
-        } else if (t2 >= f1 && t2 <= t1) {
-            return true;
-        } else if (f1 >= f2 && f1 <= t2) {
-            return true;
-        } else if (t1 >= f2 && t1 <= t2) {
-            return true;
-        }
+    public int getToCodePoint() {
+        return to;
+    }
 
-        return false;
+    public boolean contains(int codePoint) {
+        return codePoint >= from && codePoint <= to;
+    }
+
+    public boolean intersects(RegexCharacterRange range) {
+        return range.from <= to && range.to >= from;
     }
 
     /**
@@ -110,44 +115,31 @@ public class RegexCharacterRange implements Comparable<RegexCharacterRange> {
             range2 = range;
         }
 
-        char f1 = range1.chrFrom.charAt(0);
-        char f2 = range2.getFrom().charAt(0);
-        char t1 = range1.chrTo.charAt(0);
-        char t2 = range2.getTo().charAt(0);
+        int f1 = range1.from;
+        int f2 = range2.from;
+        int t1 = range1.to;
+        int t2 = range2.to;
 
         if (f1 < f2 && t1 < f2) {
             return ranges;
         } else if (f1 < f2 && t1 < t2) {
-            ranges.add(new RegexCharacterRange(String.valueOf(f1), String
-                    .valueOf((char) (f2 - 1))));
-            ranges.add(new RegexCharacterRange(String.valueOf(f2), String
-                    .valueOf(t1)));
-            ranges.add(new RegexCharacterRange(String.valueOf((char) (t1 + 1)),
-                    String.valueOf(t2)));
+            ranges.add(new RegexCharacterRange(f1, f2 - 1));
+            ranges.add(new RegexCharacterRange(f2, t1));
+            ranges.add(new RegexCharacterRange(t1 + 1, t2));
         } else if (f1 > f2 && t1 > t2) {
-            ranges.add(new RegexCharacterRange(String.valueOf(f2), String
-                    .valueOf((char) (f1 - 1))));
-            ranges.add(new RegexCharacterRange(String.valueOf(f1), String
-                    .valueOf(t2)));
-            ranges.add(new RegexCharacterRange(String.valueOf((char) (t2 + 1)),
-                    String.valueOf(t1)));
+            ranges.add(new RegexCharacterRange(f2, f1 - 1));
+            ranges.add(new RegexCharacterRange(f1, t2));
+            ranges.add(new RegexCharacterRange(t2 + 1, t1));
         } else if (f1 < f2 && t1 > t2) {
-            ranges.add(new RegexCharacterRange(String.valueOf(f1), String
-                    .valueOf((char) (f2 - 1))));
-            ranges.add(new RegexCharacterRange(String.valueOf(f2), String
-                    .valueOf(t2)));
-            ranges.add(new RegexCharacterRange(String.valueOf((char) (t2 + 1)),
-                    String.valueOf(t1)));
+            ranges.add(new RegexCharacterRange(f1, f2 - 1));
+            ranges.add(new RegexCharacterRange(f2, t2));
+            ranges.add(new RegexCharacterRange(t2 + 1, t1));
         } else if (f1 < f2 && t1 == t2) {
-            ranges.add(new RegexCharacterRange(String.valueOf(f1), String
-                    .valueOf((char) (f2 - 1))));
-            ranges.add(new RegexCharacterRange(String.valueOf(f2), String
-                    .valueOf(t2)));
+            ranges.add(new RegexCharacterRange(f1, f2 - 1));
+            ranges.add(new RegexCharacterRange(f2, t2));
         } else if (f1 == f2 && t1 < t2) {
-            ranges.add(new RegexCharacterRange(String.valueOf(f1), String
-                    .valueOf(t1)));
-            ranges.add(new RegexCharacterRange(String.valueOf((char) (t1 + 1)),
-                    String.valueOf(t2)));
+            ranges.add(new RegexCharacterRange(f1, t1));
+            ranges.add(new RegexCharacterRange(t1 + 1, t2));
         } else {
             throw new IllegalStateException("unhandled case");
         }
@@ -158,49 +150,24 @@ public class RegexCharacterRange implements Comparable<RegexCharacterRange> {
     /**
      * Checks whether the set contains overlapping ranges and returns a new
      * set which contains non-overlapping ranges that cover the same range.
+     * 
+     * @see RegexCharacterClassSplitter#partition(java.util.Collection)
      */
     public static Set<RegexCharacterRange> splitIntersectingRanges(
             Set<RegexCharacterRange> chars) {
-        Set<RegexCharacterRange> splitted = new HashSet<RegexCharacterRange>();
-
-        ArrayList<RegexCharacterRange> ranges = new ArrayList<RegexCharacterRange>();
-        ranges.addAll(chars);
-        Collections.sort(ranges);
-
-        for (int i = 0; i < ranges.size() - 1;) {
-            RegexCharacterRange range1 = ranges.get(i);
-            RegexCharacterRange range2 = ranges.get(i + 1);
-
-            if (!range1.intersects(range2)) {
-                i++;
-                continue;
-            }
-
-            Set<RegexCharacterRange> newRanges = range1
-                    .splitIntersectingRanges(range2);
-            ArrayList<RegexCharacterRange> newRangesSorted = new ArrayList<RegexCharacterRange>();
-            newRangesSorted.addAll(newRanges);
-            Collections.sort(newRangesSorted);
-            ranges.remove(i + 1);
-            ranges.remove(i);
-            ranges.addAll(i, newRangesSorted);
-            Collections.sort(ranges);
-        }
-
-        splitted.addAll(ranges);
-
-        return splitted;
+        return new HashSet<RegexCharacterRange>(Arrays
+                .asList(RegexCharacterClassSplitter.partition(chars)));
     }
 
     public String toString() {
         StringBuffer sb = new StringBuffer();
-        if (chrTo.equals(chrFrom)) {
-            if (RegexLexer.ESCAPABLE_CHARS.contains(chrFrom)) {
+        if (from == to) {
+            if (RegexLexer.ESCAPABLE_CHARS.contains(getFrom())) {
                 sb.append("\\");
             }
-            sb.append(chrFrom);
+            sb.append(getFrom());
         } else {
-            sb.append(chrFrom + "-" + chrTo);
+            sb.append(getFrom() + "-" + getTo());
         }
         return sb.toString();
     }
@@ -211,28 +178,27 @@ public class RegexCharacterRange implements Comparable<RegexCharacterRange> {
         if (!(o instanceof RegexCharacterRange)) {
             return false;
         }
-        if (((RegexCharacterRange) o).chrFrom.equals(chrFrom)
-                && ((RegexCharacterRange) o).chrTo.equals(chrTo)) {
+        if (((RegexCharacterRange) o).from == from
+                && ((RegexCharacterRange) o).to == to) {
             return true;
         }
         return false;
     }
 
     public int hashCode() {
-        return chrFrom.hashCode() * 37 + chrTo.hashCode();
+        return from * 37 + to;
     }
 
     public int compareTo(RegexCharacterRange o) {
-        if (chrFrom.charAt(0) == o.chrFrom.charAt(0)
-                && chrTo.charAt(0) == o.chrTo.charAt(0)) {
+        if (from == o.from && to == o.to) {
             return 0;
-        } else if (chrFrom.charAt(0) == o.chrFrom.charAt(0)) {
-            if (chrTo.charAt(0) > o.chrTo.charAt(0)) {
+        } else if (from == o.from) {
+            if (to > o.to) {
                 return 1;
             } else {
                 return -1;
             }
-        } else if (chrFrom.charAt(0) > o.chrFrom.charAt(0)) {
+        } else if (from > o.from) {
             return 1;
         } else {
             return -1;
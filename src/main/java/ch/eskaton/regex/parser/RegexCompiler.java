@@ -27,14 +27,18 @@
 package ch.eskaton.regex.parser;
 
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
-import ch.eskaton.regex.fsm.RegexCharacterComplementEvent;
+import ch.eskaton.regex.fsm.RegexByteAutomaton;
 import ch.eskaton.regex.fsm.RegexCharacterEvent;
 import ch.eskaton.regex.fsm.RegexEvent;
 import ch.eskaton.regex.fsm.RegexLambdaEvent;
+import ch.eskaton.regex.fsm.RegexPrefilter;
 import ch.eskaton.regex.fsm.RegexState;
 import ch.eskaton.regex.fsm.RegexStateMachine;
 import ch.eskaton.regex.fsm.RegexTransition;
@@ -46,6 +50,111 @@ import ch.eskaton.regex.fsm.RegexTransition;
  */
 public class RegexCompiler {
 
+    /** Default maximum number of states of the NFA of a pattern */
+    public static final int DEFAULT_MAX_NFA_STATES = 100000;
+
+    /** Maximum number of cached states of lazy automata, 0 if not lazy */
+    private int maxCachedStates;
+
+    /** Maximum number of states of deterministic automata, 0 if unlimited */
+    private int maxDfaStates = RegexStateMachine.DEFAULT_MAX_DFA_STATES;
+
+    /** Maximum number of states of the NFA of a pattern, 0 if unlimited */
+    private int maxNfaStates = DEFAULT_MAX_NFA_STATES;
+
+    /** Whether the automata match case-insensitively */
+    private boolean caseInsensitive;
+
+    /** Whether case-insensitive automata fold all Unicode characters */
+    private boolean unicodeCase;
+
+    /**
+     * Makes the compiler create lazy automata, which construct their
+     * deterministic states on demand and cache at most
+     * <code>maxCachedStates</code> of them. A value of 0 creates automata
+     * whose state tables are built completely at construction, which is the
+     * default.
+     */
+    public void setMaxCachedStates(int maxCachedStates) {
+        if (maxCachedStates < 0) {
+            throw new IllegalArgumentException("negative number of states");
+        }
+
+        this.maxCachedStates = maxCachedStates;
+    }
+
+    public int getMaxCachedStates() {
+        return maxCachedStates;
+    }
+
+    /**
+     * Sets the maximum number of states of automata which aren't lazy. If
+     * the deterministic automaton gets more states, the compiler creates an
+     * automaton which simulates the NFA instead, see
+     * {@link ch.eskaton.regex.fsm.RegexNfaAutomaton}. A value of 0 doesn't
+     * limit the number of states. The default is
+     * {@link RegexStateMachine#DEFAULT_MAX_DFA_STATES}.
+     */
+    public void setMaxDfaStates(int maxDfaStates) {
+        if (maxDfaStates < 0) {
+            throw new IllegalArgumentException("negative number of states");
+        }
+
+        this.maxDfaStates = maxDfaStates;
+    }
+
+    public int getMaxDfaStates() {
+        return maxDfaStates;
+    }
+
+    /**
+     * Sets the maximum number of states of the NFA which is built from a
+     * pattern. Counted repetitions copy the automaton of their term, so a
+     * pattern like <code>(x{1000}){1000}</code> is rejected with an
+     * {@link IllegalArgumentException} before its states are created. A
+     * value of 0 doesn't limit the number of states. The default is
+     * {@link #DEFAULT_MAX_NFA_STATES}.
+     */
+    public void setMaxNfaStates(int maxNfaStates) {
+        if (maxNfaStates < 0) {
+            throw new IllegalArgumentException("negative number of states");
+        }
+
+        this.maxNfaStates = maxNfaStates;
+    }
+
+    public int getMaxNfaStates() {
+        return maxNfaStates;
+    }
+
+    /**
+     * Makes the compiler create automata which match case-insensitively.
+     * The classes of a pattern are extended by the case variants of their
+     * characters, so matching doesn't convert the input. Only the ASCII
+     * letters are folded unless {@link #setUnicodeCase(boolean)} is set.
+     */
+    public void setCaseInsensitive(boolean caseInsensitive) {
+        this.caseInsensitive = caseInsensitive;
+    }
+
+    public boolean isCaseInsensitive() {
+        return caseInsensitive;
+    }
+
+    /**
+     * Makes case-insensitive automata fold all characters with the simple
+     * case folding of Unicode, e.g. <code>\u00e9</code> matches
+     * <code>\u00c9</code>. The table of the case variants is computed once
+     * when it's first used.
+     */
+    public void setUnicodeCase(boolean unicodeCase) {
+        this.unicodeCase = unicodeCase;
+    }
+
+    public boolean isUnicodeCase() {
+        return unicodeCase;
+    }
+
     /**
      * Creates the automaton.
      */
@@ -57,22 +166,143 @@ public class RegexCompiler {
      * Creates an automaton. The method takes a second argument to be connected
      * with the states of the automaton. This allows to determine the original 
      * automaton that matched a pattern if multiple automata are combined.
+     * <p>
+     * If the pattern only matches literals, e.g. <code>if|in|int</code>, and
+     * the automaton isn't lazy, the automaton is a trie which is built
+     * directly from the literals, see {@link RegexStateMachine#isLiteral()}.
      */
     public RegexStateMachine compile(RegexNode node, Object object) {
+        node = foldCase(node);
+
+        RegexPrefilter prefilter = RegexLiteralExtractor.extract(node);
+        Set<String> literals = maxCachedStates > 0 ? null
+                : RegexLiteralExtractor.extractLiterals(node);
+        RegexStateMachine machine;
+
+        /* a class of surrogates only has no literals and matches nothing */
+        if (literals != null && !literals.isEmpty()) {
+            Map<String, Object> objects = new LinkedHashMap<String, Object>();
+
+            for (String literal : literals) {
+                objects.put(literal, object);
+            }
+
+            machine = new RegexStateMachine(objects);
+        } else {
+            RegexStateMachineConfig config = build(node, object);
+            machine = createStateMachine(config.initialState,
+                    config.finalStates);
+        }
+
+        machine.setPrefilter(prefilter);
+
+        return machine;
+    }
+
+    /**
+     * Creates an automaton which matches the UTF-8 encoding of the inputs
+     * matched by <code>node</code>.
+     */
+    public RegexByteAutomaton compileUtf8(RegexNode node) {
+        return compileUtf8(node, null);
+    }
+
+    /**
+     * Creates an automaton which matches the UTF-8 encoding of the inputs
+     * matched by <code>node</code>. The object is connected with the final
+     * states as in {@link #compile(RegexNode, Object)}. The automaton is
+     * always constructed completely, regardless of the maximum numbers of
+     * cached and deterministic states.
+     */
+    public RegexByteAutomaton compileUtf8(RegexNode node, Object object) {
+        RegexStateMachineConfig config = build(foldCase(node), object);
+
+        return new RegexStateMachine(config.initialState, config.finalStates,
+                0, 0).createByteAutomaton();
+    }
+
+    private RegexNode foldCase(RegexNode node) {
+        return caseInsensitive ? RegexCaseFolder.fold(node, unicodeCase)
+                : node;
+    }
+
+    private RegexStateMachineConfig build(RegexNode node, Object object) {
+        node = RegexUtf16Expander.expand(node);
+
+        if (maxNfaStates > 0) {
+            countStates(node);
+        }
+
         RegexCharacterClassCollector rccc = new RegexCharacterClassCollector();
         node.visit(rccc);
-        Set<RegexCharacterRange> chars = RegexCharacterRange
-                .splitIntersectingRanges(rccc.getCharacterRanges());
-        RegexCharacterClassSplitter rccs = new RegexCharacterClassSplitter(
-                chars);
-        node.visit(rccs);
-        RegexStateMachineConfig config = traverse(node, object);
+        RegexCharacterClassSplitter rccs = RegexCharacterClassSplitter
+                .forSets(rccc.getIntervalSets());
+        RegexStateMachineConfig config = traverse(node, object, rccs);
 
         for (RegexState state : config.finalStates) {
             state.setFinalState(true);
         }
 
-        return new RegexStateMachine(config.initialState, config.finalStates);
+        return config;
+    }
+
+    /**
+     * Returns the number of states which {@link #traverse} creates for
+     * <code>node</code>.
+     * 
+     * @throws IllegalArgumentException
+     *             if there are more than <code>maxNfaStates</code>
+     */
+    private long countStates(RegexNode node) {
+        long states = 0;
+
+        if (node instanceof RegexCharacterClass) {
+            states = 2;
+        } else if (node instanceof RegexKleeneStar) {
+            states = countStates(node.nodes.firstElement()) + 4;
+        } else if (node instanceof RegexOptional) {
+            states = countStates(node.nodes.firstElement()) + 2;
+        } else if (node instanceof RegexRepetition) {
+            RegexRepetition repetition = (RegexRepetition) node;
+            long term = countStates(node.nodes.firstElement());
+
+            if (repetition.getMax() == RegexRepetition.UNBOUNDED) {
+                states = repetition.getMin() * term
+                        + (repetition.getMin() == 0 ? term + 4 : 2);
+            } else if (repetition.getMax() == 0) {
+                states = 1;
+            } else {
+                states = repetition.getMin() * term
+                        + (repetition.getMax() - repetition.getMin())
+                        * (term + 2);
+            }
+        } else {
+            for (RegexNode n : node.nodes) {
+                states += countStates(n);
+            }
+
+            if (node instanceof RegexSelection) {
+                states++;
+            }
+        }
+
+        if (states > maxNfaStates) {
+            throw new IllegalArgumentException("pattern needs more than "
+                    + maxNfaStates + " states");
+        }
+
+        return states;
+    }
+
+    private RegexStateMachine createStateMachine(RegexState initialState,
+            Set<RegexState> finalStates) {
+        if (maxCachedStates > 0) {
+            return new RegexStateMachine(initialState, finalStates,
+                    maxCachedStates);
+        }
+
+        return new RegexStateMachine(initialState, finalStates, 0,
+                maxDfaStates);
     }
 
     /**
@@ -83,9 +313,12 @@ public class RegexCompiler {
      *            A node
      * @param object
      *            Object to be connected with the states of the automaton
+     * @param splitter
+     *            Splits the character classes into non-overlapping ranges
      */
     @SuppressWarnings("serial")
-    private RegexStateMachineConfig traverse(RegexNode node, Object object) {
+    private RegexStateMachineConfig traverse(RegexNode node, Object object,
+            RegexCharacterClassSplitter splitter) {
         if (node instanceof RegexCharacterClass) {
             final RegexState initialState = new RegexState();
             final RegexState finalState = new RegexState();
@@ -93,19 +326,10 @@ public class RegexCompiler {
             initialState.setObject(object);
             finalState.setObject(object);
 
-            for (RegexCharacterRange r : ((RegexCharacterClass) node)
-                    .getCharacterRanges()) {
-                RegexTransition trans;
-                if (((RegexCharacterClass) node).isInverted()) {
-                    trans = new RegexTransition(finalState,
-                            new RegexCharacterComplementEvent(
-                                    new RegexCharacterClass(r)));
-                } else {
-                    trans = new RegexTransition(finalState,
-                            new RegexCharacterEvent(new RegexCharacterClass(r)));
-                }
-
-                initialState.addTransition(trans);
+            for (RegexIntervalSet set : splitter
+                    .splitClasses(((RegexCharacterClass) node).getIntervalSet())) {
+                initialState.addTransition(new RegexTransition(finalState,
+                        new RegexCharacterEvent(new RegexCharacterClass(set))));
             }
 
             return new RegexStateMachineConfig(initialState,
@@ -115,20 +339,23 @@ public class RegexCompiler {
                         }
                     });
         } else if (node instanceof RegexKleeneStar) {
-            return kleeneStar(traverse(node.nodes.firstElement(), object),
-                    object);
+            return kleeneStar(traverse(node.nodes.firstElement(), object,
+                    splitter), object);
         } else if (node instanceof RegexOptional) {
-            return optional(traverse(node.nodes.firstElement(), object));
+            return optional(traverse(node.nodes.firstElement(), object,
+                    splitter), object);
+        } else if (node instanceof RegexRepetition) {
+            return repetition((RegexRepetition) node, object, splitter);
         } else if (node instanceof RegexConcatenation) {
             Vector<RegexStateMachineConfig> configs = new Vector<RegexStateMachineConfig>();
             for (RegexNode n : node.nodes) {
-                configs.add(traverse(n, object));
+                configs.add(traverse(n, object, splitter));
             }
             return concatenate(configs);
         } else if (node instanceof RegexSelection) {
             Vector<RegexStateMachineConfig> configs = new Vector<RegexStateMachineConfig>();
             for (RegexNode n : node.nodes) {
-                configs.add(traverse(n, object));
+                configs.add(traverse(n, object, splitter));
             }
             return select(configs);
         } else {
@@ -141,44 +368,118 @@ public class RegexCompiler {
     /**
      * Handles the Kleene star operator.
      */
-    @SuppressWarnings("serial")
     private RegexStateMachineConfig kleeneStar(RegexStateMachineConfig config,
             Object object) {
-        final RegexState initialState = config.initialState;
-        final RegexState finalState = new RegexState();
-        Set<RegexState> targetStates = config.finalStates;
+        return optional(plus(config, object), object);
+    }
+
+    /**
+     * Handles a repetition of 1-n. The automaton of the repeated term is
+     * built once and entered again from its final states.
+     */
+    private RegexStateMachineConfig plus(RegexStateMachineConfig config,
+            Object object) {
+        RegexState initialState = newState(object);
+        RegexState finalState = newState(object);
 
-        for (RegexState s : targetStates) {
-            initialState.addTransition(new RegexTransition(s,
+        initialState.addTransition(new RegexTransition(config.initialState,
+                new RegexLambdaEvent()));
+
+        for (RegexState s : config.finalStates) {
+            s.addTransition(new RegexTransition(config.initialState,
                     new RegexLambdaEvent()));
             s.addTransition(new RegexTransition(finalState,
                     new RegexLambdaEvent()));
         }
 
-        finalState.addTransition(new RegexTransition(initialState,
-                new RegexLambdaEvent()));
-        finalState.setObject(object);
-
         return new RegexStateMachineConfig(initialState,
-                new HashSet<RegexState>() {
-                    {
-                        add(finalState);
-                    }
-                });
+                finalStates(finalState));
     }
 
     /**
      * Handles the options operator.
      */
-    public RegexStateMachineConfig optional(RegexStateMachineConfig config) {
-        RegexState initialState = config.initialState;
+    public RegexStateMachineConfig optional(RegexStateMachineConfig config,
+            Object object) {
+        RegexState initialState = newState(object);
+        RegexState finalState = newState(object);
+
+        initialState.addTransition(new RegexTransition(config.initialState,
+                new RegexLambdaEvent()));
+        initialState.addTransition(new RegexTransition(finalState,
+                new RegexLambdaEvent()));
 
         for (RegexState s : config.finalStates) {
-            initialState.addTransition(new RegexTransition(s,
+            s.addTransition(new RegexTransition(finalState,
                     new RegexLambdaEvent()));
         }
 
-        return config;
+        return new RegexStateMachineConfig(initialState,
+                finalStates(finalState));
+    }
+
+    /**
+     * Handles a repetition of n-m. The automaton of the repeated term is
+     * built n times, the optional repetitions up to m are nested, e.g.
+     * <code>x{1,3}</code> is built as <code>x(x(x)?)?</code>, so that the
+     * optional parts don't start in parallel. An unbounded repetition loops
+     * in its last copy.
+     */
+    private RegexStateMachineConfig repetition(RegexRepetition node,
+            Object object, RegexCharacterClassSplitter splitter) {
+        RegexNode term = node.nodes.firstElement();
+        Vector<RegexStateMachineConfig> configs = new Vector<RegexStateMachineConfig>();
+        int copies = node.getMin();
+
+        if (node.getMax() == RegexRepetition.UNBOUNDED && copies > 0) {
+            copies--; // the last copy loops
+        }
+
+        for (int i = 0; i < copies; i++) {
+            configs.add(traverse(term, object, splitter));
+        }
+
+        if (node.getMax() == RegexRepetition.UNBOUNDED) {
+            RegexStateMachineConfig config = plus(traverse(term, object,
+                    splitter), object);
+            configs.add(node.getMin() == 0 ? optional(config, object)
+                    : config);
+        } else if (node.getMax() > node.getMin()) {
+            RegexStateMachineConfig optional = null;
+
+            for (int i = node.getMin(); i < node.getMax(); i++) {
+                RegexStateMachineConfig config = traverse(term, object,
+                        splitter);
+
+                if (optional != null) {
+                    Vector<RegexStateMachineConfig> tail = new Vector<RegexStateMachineConfig>();
+                    tail.add(config);
+                    tail.add(optional);
+                    config = concatenate(tail);
+                }
+
+                optional = optional(config, object);
+            }
+
+            configs.add(optional);
+        } else if (configs.isEmpty()) {
+            RegexState state = newState(object);
+            return new RegexStateMachineConfig(state, finalStates(state));
+        }
+
+        return concatenate(configs);
+    }
+
+    private static RegexState newState(Object object) {
+        RegexState state = new RegexState();
+        state.setObject(object);
+        return state;
+    }
+
+    private static Set<RegexState> finalStates(RegexState state) {
+        Set<RegexState> finalStates = new HashSet<RegexState>();
+        finalStates.add(state);
+        return finalStates;
     }
 
     /**
@@ -220,6 +521,11 @@ public class RegexCompiler {
 
     /**
      * Combines multiple automata to one which executes them in parallel.
+     * <p>
+     * If all automata only accept literals, the combined automaton is a trie
+     * of all literals, see {@link RegexStateMachine#isLiteral()}. A literal
+     * accepted by several automata is connected with the object of the first
+     * one.
      */
     public RegexStateMachine combine(List<RegexStateMachine> stateMachines) {
         if (stateMachines.size() == 0) {
@@ -228,24 +534,37 @@ public class RegexCompiler {
             return stateMachines.get(0);
         }
 
+        RegexPrefilter prefilter = stateMachines.get(0).getPrefilter();
+
+        for (int i = 1; i < stateMachines.size(); i++) {
+            prefilter = prefilter.or(stateMachines.get(i).getPrefilter());
+        }
+
+        Map<String, Object> literals = combineLiterals(stateMachines);
+
+        if (literals != null) {
+            RegexStateMachine machine = new RegexStateMachine(literals);
+            machine.setPrefilter(prefilter);
+            return machine;
+        }
+
         /*
          * Search for all events and split them, so that no character ranges
          * overlap
          */
-        Set<RegexCharacterRange> ranges = new HashSet<RegexCharacterRange>();
+        Set<RegexIntervalSet> sets = new LinkedHashSet<RegexIntervalSet>();
 
         for (RegexStateMachine machine : stateMachines) {
             for (RegexEvent event : machine.getEvents()) {
                 if (event instanceof RegexCharacterEvent) {
-                    RegexCharacterClass chrClass = ((RegexCharacterEvent) event)
-                            .getCharClass();
-                    ranges.addAll(chrClass.getCharacterRanges());
+                    sets.add(((RegexCharacterEvent) event).getCharClass()
+                            .getIntervalSet());
                 }
             }
         }
 
-        Set<RegexCharacterRange> splittedRanges = RegexCharacterRange
-                .splitIntersectingRanges(ranges);
+        RegexCharacterClassSplitter splitter = RegexCharacterClassSplitter
+                .forSets(sets);
 
         for (RegexStateMachine machine : stateMachines) {
             for (RegexState state : machine.getStates()) {
@@ -253,29 +572,21 @@ public class RegexCompiler {
                 Set<RegexTransition> transitionsToRemove = new HashSet<RegexTransition>();
 
                 for (RegexTransition trans : state.getTransitions()) {
-                    Set<RegexCharacterRange> newRanges = new HashSet<RegexCharacterRange>();
                     RegexEvent event = trans.getEvent();
                     if (event instanceof RegexCharacterEvent) {
-                        RegexCharacterClass chrClass = ((RegexCharacterEvent) event)
-                                .getCharClass();
-                        for (RegexCharacterRange range : chrClass
-                                .getCharacterRanges()) {
-                            newRanges.addAll(range
-                                    .getAllIntersectingRanges(splittedRanges));
-                        }
+                        List<RegexIntervalSet> newSets = splitter
+                                .splitClasses(((RegexCharacterEvent) event)
+                                        .getCharClass().getIntervalSet());
 
-                        if (newRanges.size() > 0
-                                && !((RegexCharacterEvent) event)
-                                        .getCharClass().getCharacterRanges()
-                                        .equals(newRanges)) {
+                        if (newSets.size() > 1) {
                             transitionsToRemove.add(trans);
-                            for (RegexCharacterRange range : newRanges) {
+                            for (RegexIntervalSet set : newSets) {
                                 transitionsToAdd
                                         .add(new RegexTransition(
                                                 trans.getTargetState(),
                                                 new RegexCharacterEvent(
                                                         new RegexCharacterClass(
-                                                                range))));
+                                                                set))));
                             }
                         }
                     }
@@ -294,8 +605,40 @@ public class RegexCompiler {
         }
 
         RegexStateMachineConfig newConfig = select(configs);
-        return new RegexStateMachine(newConfig.initialState,
+        RegexStateMachine machine = createStateMachine(newConfig.initialState,
                 newConfig.finalStates);
+
+        machine.setPrefilter(prefilter);
+
+        return machine;
+    }
+
+    /**
+     * Returns the literals of all automata with their objects or
+     * <code>null</code> if an automaton accepts more than literals.
+     */
+    private Map<String, Object> combineLiterals(
+            List<RegexStateMachine> stateMachines) {
+        if (maxCachedStates > 0) {
+            return null;
+        }
+
+        Map<String, Object> literals = new LinkedHashMap<String, Object>();
+
+        for (RegexStateMachine machine : stateMachines) {
+            if (!machine.isLiteral()) {
+                return null;
+            }
+
+            for (Map.Entry<String, Object> entry : machine.getLiterals()
+                    .entrySet()) {
+                if (!literals.containsKey(entry.getKey())) {
+                    literals.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return literals;
     }
 
     private static class RegexStateMachineConfig {
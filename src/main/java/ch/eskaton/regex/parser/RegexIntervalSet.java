@@ -0,0 +1,287 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable set of code points, stored as sorted array of disjoint
+ * intervals.
+ * <p>
+ * The intervals are kept in canonical form, i.e. they neither overlap nor
+ * touch, so that two sets with the same code points are equal. The set
+ * operations merge the interval arrays in linear time and membership is
+ * determined by a binary search.
+ */
+public final class RegexIntervalSet {
+
+    public static final RegexIntervalSet EMPTY = new RegexIntervalSet(
+            new int[0]);
+
+    public static final RegexIntervalSet ALL = new RegexIntervalSet(
+            new int[] { Character.MIN_CODE_POINT, Character.MAX_CODE_POINT });
+
+    /** First and last code point of each interval */
+    private final int[] bounds;
+
+    /** Cached hash code, computed on first use */
+    private int hash;
+
+    private RegexIntervalSet(int[] bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * Returns the set of the code points from <code>from</code> to
+     * <code>to</code>.
+     */
+    public static RegexIntervalSet of(int from, int to) {
+        if (from > to) {
+            return EMPTY;
+        }
+
+        return new RegexIntervalSet(new int[] { from, to });
+    }
+
+    /**
+     * Returns the set of the code points of <code>ranges</code>, which may
+     * overlap.
+     */
+    public static RegexIntervalSet of(Collection<RegexCharacterRange> ranges) {
+        int[] bounds = new int[ranges.size() * 2];
+        long[] sorted = new long[ranges.size()];
+        int i = 0;
+
+        for (RegexCharacterRange range : ranges) {
+            sorted[i++] = ((long) range.getFromCodePoint() << 32)
+                    | range.getToCodePoint();
+        }
+
+        Arrays.sort(sorted);
+        int n = 0;
+
+        for (long range : sorted) {
+            int from = (int) (range >>> 32);
+            int to = (int) range;
+
+            if (n > 0 && from <= bounds[n - 1] + 1) {
+                bounds[n - 1] = Math.max(bounds[n - 1], to);
+            } else {
+                bounds[n++] = from;
+                bounds[n++] = to;
+            }
+        }
+
+        return create(bounds, n);
+    }
+
+    public boolean isEmpty() {
+        return bounds.length == 0;
+    }
+
+    public int getIntervalCount() {
+        return bounds.length / 2;
+    }
+
+    public int getFrom(int interval) {
+        return bounds[interval * 2];
+    }
+
+    public int getTo(int interval) {
+        return bounds[interval * 2 + 1];
+    }
+
+    public boolean contains(int codePoint) {
+        int low = 0;
+        int high = bounds.length / 2 - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+
+            if (codePoint < bounds[mid * 2]) {
+                high = mid - 1;
+            } else if (codePoint > bounds[mid * 2 + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public RegexIntervalSet union(RegexIntervalSet set) {
+        int[] result = new int[bounds.length + set.bounds.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < bounds.length || j < set.bounds.length) {
+            int from;
+            int to;
+
+            if (j == set.bounds.length
+                    || (i < bounds.length && bounds[i] <= set.bounds[j])) {
+                from = bounds[i];
+                to = bounds[i + 1];
+                i += 2;
+            } else {
+                from = set.bounds[j];
+                to = set.bounds[j + 1];
+                j += 2;
+            }
+
+            if (n > 0 && from <= result[n - 1] + 1) {
+                result[n - 1] = Math.max(result[n - 1], to);
+            } else {
+                result[n++] = from;
+                result[n++] = to;
+            }
+        }
+
+        return create(result, n);
+    }
+
+    public RegexIntervalSet intersection(RegexIntervalSet set) {
+        int[] result = new int[bounds.length + set.bounds.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < bounds.length && j < set.bounds.length) {
+            int from = Math.max(bounds[i], set.bounds[j]);
+            int to = Math.min(bounds[i + 1], set.bounds[j + 1]);
+
+            if (from <= to) {
+                result[n++] = from;
+                result[n++] = to;
+            }
+
+            if (bounds[i + 1] < set.bounds[j + 1]) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+
+        return create(result, n);
+    }
+
+    /**
+     * Returns the code points up to {@link Character#MAX_CODE_POINT} which
+     * aren't in this set.
+     */
+    public RegexIntervalSet complement() {
+        int[] result = new int[bounds.length + 2];
+        int n = 0;
+        int from = Character.MIN_CODE_POINT;
+
+        for (int i = 0; i < bounds.length; i += 2) {
+            if (bounds[i] > from) {
+                result[n++] = from;
+                result[n++] = bounds[i] - 1;
+            }
+
+            from = bounds[i + 1] + 1;
+        }
+
+        if (from <= Character.MAX_CODE_POINT) {
+            result[n++] = from;
+            result[n++] = Character.MAX_CODE_POINT;
+        }
+
+        return create(result, n);
+    }
+
+    public RegexIntervalSet difference(RegexIntervalSet set) {
+        return intersection(set.complement());
+    }
+
+    /**
+     * Returns the intervals as character ranges.
+     */
+    public List<RegexCharacterRange> getRanges() {
+        List<RegexCharacterRange> ranges = new ArrayList<RegexCharacterRange>(
+                bounds.length / 2);
+
+        for (int i = 0; i < bounds.length; i += 2) {
+            ranges.add(new RegexCharacterRange(bounds[i], bounds[i + 1]));
+        }
+
+        return ranges;
+    }
+
+    private static RegexIntervalSet create(int[] bounds, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+
+        if (length < bounds.length) {
+            int[] copy = new int[length];
+            System.arraycopy(bounds, 0, copy, 0, length);
+            bounds = copy;
+        }
+
+        return new RegexIntervalSet(bounds);
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof RegexIntervalSet)) {
+            return false;
+        }
+
+        return Arrays.equals(bounds, ((RegexIntervalSet) o).bounds);
+    }
+
+    public int hashCode() {
+        if (hash == 0) {
+            hash = Arrays.hashCode(bounds);
+        }
+
+        return hash;
+    }
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("[");
+
+        for (RegexCharacterRange range : getRanges()) {
+            sb.append(range);
+        }
+
+        sb.append("]");
+        return sb.toString();
+    }
+
+}
@@ -47,6 +47,12 @@ public class RegexLexer implements Lexer {
         }
     };
 
+    /** Characters which are escaped outside of classes */
+    private static final String META_CHARS = "\\.[](){}|*+?";
+
+    /** Escaped characters which denote a predefined class */
+    private static final String PREDEFINED_CHARS = "dDwWsS";
+
     private static final int EOLIND = -1;
 
     private int pos = 0;
@@ -61,9 +67,15 @@ public class RegexLexer implements Lexer {
         this.regex = regex;
     }
 
+    /**
+     * Returns the next code point of <code>s</code>, so that a surrogate pair
+     * is read as one character.
+     */
     public int next(String s) {
         if (pos < s.length()) {
-            return s.charAt(pos++);
+            int c = s.codePointAt(pos);
+            pos += Character.charCount(c);
+            return c;
         } else {
             return EOLIND;
         }
@@ -71,7 +83,7 @@ public class RegexLexer implements Lexer {
 
     public void pushBack() {
         if (pos > 0) {
-            pos--;
+            pos -= Character.charCount(regex.codePointBefore(pos));
         }
     }
 
@@ -92,6 +104,8 @@ public class RegexLexer implements Lexer {
                     int next = next(regex);
                     if (ESCAPABLE_CHARS.contains(String.valueOf((char) next))) {
                         return getToken(RegexToken.CLASSCHAR, next);
+                    } else if (isPredefined(next)) {
+                        return getPredefinedToken(next);
                     } else {
                         pushBack();
                     }
@@ -127,6 +141,29 @@ public class RegexLexer implements Lexer {
                     return getToken(RegexToken.PLUS, c);
                 case '?':
                     return getToken(RegexToken.OPTION, c);
+                case '.':
+                    return getToken(RegexToken.PREDEFINED, c);
+                case '\\':
+                    int next = next(regex);
+
+                    if (isPredefined(next)) {
+                        return getPredefinedToken(next);
+                    } else if (META_CHARS.indexOf(next) != -1) {
+                        return getToken(RegexToken.CHAR, next);
+                    } else if (next != EOLIND) {
+                        pushBack();
+                    }
+
+                    return getToken(RegexToken.CHAR, c);
+                case '{':
+                    String repetition = readRepetition();
+
+                    if (repetition != null) {
+                        return new Token(RegexToken.REPEAT.ordinal(),
+                                repetition, 0);
+                    }
+
+                    return getToken(RegexToken.CHAR, c);
                 default:
                     return getToken(RegexToken.CHAR, c);
             }
@@ -135,8 +172,80 @@ public class RegexLexer implements Lexer {
         return getToken(RegexToken.EOL, c);
     }
 
+    /**
+     * Reads the bounds of a repetition of the form <code>{n}</code>,
+     * <code>{n,}</code> or <code>{n,m}</code> after the opening brace and
+     * returns them without the braces. Returns <code>null</code> and reads
+     * nothing if the brace doesn't start a repetition, so that it is a
+     * character.
+     */
+    private String readRepetition() {
+        int end = pos;
+
+        while (end < regex.length() && isDigit(regex.charAt(end))) {
+            end++;
+        }
+
+        if (end == pos) {
+            return null;
+        }
+
+        if (end < regex.length() && regex.charAt(end) == ',') {
+            end++;
+
+            while (end < regex.length() && isDigit(regex.charAt(end))) {
+                end++;
+            }
+        }
+
+        if (end == regex.length() || regex.charAt(end) != '}') {
+            return null;
+        }
+
+        String repetition = regex.substring(pos, end);
+        pos = end + 1;
+
+        return repetition;
+    }
+
+    private static boolean isPredefined(int c) {
+        return PREDEFINED_CHARS.indexOf(c) != -1 || c == 'p' || c == 'P';
+    }
+
+    /**
+     * Returns the token of the predefined class after a backslash whose
+     * name starts with <code>c</code>. The name of a class like
+     * <code>\pL</code> or <code>\p{L}</code> is <code>p{L}</code>.
+     */
+    private Token getPredefinedToken(int c) {
+        String name = String.valueOf((char) c);
+
+        if (c == 'p' || c == 'P') {
+            int next = next(regex);
+
+            if (next == '{') {
+                int end = regex.indexOf('}', pos);
+                end = end == -1 ? regex.length() : end + 1;
+                name += "{" + regex.substring(pos, end);
+                pos = end;
+            } else if (next != EOLIND) {
+                name += "{" + new String(Character.toChars(next)) + "}";
+            }
+        }
+
+        return new Token(RegexToken.PREDEFINED.ordinal(), name, 0);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
     private Token getToken(RegexToken type, int c) {
-        return new Token(type.ordinal(), String.valueOf((char) c), 0);
+        if (c == EOLIND) {
+            return new Token(type.ordinal(), String.valueOf((char) c), 0);
+        }
+
+        return new Token(type.ordinal(), new String(Character.toChars(c)), 0);
     }
 
 }
@@ -0,0 +1,290 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.parser;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ch.eskaton.regex.fsm.RegexPrefilter;
+
+/**
+ * Extracts the literals which every input matched by a syntax tree
+ * contains, see {@link RegexPrefilter}, and the strings matched by a tree
+ * which matches only literals.
+ * <p>
+ * A class of a single character is a literal, all other classes match an
+ * unknown character. Nodes may be shared in the tree, so the prefilter of
+ * each node is computed once.
+ */
+class RegexLiteralExtractor {
+
+    /** Maximum number of strings expanded from a concatenation */
+    private static final int MAX_PRODUCT = 1024;
+
+    /** Maximum length of the literals expanded from a repetition */
+    private static final int MAX_LENGTH = 1024;
+
+    /** Maximum number of characters expanded from a class */
+    private static final int MAX_CLASS_SIZE = 16;
+
+    private final Map<RegexNode, RegexPrefilter> prefilters = new IdentityHashMap<RegexNode, RegexPrefilter>();
+
+    private RegexLiteralExtractor() {
+    }
+
+    static RegexPrefilter extract(RegexNode node) {
+        return new RegexLiteralExtractor().extractNode(node);
+    }
+
+    private RegexPrefilter extractNode(RegexNode node) {
+        RegexPrefilter prefilter = prefilters.get(node);
+
+        if (prefilter != null) {
+            return prefilter;
+        }
+
+        if (node instanceof RegexCharacterClass) {
+            prefilter = extractClass((RegexCharacterClass) node);
+        } else if (node instanceof RegexKleeneStar
+                || node instanceof RegexOptional) {
+            prefilter = extractNode(node.nodes.firstElement()).repeat();
+        } else if (node instanceof RegexRepetition) {
+            prefilter = extractRepetition((RegexRepetition) node);
+        } else if (node instanceof RegexConcatenation) {
+            prefilter = RegexPrefilter.literal("");
+
+            for (RegexNode n : node.nodes) {
+                prefilter = prefilter.concat(extractNode(n));
+            }
+        } else if (node instanceof RegexSelection) {
+            for (RegexNode n : node.nodes) {
+                RegexPrefilter p = extractNode(n);
+                prefilter = prefilter == null ? p : prefilter.or(p);
+            }
+        }
+
+        if (prefilter == null) {
+            prefilter = RegexPrefilter.NONE;
+        }
+
+        prefilters.put(node, prefilter);
+
+        return prefilter;
+    }
+
+    /**
+     * Returns the prefilter of a repetition. If the literals of the copies
+     * get longer than {@link #MAX_LENGTH}, only the first and the last copy
+     * are known.
+     */
+    private RegexPrefilter extractRepetition(RegexRepetition node) {
+        RegexPrefilter term = extractNode(node.nodes.firstElement());
+        RegexPrefilter prefilter = RegexPrefilter.literal("");
+        int length = Math.max(term.getRequired().length(), Math.max(term
+                .getPrefix().length(), term.getSuffix().length()));
+
+        if (node.getMin() > 1 && (long) node.getMin() * length > MAX_LENGTH) {
+            prefilter = term.concat(RegexPrefilter.NONE).concat(term);
+        } else {
+            for (int i = 0; i < node.getMin(); i++) {
+                prefilter = prefilter.concat(term);
+            }
+        }
+
+        return node.getMax() == node.getMin() ? prefilter : prefilter
+                .concat(term.repeat());
+    }
+
+    /**
+     * Returns the strings matched by <code>node</code> if it consists only
+     * of selections, concatenations and bounded repetitions of small
+     * classes, e.g. <code>if|in|int</code> or <code>[Nn]ull</code>,
+     * otherwise <code>null</code>.
+     */
+    static Set<String> extractLiterals(RegexNode node) {
+        if (node instanceof RegexCharacterClass) {
+            return getLiterals((RegexCharacterClass) node);
+        } else if (node instanceof RegexConcatenation) {
+            Set<String> literals = Collections.singleton("");
+
+            for (RegexNode n : node.nodes) {
+                Set<String> suffixes = extractLiterals(n);
+
+                if (suffixes == null) {
+                    return null;
+                }
+
+                literals = product(literals, suffixes);
+
+                if (literals == null) {
+                    return null;
+                }
+            }
+
+            return literals;
+        } else if (node instanceof RegexRepetition) {
+            return extractLiterals((RegexRepetition) node);
+        } else if (node instanceof RegexSelection) {
+            Set<String> literals = new LinkedHashSet<String>();
+
+            for (RegexNode n : node.nodes) {
+                Set<String> alternatives = extractLiterals(n);
+
+                if (alternatives == null) {
+                    return null;
+                }
+
+                literals.addAll(alternatives);
+            }
+
+            return literals;
+        }
+
+        return null;
+    }
+
+    private static Set<String> extractLiterals(RegexRepetition node) {
+        if (node.getMax() == RegexRepetition.UNBOUNDED
+                || node.getMax() > MAX_PRODUCT) {
+            return null;
+        }
+
+        Set<String> term = extractLiterals(node.nodes.firstElement());
+
+        if (term == null) {
+            return null;
+        }
+
+        for (String literal : term) {
+            if ((long) node.getMax() * literal.length() > MAX_LENGTH) {
+                return null;
+            }
+        }
+
+        Set<String> literals = new LinkedHashSet<String>();
+        Set<String> repeated = Collections.singleton("");
+
+        for (int i = 0; i <= node.getMax(); i++) {
+            if (i >= node.getMin()) {
+                literals.addAll(repeated);
+            }
+
+            if (i < node.getMax()) {
+                repeated = product(repeated, term);
+            }
+
+            if (repeated == null || literals.size() > MAX_PRODUCT) {
+                return null;
+            }
+        }
+
+        return literals;
+    }
+
+    /**
+     * Returns all concatenations of a prefix and a suffix or
+     * <code>null</code> if there are more than {@link #MAX_PRODUCT}.
+     */
+    private static Set<String> product(Set<String> prefixes,
+            Set<String> suffixes) {
+        if (prefixes.size() * suffixes.size() > MAX_PRODUCT) {
+            return null;
+        }
+
+        Set<String> product = new LinkedHashSet<String>();
+
+        for (String prefix : prefixes) {
+            for (String suffix : suffixes) {
+                product.add(prefix + suffix);
+            }
+        }
+
+        return product;
+    }
+
+    private static RegexPrefilter extractClass(RegexCharacterClass node) {
+        String literal = getLiteral(node);
+
+        return literal == null ? RegexPrefilter.NONE : RegexPrefilter
+                .literal(literal);
+    }
+
+    /**
+     * Returns the characters of a class which matches at most
+     * {@link #MAX_CLASS_SIZE} characters as strings, otherwise
+     * <code>null</code>. Surrogate code points are skipped.
+     */
+    private static Set<String> getLiterals(RegexCharacterClass node) {
+        RegexIntervalSet set = node.getIntervalSet();
+
+        if (node.isInverted()) {
+            return null;
+        }
+
+        Set<String> literals = new LinkedHashSet<String>();
+
+        for (int i = 0; i < set.getIntervalCount(); i++) {
+            if (set.getTo(i) - set.getFrom(i) >= MAX_CLASS_SIZE) {
+                return null;
+            }
+
+            for (int c = set.getFrom(i); c <= set.getTo(i); c++) {
+                if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+                    literals.add(new String(Character.toChars(c)));
+                }
+            }
+
+            if (literals.size() > MAX_CLASS_SIZE) {
+                return null;
+            }
+        }
+
+        return literals;
+    }
+
+    /**
+     * Returns the character of a class which matches a single character as
+     * string, otherwise <code>null</code>. A surrogate code point isn't a
+     * character, the class never matches.
+     */
+    private static String getLiteral(RegexCharacterClass node) {
+        RegexIntervalSet set = node.getIntervalSet();
+
+        if (node.isInverted() || set.getIntervalCount() != 1
+                || set.getFrom(0) != set.getTo(0)
+                || (set.getFrom(0) >= Character.MIN_SURROGATE && set
+                        .getFrom(0) <= Character.MAX_SURROGATE)) {
+            return null;
+        }
+
+        return new String(Character.toChars(set.getFrom(0)));
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ch.eskaton.yajpg.api.ParseException;
+import ch.eskaton.yajpg.api.Token;
+
+/**
+ * The predefined classes <code>.</code>, <code>\d</code>, <code>\w</code>,
+ * <code>\s</code> and <code>\p{...}</code>, and their complements
+ * <code>\D</code>, <code>\W</code>, <code>\S</code> and
+ * <code>\P{...}</code>.
+ * <p>
+ * The classes match the same characters as in {@link java.util.regex}:
+ * <code>\p</code> takes a POSIX class like <code>Alpha</code>, a Unicode
+ * category like <code>L</code> or <code>IsLu</code> or a Unicode block like
+ * <code>InGreek</code>.
+ * <p>
+ * The interval set of each class is computed once and shared by all
+ * patterns, so the sets of Unicode categories, which consist of hundreds of
+ * intervals, aren't built for every occurrence. Shared sets are identical
+ * objects, which allows the compiler to process them once per pattern.
+ */
+public final class RegexPredefinedClasses {
+
+    /** POSIX classes with the bounds of their ranges */
+    private static final Map<String, String> POSIX = new HashMap<String, String>();
+
+    /** Unicode categories with their types in {@link Character} */
+    private static final Map<String, Byte> CATEGORIES = new HashMap<String, Byte>();
+
+    private static final ConcurrentMap<String, RegexIntervalSet> SETS = new ConcurrentHashMap<String, RegexIntervalSet>();
+
+    static {
+        POSIX.put("d", "09");
+        POSIX.put("w", "azAZ09__");
+        POSIX.put("s", "\t\r  ");
+        POSIX.put("Lower", "az");
+        POSIX.put("Upper", "AZ");
+        POSIX.put("ASCII", "\u0000\u007f");
+        POSIX.put("Alpha", "azAZ");
+        POSIX.put("Digit", "09");
+        POSIX.put("Alnum", "azAZ09");
+        POSIX.put("Punct", "!/:@[`{~");
+        POSIX.put("Graph", "!~");
+        POSIX.put("Print", " ~");
+        POSIX.put("Blank", "  \t\t");
+        POSIX.put("Cntrl", "\u0000\u001f\u007f\u007f");
+        POSIX.put("XDigit", "09afAF");
+        POSIX.put("Space", "\t\r  ");
+
+        CATEGORIES.put("Cn", Character.UNASSIGNED);
+        CATEGORIES.put("Lu", Character.UPPERCASE_LETTER);
+        CATEGORIES.put("Ll", Character.LOWERCASE_LETTER);
+        CATEGORIES.put("Lt", Character.TITLECASE_LETTER);
+        CATEGORIES.put("Lm", Character.MODIFIER_LETTER);
+        CATEGORIES.put("Lo", Character.OTHER_LETTER);
+        CATEGORIES.put("Mn", Character.NON_SPACING_MARK);
+        CATEGORIES.put("Me", Character.ENCLOSING_MARK);
+        CATEGORIES.put("Mc", Character.COMBINING_SPACING_MARK);
+        CATEGORIES.put("Nd", Character.DECIMAL_DIGIT_NUMBER);
+        CATEGORIES.put("Nl", Character.LETTER_NUMBER);
+        CATEGORIES.put("No", Character.OTHER_NUMBER);
+        CATEGORIES.put("Zs", Character.SPACE_SEPARATOR);
+        CATEGORIES.put("Zl", Character.LINE_SEPARATOR);
+        CATEGORIES.put("Zp", Character.PARAGRAPH_SEPARATOR);
+        CATEGORIES.put("Cc", Character.CONTROL);
+        CATEGORIES.put("Cf", Character.FORMAT);
+        CATEGORIES.put("Co", Character.PRIVATE_USE);
+        CATEGORIES.put("Cs", Character.SURROGATE);
+        CATEGORIES.put("Pd", Character.DASH_PUNCTUATION);
+        CATEGORIES.put("Ps", Character.START_PUNCTUATION);
+        CATEGORIES.put("Pe", Character.END_PUNCTUATION);
+        CATEGORIES.put("Pc", Character.CONNECTOR_PUNCTUATION);
+        CATEGORIES.put("Po", Character.OTHER_PUNCTUATION);
+        CATEGORIES.put("Sm", Character.MATH_SYMBOL);
+        CATEGORIES.put("Sc", Character.CURRENCY_SYMBOL);
+        CATEGORIES.put("Sk", Character.MODIFIER_SYMBOL);
+        CATEGORIES.put("So", Character.OTHER_SYMBOL);
+        CATEGORIES.put("Pi", Character.INITIAL_QUOTE_PUNCTUATION);
+        CATEGORIES.put("Pf", Character.FINAL_QUOTE_PUNCTUATION);
+    }
+
+    private RegexPredefinedClasses() {
+    }
+
+    /**
+     * Returns the class of a token of type {@link RegexToken#PREDEFINED}.
+     */
+    public static RegexCharacterClass create(Token t) throws ParseException {
+        RegexIntervalSet set = get(t.getBuffer());
+
+        if (set == null) {
+            throw new ParseException("unknown character class \\"
+                    + t.getBuffer());
+        }
+
+        return new RegexCharacterClass(set);
+    }
+
+    /**
+     * Returns the set of a predefined class by the name the lexer uses,
+     * e.g. <code>.</code>, <code>d</code> or <code>P{Lu}</code>, or
+     * <code>null</code> if there is no such class.
+     */
+    public static RegexIntervalSet get(String name) {
+        RegexIntervalSet set = SETS.get(name);
+
+        if (set == null) {
+            set = create(name);
+
+            if (set == null) {
+                return null;
+            }
+
+            RegexIntervalSet interned = SETS.putIfAbsent(name, set);
+
+            if (interned != null) {
+                set = interned;
+            }
+        }
+
+        return set;
+    }
+
+    private static RegexIntervalSet create(String name) {
+        if (name.equals(".")) {
+            return of("\n\n\r\r\u0085\u0085\u2028\u2029").complement();
+        } else if (name.length() == 1
+                && POSIX.containsKey(name.toLowerCase())) {
+            RegexIntervalSet set = of(POSIX.get(name.toLowerCase()));
+            return Character.isUpperCase(name.charAt(0)) ? set.complement()
+                    : set;
+        } else if (name.startsWith("P{")) {
+            RegexIntervalSet set = get("p" + name.substring(1));
+            return set == null ? null : set.complement();
+        } else if (name.startsWith("p{") && name.endsWith("}")) {
+            return getProperty(name.substring(2, name.length() - 1));
+        }
+
+        return null;
+    }
+
+    private static RegexIntervalSet getProperty(String property) {
+        if (POSIX.containsKey(property) && property.length() > 1) {
+            return of(POSIX.get(property));
+        } else if (property.startsWith("In")) {
+            return getBlock(property.substring(2));
+        } else if (property.startsWith("Is")) {
+            property = property.substring(2);
+        }
+
+        RegexIntervalSet set = null;
+
+        for (Map.Entry<String, Byte> entry : CATEGORIES.entrySet()) {
+            String category = entry.getKey();
+
+            if (category.equals(property)
+                    || (property.length() == 1 && category
+                            .startsWith(property))) {
+                RegexIntervalSet types = Categories.SETS[entry.getValue()];
+                set = set == null ? types : set.union(types);
+            }
+        }
+
+        return set;
+    }
+
+    private static RegexIntervalSet getBlock(String name) {
+        Character.UnicodeBlock block;
+
+        try {
+            block = Character.UnicodeBlock.forName(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        List<RegexCharacterRange> ranges = new ArrayList<RegexCharacterRange>();
+        int from = -1;
+
+        for (int c = 0; c <= Character.MAX_CODE_POINT + 1; c++) {
+            boolean inBlock = c <= Character.MAX_CODE_POINT
+                    && Character.UnicodeBlock.of(c) == block;
+
+            if (inBlock && from == -1) {
+                from = c;
+            } else if (!inBlock && from != -1) {
+                ranges.add(new RegexCharacterRange(from, c - 1));
+                from = -1;
+            }
+        }
+
+        return RegexIntervalSet.of(ranges);
+    }
+
+    /**
+     * Returns the set of the ranges whose first and last characters are
+     * given by the pairs of characters of <code>bounds</code>.
+     */
+    private static RegexIntervalSet of(String bounds) {
+        List<RegexCharacterRange> ranges = new ArrayList<RegexCharacterRange>();
+
+        for (int i = 0; i < bounds.length(); i += 2) {
+            ranges.add(new RegexCharacterRange(bounds.charAt(i), bounds
+                    .charAt(i + 1)));
+        }
+
+        return RegexIntervalSet.of(ranges);
+    }
+
+    /**
+     * The sets of all Unicode categories, computed in one pass over all code
+     * points when the first category is used.
+     */
+    private static class Categories {
+
+        static final RegexIntervalSet[] SETS = new RegexIntervalSet[Character.FINAL_QUOTE_PUNCTUATION + 1];
+
+        static {
+            List<List<RegexCharacterRange>> ranges = new ArrayList<List<RegexCharacterRange>>();
+
+            for (int i = 0; i < SETS.length; i++) {
+                ranges.add(new ArrayList<RegexCharacterRange>());
+            }
+
+            int from = Character.MIN_CODE_POINT;
+            int type = Character.getType(from);
+
+            for (int c = from + 1; c <= Character.MAX_CODE_POINT + 1; c++) {
+                int next = c <= Character.MAX_CODE_POINT ? Character.getType(c)
+                        : -1;
+
+                if (next != type) {
+                    ranges.get(type).add(new RegexCharacterRange(from, c - 1));
+                    from = c;
+                    type = next;
+                }
+            }
+
+            for (int i = 0; i < SETS.length; i++) {
+                SETS[i] = RegexIntervalSet.of(ranges.get(i));
+            }
+        }
+
+    }
+
+}
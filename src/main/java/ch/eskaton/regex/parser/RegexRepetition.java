@@ -0,0 +1,123 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.parser;
+
+import ch.eskaton.yajpg.api.ParseException;
+import ch.eskaton.yajpg.api.Token;
+
+/**
+ * Node in a regex syntax tree which represents a repetition of n-m, e.g.
+ * <code>{2,4}</code>. <code>+</code> is a repetition of 1-n.
+ */
+public class RegexRepetition extends RegexNode {
+
+    /** Maximum of an unbounded repetition */
+    public static final int UNBOUNDED = -1;
+
+    private final int min;
+
+    private final int max;
+
+    public RegexRepetition(RegexNode node, int min, int max) {
+        if (min < 0 || (max != UNBOUNDED && max < min)) {
+            throw new IllegalArgumentException("invalid repetition " + min
+                    + ", " + max);
+        }
+
+        nodes.add(node);
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Creates a repetition from a token of the form <code>n</code>,
+     * <code>n,</code> or <code>n,m</code>.
+     */
+    public RegexRepetition(RegexNode node, Token t) throws ParseException {
+        String s = t.getBuffer();
+        int comma = s.indexOf(',');
+
+        try {
+            if (comma == -1) {
+                min = max = Integer.parseInt(s);
+            } else {
+                min = Integer.parseInt(s.substring(0, comma));
+                max = comma == s.length() - 1 ? UNBOUNDED : Integer
+                        .parseInt(s.substring(comma + 1));
+            }
+        } catch (NumberFormatException e) {
+            throw new ParseException("repetition too large: {" + s + "}");
+        }
+
+        if (max != UNBOUNDED && max < min) {
+            throw new ParseException("invalid repetition: {" + s + "}");
+        }
+
+        nodes.add(node);
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the maximum number of repetitions or {@link #UNBOUNDED}.
+     */
+    public int getMax() {
+        return max;
+    }
+
+    @Override
+    public void add(RegexNode node) throws ParseException {
+        throw new ParseException("repetition may only contain one node");
+    }
+
+    @Override
+    public void doPrint() {
+        System.out.print(toString());
+    }
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("(");
+        sb.append(nodes.iterator().next().toString());
+        sb.append("){");
+        sb.append(min);
+
+        if (max != min) {
+            sb.append(",");
+
+            if (max != UNBOUNDED) {
+                sb.append(max);
+            }
+        }
+
+        sb.append("}");
+        return sb.toString();
+    }
+
+}
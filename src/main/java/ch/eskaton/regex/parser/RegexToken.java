@@ -30,5 +30,5 @@ package ch.eskaton.regex.parser;
  * Token types for the regex lexer and parser.
  */
 public enum RegexToken {
-    LBRACE, RBRACE, LBRACKET, RBRACKET, HYPHEN, STAR, PLUS, OPTION, OR, NOT, CLASSCHAR, CHAR, EOL, EOF
+    LBRACE, RBRACE, LBRACKET, RBRACKET, HYPHEN, STAR, PLUS, OPTION, REPEAT, OR, NOT, CLASSCHAR, CHAR, PREDEFINED, EOL, EOF
 };
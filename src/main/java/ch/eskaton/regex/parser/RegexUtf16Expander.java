@@ -0,0 +1,204 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.parser;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites the character classes of a syntax tree, so that the automaton
+ * can read UTF-16 code units while the classes contain code points.
+ * <p>
+ * Inverted classes are replaced by the ranges they match. Supplementary
+ * characters are replaced by a concatenation of a class of high surrogates
+ * and a class of low surrogates, so that the automaton reads a surrogate
+ * pair with two transitions. Surrogate code points aren't characters and
+ * are removed from all classes, i.e. an unpaired surrogate in the input is
+ * never matched.
+ */
+class RegexUtf16Expander {
+
+    private static final RegexIntervalSet SURROGATES = RegexIntervalSet.of(
+            Character.MIN_SURROGATE, Character.MAX_SURROGATE);
+
+    private static final RegexIntervalSet BMP = RegexIntervalSet.of(
+            Character.MIN_CODE_POINT,
+            Character.MIN_SUPPLEMENTARY_CODE_POINT - 1);
+
+    private static final RegexIntervalSet SUPPLEMENTARY = RegexIntervalSet.of(
+            Character.MIN_SUPPLEMENTARY_CODE_POINT, Character.MAX_CODE_POINT);
+
+    private final Map<RegexNode, RegexNode> expanded = new IdentityHashMap<RegexNode, RegexNode>();
+
+    /**
+     * Rewritten classes by their sets, so that a shared set, e.g. of a
+     * {@link RegexPredefinedClasses predefined class}, is rewritten once
+     */
+    private final Map<RegexIntervalSet, RegexNode> expandedSets = new IdentityHashMap<RegexIntervalSet, RegexNode>();
+
+    private RegexUtf16Expander() {
+    }
+
+    /**
+     * Returns the rewritten tree. Nodes other than character classes are
+     * changed in place.
+     */
+    static RegexNode expand(RegexNode node) {
+        return new RegexUtf16Expander().expandNode(node);
+    }
+
+    private RegexNode expandNode(RegexNode node) {
+        RegexNode result = expanded.get(node);
+
+        if (result != null) {
+            return result;
+        }
+
+        if (node instanceof RegexCharacterClass) {
+            RegexCharacterClass chrClass = (RegexCharacterClass) node;
+
+            if (chrClass.isInverted()) {
+                result = expandClass(chrClass);
+            } else {
+                result = expandedSets.get(chrClass.getIntervalSet());
+
+                if (result == null) {
+                    result = expandClass(chrClass);
+                    expandedSets.put(chrClass.getIntervalSet(), result);
+                }
+            }
+        } else {
+            for (int i = 0; i < node.nodes.size(); i++) {
+                node.nodes.set(i, expandNode(node.nodes.get(i)));
+            }
+
+            result = node;
+        }
+
+        expanded.put(node, result);
+        expanded.put(result, result);
+
+        return result;
+    }
+
+    private RegexNode expandClass(RegexCharacterClass node) {
+        RegexIntervalSet set = node.getIntervalSet();
+
+        if (node.isInverted()) {
+            set = set.complement();
+        }
+
+        set = set.difference(SURROGATES);
+        RegexIntervalSet bmp = set.intersection(BMP);
+        Map<RegexCharacterRange, Set<RegexCharacterRange>> pairs = new LinkedHashMap<RegexCharacterRange, Set<RegexCharacterRange>>();
+
+        for (RegexCharacterRange range : set.intersection(SUPPLEMENTARY)
+                .getRanges()) {
+            addSurrogatePairs(range.getFromCodePoint(), range
+                    .getToCodePoint(), pairs);
+        }
+
+        if (pairs.isEmpty()) {
+            return new RegexCharacterClass(bmp);
+        }
+
+        RegexSelection selection = null;
+
+        if (!bmp.isEmpty()) {
+            selection = new RegexSelection(new RegexCharacterClass(bmp));
+        }
+
+        for (Map.Entry<RegexCharacterRange, Set<RegexCharacterRange>> entry : pairs
+                .entrySet()) {
+            RegexConcatenation pair = new RegexConcatenation(
+                    new RegexCharacterClass(entry.getKey()));
+            pair.add(new RegexCharacterClass(entry.getValue()));
+
+            if (selection == null) {
+                selection = new RegexSelection(pair);
+            } else {
+                selection.add(pair);
+            }
+        }
+
+        return selection;
+    }
+
+    /**
+     * Adds the surrogate pairs of the supplementary characters from
+     * <code>from</code> to <code>to</code> to <code>pairs</code>, which maps
+     * a range of high surrogates to the ranges of the low surrogates which
+     * follow them.
+     */
+    private static void addSurrogatePairs(int from, int to,
+            Map<RegexCharacterRange, Set<RegexCharacterRange>> pairs) {
+        char[] fromChars = Character.toChars(from);
+        char[] toChars = Character.toChars(to);
+        int highFrom = fromChars[0];
+        int highTo = toChars[0];
+        int lowFrom = fromChars[1];
+        int lowTo = toChars[1];
+
+        if (highFrom == highTo) {
+            addPair(highFrom, highTo, lowFrom, lowTo, pairs);
+            return;
+        }
+
+        if (lowFrom != Character.MIN_LOW_SURROGATE) {
+            addPair(highFrom, highFrom, lowFrom, Character.MAX_LOW_SURROGATE,
+                    pairs);
+            highFrom++;
+        }
+
+        if (lowTo != Character.MAX_LOW_SURROGATE) {
+            addPair(highTo, highTo, Character.MIN_LOW_SURROGATE, lowTo, pairs);
+            highTo--;
+        }
+
+        if (highFrom <= highTo) {
+            addPair(highFrom, highTo, Character.MIN_LOW_SURROGATE,
+                    Character.MAX_LOW_SURROGATE, pairs);
+        }
+    }
+
+    private static void addPair(int highFrom, int highTo, int lowFrom,
+            int lowTo, Map<RegexCharacterRange, Set<RegexCharacterRange>> pairs) {
+        RegexCharacterRange high = new RegexCharacterRange(highFrom, highTo);
+        Set<RegexCharacterRange> lows = pairs.get(high);
+
+        if (lows == null) {
+            lows = new HashSet<RegexCharacterRange>();
+            pairs.put(high, lows);
+        }
+
+        lows.add(new RegexCharacterRange(lowFrom, lowTo));
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegexFileScannerTest {
+
+    private static final String LOG = "INFO start\r\n" + "ERROR code=42\n"
+            + "\n" + "WARN code=7 ERROR code=1234\n" + "INFO end";
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("regex", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void write(String content, String charset) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes(charset));
+        out.close();
+    }
+
+    private void assertMatch(RegexFileMatch match, long start, long end,
+            String text, long lineNumber, String line) {
+        assertEquals(start, match.getStart());
+        assertEquals(end, match.getEnd());
+        assertEquals(text, match.getText());
+        assertEquals(lineNumber, match.getLineNumber());
+        assertEquals(line, match.getLine());
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        write(LOG, "ISO-8859-1");
+
+        List<RegexFileMatch> matches = new RegexFileScanner(new Regex(
+                "code=[0-9]+")).scan(file);
+
+        assertEquals(3, matches.size());
+        assertMatch(matches.get(0), 18, 25, "code=42", 2, "ERROR code=42");
+        assertMatch(matches.get(1), 32, 38, "code=7", 4,
+                "WARN code=7 ERROR code=1234");
+        assertMatch(matches.get(2), 45, 54, "code=1234", 4,
+                "WARN code=7 ERROR code=1234");
+    }
+
+    @Test
+    public void testSmallWindows() throws Exception {
+        write(LOG, "ISO-8859-1");
+
+        RegexFileScanner scanner = new RegexFileScanner(new Regex(
+                "(INFO|ERROR) [a-z]+"));
+        scanner.setWindowSize(4);
+        List<RegexFileMatch> matches = scanner.scan(file);
+
+        assertEquals(4, matches.size());
+        assertMatch(matches.get(0), 0, 10, "INFO start", 1, "INFO start");
+        assertMatch(matches.get(1), 12, 22, "ERROR code", 2, "ERROR code=42");
+        assertMatch(matches.get(2), 39, 49, "ERROR code", 4,
+                "WARN code=7 ERROR code=1234");
+        assertMatch(matches.get(3), 55, 63, "INFO end", 5, "INFO end");
+    }
+
+    @Test
+    public void testLatin1Bytes() throws Exception {
+        write("gr\u00fcn\nbl\u00e4u\u00ff\n", "ISO-8859-1");
+
+        List<RegexFileMatch> matches = new RegexFileScanner(new Regex(
+                "[\u00e0-\u00ff]+")).scan(file);
+
+        assertEquals(3, matches.size());
+        assertMatch(matches.get(0), 2, 3, "\u00fc", 1, "gr\u00fcn");
+        assertMatch(matches.get(1), 7, 8, "\u00e4", 2, "bl\u00e4u\u00ff");
+        assertMatch(matches.get(2), 9, 10, "\u00ff", 2, "bl\u00e4u\u00ff");
+    }
+
+    @Test
+    public void testUtf8() throws Exception {
+        write("gr\u00fcn\nbl\u00e4u\n", "UTF-8");
+
+        List<RegexFileMatch> matches = new RegexFileScanner(new Regex(
+                "[\u00e0-\u00ff][a-z]"), Charset.forName("UTF-8")).scan(file);
+
+        assertEquals(2, matches.size());
+        assertMatch(matches.get(0), 2, 5, "\u00fcn", 1, "gr\u00fcn");
+        assertMatch(matches.get(1), 8, 11, "\u00e4u", 2, "bl\u00e4u");
+    }
+
+    @Test
+    public void testUtf8MultipleMatches() throws Exception {
+        write("x\u00e4a \u20acb \u00f6c\n\u20acz\n", "UTF-8");
+
+        List<RegexFileMatch> matches = new RegexFileScanner(new Regex(
+                "[\u00e0-\u20ff][a-z]"), Charset.forName("UTF-8")).scan(file);
+
+        String line = "x\u00e4a \u20acb \u00f6c";
+
+        assertEquals(4, matches.size());
+        assertMatch(matches.get(0), 1, 4, "\u00e4a", 1, line);
+        assertMatch(matches.get(1), 5, 9, "\u20acb", 1, line);
+        assertMatch(matches.get(2), 10, 13, "\u00f6c", 1, line);
+        assertMatch(matches.get(3), 14, 18, "\u20acz", 2, "\u20acz");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUtf16() throws Exception {
+        new RegexFileScanner(new Regex("a"), Charset.forName("UTF-16"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUtf16LE() throws Exception {
+        new RegexFileScanner(new Regex("a"), Charset.forName("UTF-16LE"));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        write(LOG, "ISO-8859-1");
+
+        final int[] count = new int[1];
+
+        new RegexFileScanner(new Regex("code=[0-9]+")).scan(file,
+                new RegexFileScanner.MatchHandler() {
+                    public boolean handle(RegexFileMatch match) {
+                        count[0]++;
+                        return false;
+                    }
+                });
+
+        assertEquals(1, count[0]);
+    }
+
+}
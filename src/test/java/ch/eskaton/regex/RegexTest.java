@@ -26,11 +26,15 @@
  */
 package ch.eskaton.regex;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -39,6 +43,9 @@ import ch.eskaton.yajpg.api.ParserFactory;
 import ch.eskaton.yajpg.api.ParserInstantiationException;
 import ch.eskaton.regex.Regex;
 import ch.eskaton.regex.RegexException;
+import ch.eskaton.regex.RegexMatchResult;
+import ch.eskaton.regex.fsm.RegexMatcher;
+import ch.eskaton.regex.fsm.RegexSearcher;
 import ch.eskaton.regex.fsm.RegexStateMachine;
 import ch.eskaton.regex.parser.RegexCompiler;
 import ch.eskaton.regex.parser.RegexLexer;
@@ -61,7 +68,7 @@ public class RegexTest {
 
     @Test
     public void testDecimals() throws RegexException {
-        String regex = "([1-9][0-9]*(.[0-9]*)?)|(0*?.[0-9]+)";
+        String regex = "([1-9][0-9]*(\\.[0-9]*)?)|(0*?\\.[0-9]+)";
         assertTrue(Regex.match(regex, "1"));
         assertTrue(Regex.match(regex, "125"));
         assertTrue(Regex.match(regex, "50."));
@@ -73,7 +80,7 @@ public class RegexTest {
     public void testHex() throws RegexException, ParserInstantiationException,
             ParseException, IOException {
         String number = "0x1F2A";
-        String regexDec = "([0-9]+(.[0-9]*)?)|(.[0-9]+)";
+        String regexDec = "([0-9]+(\\.[0-9]*)?)|(\\.[0-9]+)";
         String regexOct = "0[0-7]*";
         String regexHex = "0x[0-9a-fA-F]+";
 
@@ -108,7 +115,7 @@ public class RegexTest {
     public void testOctal() throws RegexException,
             ParserInstantiationException, ParseException, IOException {
         String number = "0127";
-        String regexDec = "([1-9][0-9]*(.[0-9]*)?)|(.[0-9]+)";
+        String regexDec = "([1-9][0-9]*(\\.[0-9]*)?)|(\\.[0-9]+)";
         String regexOct = "0[0-7]*";
         String regexHex = "0x[0-9a-fA-F]+";
 
@@ -144,7 +151,7 @@ public class RegexTest {
     public void testCombinedHex() throws ParseException, IOException,
             ParserInstantiationException {
         String number = "0x1F2A";
-        String regexDec = "([1-9][0-9]*(.[0-9]*)?)|(0*?.[0-9]+)";
+        String regexDec = "([1-9][0-9]*(\\.[0-9]*)?)|(0*?\\.[0-9]+)";
         String regexOct = "0[0-7]*";
         String regexHex = "0x[0-9a-fA-F]+";
 
@@ -191,7 +198,7 @@ public class RegexTest {
     public void testCombinedDec() throws ParseException, IOException,
             ParserInstantiationException {
         String number = "00.127";
-        String regexDec = "([1-9][0-9]*(.[0-9]*)?)|(0*?.[0-9]+)";
+        String regexDec = "([1-9][0-9]*(\\.[0-9]*)?)|(0*?\\.[0-9]+)";
         String regexOct = "0[0-7]*";
         String regexHex = "0x[0-9a-fA-F]+";
 
@@ -284,7 +291,7 @@ public class RegexTest {
 
     @Test
     public void testDate() throws RegexException {
-        String regex = "([0-9][0-9][0-9][0-9]).((0[1-9])|(1[0-2])).((0[1-9])|([1-2][0-9])|(3[0-1]))";
+        String regex = "([0-9][0-9][0-9][0-9])\\.((0[1-9])|(1[0-2]))\\.((0[1-9])|([1-2][0-9])|(3[0-1]))";
         assertTrue(Regex.match(regex, "0000.01.01"));
         assertTrue(Regex.match(regex, "0001.01.01"));
         assertTrue(Regex.match(regex, "2000.01.01"));
@@ -295,6 +302,123 @@ public class RegexTest {
         assertFalse(Regex.match(regex, "2000.12.32"));
     }
 
+    @Test
+    public void testDateRepetition() throws RegexException {
+        String regex = "[0-9]{4}-(0[1-9]|1[0-2])-(0[1-9]|[1-2][0-9]|3[0-1])";
+        assertTrue(Regex.match(regex, "2000-01-01"));
+        assertTrue(Regex.match(regex, "2000-12-31"));
+        assertFalse(Regex.match(regex, "200-01-01"));
+        assertFalse(Regex.match(regex, "20000-01-01"));
+        assertFalse(Regex.match(regex, "2000-13-01"));
+    }
+
+    @Test
+    public void testRepetition() throws RegexException {
+        assertTrue(Regex.match("a{0}", ""));
+        assertFalse(Regex.match("a{0}", "a"));
+        assertTrue(Regex.match("(ab){2,}", "abab"));
+        assertTrue(Regex.match("(ab){2,}", "ababababab"));
+        assertFalse(Regex.match("(ab){2,}", "ab"));
+        assertTrue(Regex.match("[a-z]{2,4}x", "abx"));
+        assertTrue(Regex.match("[a-z]{2,4}x", "abcdx"));
+        assertFalse(Regex.match("[a-z]{2,4}x", "ax"));
+        assertFalse(Regex.match("[a-z]{2,4}x", "abcdex"));
+        assertTrue(Regex.match("(a|bc){1,2}{2}", "abcbca"));
+        assertFalse(Regex.match("(a|bc){1,2}{2}", "a"));
+    }
+
+    @Test
+    public void testBraceWithoutRepetition() throws RegexException {
+        assertTrue(Regex.match("a{", "a{"));
+        assertTrue(Regex.match("a{,2}", "a{,2}"));
+        assertTrue(Regex.match("{x}+", "{x}}"));
+    }
+
+    @Test(expected = RegexException.class)
+    public void testInvalidRepetition() throws RegexException {
+        new Regex("a{3,2}");
+    }
+
+    @Test
+    public void testNestedRepetitions() throws RegexException {
+        String regex = "(a([a-b]c(cb)*)*)?";
+        assertTrue(Regex.match(regex, ""));
+        assertTrue(Regex.match(regex, "aacbcbc"));
+        assertFalse(Regex.match(regex, "cb"));
+        assertFalse(Regex.match("(a(a*ac*)+)*[bc]", "cab"));
+    }
+
+    @Test
+    public void testPredefinedClasses() throws RegexException {
+        assertTrue(Regex.match("\\d+", "0123456789"));
+        assertFalse(Regex.match("\\d", "a"));
+        assertTrue(Regex.match("\\w+\\s\\W\\S\\D", "a_1\t%xy"));
+        assertFalse(Regex.match("\\w", "\u00e9"));
+        assertTrue(Regex.match("[\\d_]+", "1_2"));
+        assertTrue(Regex.match("[^\\s]+", "abc"));
+        assertFalse(Regex.match("[^\\s]+", "a c"));
+    }
+
+    @Test
+    public void testAnyCharacter() throws RegexException {
+        assertTrue(Regex.match("a.c", "abc"));
+        assertTrue(Regex.match("a.c", "a\ud83d\ude00c"));
+        assertFalse(Regex.match("a.c", "a\nc"));
+        assertFalse(Regex.match("a.c", "a\u2028c"));
+        assertTrue(Regex.match("a\\.c", "a.c"));
+        assertFalse(Regex.match("a\\.c", "abc"));
+    }
+
+    @Test
+    public void testEscapedMetaCharacters() throws RegexException {
+        assertTrue(Regex.match("\\(\\[\\{\\*\\+\\?\\|\\}\\]\\)",
+                "([{*+?|}])"));
+        assertTrue(Regex.match("a\\\\b", "a\\b"));
+        assertTrue(Regex.match("\\x", "\\x"));
+    }
+
+    @Test
+    public void testUnicodeProperties() throws RegexException {
+        assertTrue(Regex.match("\\p{L}+", "abc\u00e9\u03b1"));
+        assertFalse(Regex.match("\\p{L}", "1"));
+        assertTrue(Regex.match("\\pL\\p{Lu}\\p{IsLl}", "xY\u00e9"));
+        assertTrue(Regex.match("\\P{Lu}+", "ab1"));
+        assertFalse(Regex.match("\\P{Lu}", "A"));
+        assertTrue(Regex.match("\\p{InGreek}+", "\u03b1\u03b2"));
+        assertFalse(Regex.match("\\p{InGreek}", "a"));
+        assertTrue(Regex.match("\\p{Alpha}\\p{Punct}\\p{XDigit}", "x!F"));
+        assertTrue(Regex.match("(\\p{L}|\\P{Lu})*\\p{So}", "Ab1\u00a9"));
+        assertTrue(Regex.match("[\\p{Lu}\\d]+", "A1B2"));
+    }
+
+    @Test(expected = RegexException.class)
+    public void testUnknownProperty() throws RegexException {
+        new Regex("\\p{Unknown}");
+    }
+
+    @Test
+    public void testCaseInsensitive() throws RegexException {
+        Regex regex = new Regex("select|[a-c]+x[^d]", Regex.CASE_INSENSITIVE);
+        assertTrue(regex.match("SeLeCt"));
+        assertTrue(regex.match("aBcXe"));
+        assertFalse(regex.match("abcxD"));
+        assertFalse(regex.match("selekt"));
+        assertFalse(new Regex("\u00e9", Regex.CASE_INSENSITIVE)
+                .match("\u00c9"));
+    }
+
+    @Test
+    public void testUnicodeCase() throws RegexException {
+        Regex regex = new Regex("[\u00e0-\u00ef]\u03c3+k",
+                Regex.CASE_INSENSITIVE | Regex.UNICODE_CASE);
+        assertTrue(regex.match("\u00c9\u03a3\u03c2\u03c3K"));
+        assertTrue(regex.match("\u00e9\u03c3\u212a"));
+        assertFalse(regex.match("\u00d7\u03c3k"));
+        assertTrue(new Regex("\ud801\udc00",
+                Regex.CASE_INSENSITIVE | Regex.UNICODE_CASE)
+                .match("\ud801\udc28"));
+    }
+
     @Test
     public void testUnicodeChars() throws RegexException {
         String regex = "[\u0030-\u0039]+";
@@ -307,4 +431,219 @@ public class RegexTest {
         assertTrue(Regex.match(regex, "\"abcdef\""));
     }
 
+    @Test
+    public void testFind() throws RegexException {
+        Regex regex = new Regex("abcd|c");
+        RegexMatchResult result = regex.find("xxabcdxc");
+        assertEquals(2, result.getStart());
+        assertEquals(6, result.getEnd());
+        assertEquals("abcd", result.getText());
+        result = regex.find("xxabcdxc", 3);
+        assertEquals(4, result.getStart());
+        assertEquals("c", result.getText());
+        assertNull(regex.find("xxabxd"));
+    }
+
+    @Test
+    public void testFindRequiredLiteral() throws RegexException {
+        Regex regex = new Regex("[a-z]+@example");
+        RegexMatchResult result = regex.find("mail to me@example");
+        assertEquals("me@example", result.getText());
+        assertNull(regex.find("mail to me@exampl"));
+        assertNull(regex.find("mail to me@example", 11));
+    }
+
+    @Test
+    public void testFindAll() throws RegexException {
+        Regex regex = new Regex("0x[0-9a-fA-F]+|[0-9]+");
+        List<RegexMatchResult> results = regex.findAll("a=0x1F, b=12, c=0x");
+        assertEquals(3, results.size());
+        assertEquals("0x1F", results.get(0).getText());
+        assertEquals("12", results.get(1).getText());
+        assertEquals("0", results.get(2).getText());
+        assertEquals(16, results.get(2).getStart());
+        assertTrue(regex.findAll("none").isEmpty());
+    }
+
+    @Test
+    public void testFindAllEmptyMatches() throws RegexException {
+        List<RegexMatchResult> results = new Regex("a*").findAll("baa");
+        assertEquals(3, results.size());
+        assertEquals(0, results.get(0).getStart());
+        assertEquals(0, results.get(0).getEnd());
+        assertEquals("aa", results.get(1).getText());
+        assertEquals(3, results.get(2).getStart());
+        assertEquals(3, results.get(2).getEnd());
+    }
+
+    @Test
+    public void testFindAllLongRuns() throws RegexException {
+        StringBuilder input = new StringBuilder();
+
+        for (int i = 0; i < 10000; i++) {
+            input.append("ab");
+        }
+
+        List<RegexMatchResult> results = new Regex("ab|a[^c]*c")
+                .findAll(input);
+        assertEquals(10000, results.size());
+        assertEquals(19998, results.get(9999).getStart());
+
+        input.append('c');
+        results = new Regex("ab|a[^c]*c").findAll(input);
+        assertEquals(1, results.size());
+        assertEquals(20001, results.get(0).getEnd());
+
+        results = new Regex("a|a(aa)*b").findAll("aaaaaab");
+        assertEquals(2, results.size());
+        assertEquals("a", results.get(0).getText());
+        assertEquals("aaaaab", results.get(1).getText());
+    }
+
+    @Test
+    public void testSearcherLazy() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(1);
+        RegexStateMachine sm = compiler.compile(
+                (RegexNode) ParserFactory.create(
+                        "ch.eskaton.regex.parser.RegexParser",
+                        new RegexLexer("(a|b)*abb")).parse(), "obj");
+        RegexSearcher searcher = sm.getAutomaton().searcher("bbabbaabbx");
+        assertTrue(searcher.find());
+        assertEquals(0, searcher.getStart());
+        assertEquals(9, searcher.getEnd());
+        assertEquals("obj", searcher.getAcceptObject());
+        assertFalse(searcher.find());
+    }
+
+    @Test
+    public void testMatchAll() throws RegexException {
+        Regex regex = new Regex("0x[0-9a-fA-F]+");
+        String[] inputs = { "0x1F", "0x", "", "0xabcdef", "1x1", "0xG",
+                "0x0", "x0x1" };
+        boolean[] results = new boolean[inputs.length];
+        regex.matchAll(inputs, results);
+
+        for (int i = 0; i < inputs.length; i++) {
+            assertEquals(inputs[i], regex.match(inputs[i]), results[i]);
+        }
+    }
+
+    @Test
+    public void testMatchAllBuffer() throws RegexException {
+        Regex regex = new Regex("(a|b)*abb");
+        String[] inputs = { "abb", "ab", "", "babb", "abba", "aabb", "b",
+                "bbbbbbbabb", "abbabb" };
+        StringBuilder buffer = new StringBuilder();
+        int[] offsets = new int[inputs.length + 1];
+
+        for (int i = 0; i < inputs.length; i++) {
+            buffer.append(inputs[i]);
+            offsets[i + 1] = buffer.length();
+        }
+
+        boolean[] results = new boolean[inputs.length];
+        regex.matchAll(buffer.toString().toCharArray(), offsets, results);
+
+        for (int i = 0; i < inputs.length; i++) {
+            assertEquals(inputs[i], regex.match(inputs[i]), results[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMatchAllInvalidOffsets() throws RegexException {
+        new Regex("a").matchAll(new char[2], new int[] { 0, 3 },
+                new boolean[1]);
+    }
+
+    @Test
+    public void testSupplementaryCharacters() throws RegexException {
+        Regex regex = new Regex("a[\ud83d\ude00-\ud83d\ude02]+\ud840\udc00?");
+        assertTrue(regex.match("a\ud83d\ude00\ud83d\ude02"));
+        assertTrue(regex.match("a\ud83d\ude01\ud840\udc00"));
+        assertFalse(regex.match("a\ud83d\ude03"));
+        assertFalse(regex.match("a\ud83d"));
+        assertFalse(regex.match("a\ud83d\ude00\ud840"));
+    }
+
+    @Test
+    public void testComplementMatchesSupplementaryCharacters()
+            throws RegexException {
+        assertTrue(Regex.match("[^a]", "\ud83d\ude00"));
+        assertFalse(Regex.match("[^a][^a]", "\ud83d\ude00"));
+        assertTrue(Regex.match("[^a]+", "\u4e2d\ud83d\ude00b"));
+        assertFalse(Regex.match("[^\ud83d\ude00]", "\ud83d\ude00"));
+        assertTrue(Regex.match("[^\ud83d\ude00]", "\ud83d\ude01"));
+        assertFalse(Regex.match("[^a]", "\ud83d"));
+    }
+
+    @Test
+    public void testComplementOfMultipleRanges() throws RegexException {
+        assertFalse(Regex.match("[^a-cx]+", "abc"));
+        assertFalse(Regex.match("[^a-cx]+", "dxe"));
+        assertTrue(Regex.match("[^a-cx]+", "def"));
+    }
+
+    @Test
+    public void testFindSupplementaryCharacters() throws RegexException {
+        RegexMatchResult result = new Regex("[\ud83d\ude00-\ud83d\ude4f]+")
+                .find("ab\ud83d\ude00\ud83d\ude4fc");
+        assertEquals(2, result.getStart());
+        assertEquals(6, result.getEnd());
+    }
+
+    @Test
+    public void testFindAllEmptyMatchesSupplementaryCharacters()
+            throws RegexException {
+        List<RegexMatchResult> results = new Regex("a?")
+                .findAll("b\ud83d\ude00\u03c3");
+        assertEquals(4, results.size());
+        assertEquals(1, results.get(1).getStart());
+        assertEquals(3, results.get(2).getStart());
+        assertEquals(4, results.get(3).getStart());
+    }
+
+    @Test
+    public void testMatcher() throws RegexException {
+        Regex regex = new Regex("0x[0-9a-fA-F]+");
+        RegexMatcher m1 = regex.matcher();
+        RegexMatcher m2 = regex.matcher();
+        m1.processEvent('0');
+        m1.processEvent('x');
+        m2.processEvent('x');
+        assertFalse(m1.accepts());
+        assertTrue(m2.rejects());
+        m1.processEvent('F');
+        assertTrue(m1.accepts());
+        assertTrue(m2.rejects());
+        m2.reset();
+        assertTrue(m2.matches("0x12"));
+    }
+
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        final Regex regex = new Regex("(a|b)*aba");
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        if (!regex.match("ababa") || regex.match("ababbba")) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+    }
+
 }
@@ -0,0 +1,65 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex;
+
+import ch.eskaton.regex.fsm.RegexStateMachine;
+import ch.eskaton.regex.parser.RegexCompiler;
+import ch.eskaton.regex.parser.RegexLexer;
+import ch.eskaton.regex.parser.RegexNode;
+import ch.eskaton.yajpg.api.ParserFactory;
+
+/**
+ * Parses and compiles patterns for tests which need a state machine instead
+ * of a {@link Regex}.
+ */
+public final class RegexTestHelper {
+
+    private static final String PARSER_CLASS = "ch.eskaton.regex.parser.RegexParser";
+
+    private RegexTestHelper() {
+    }
+
+    public static RegexNode parse(String regex) throws Exception {
+        return (RegexNode) ParserFactory.create(PARSER_CLASS,
+                new RegexLexer(regex)).parse();
+    }
+
+    public static RegexStateMachine compile(RegexCompiler compiler,
+            String regex, Object object) throws Exception {
+        return compiler.compile(parse(regex), object);
+    }
+
+    public static RegexStateMachine compile(String regex, Object object)
+            throws Exception {
+        return compile(new RegexCompiler(), regex, object);
+    }
+
+    public static RegexStateMachine compile(String regex) throws Exception {
+        return compile(regex, null);
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex;
+
+import static ch.eskaton.regex.RegexTestHelper.compile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.eskaton.regex.fsm.RegexCompiledAutomaton;
+import ch.eskaton.regex.fsm.RegexStateMachine;
+import ch.eskaton.regex.parser.RegexCompiler;
+
+public class RegexTokenizerTest {
+
+    private static final String INPUT = "if x1 = 42 ifx";
+
+    private RegexCompiledAutomaton createAutomaton() throws Exception {
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile("if", "IF"));
+        machines.add(compile("[a-z][a-z0-9]*", "ID"));
+        machines.add(compile("[0-9]+", "NUM"));
+        machines.add(compile("=", "EQ"));
+        machines.add(compile(" +", "WS"));
+        return new RegexCompiler().combine(machines).getAutomaton();
+    }
+
+    private void assertToken(RegexTokenizer tokenizer, Object type,
+            String text, long start) throws RegexException {
+        RegexMatchResult token = tokenizer.next();
+        assertEquals(type, token.getAcceptObject());
+        assertEquals(text, token.getText());
+        assertEquals(start, token.getStart());
+        assertEquals(start + text.length(), token.getEnd());
+    }
+
+    private void assertTokens(RegexTokenizer tokenizer) throws RegexException {
+        assertToken(tokenizer, "IF", "if", 0);
+        assertToken(tokenizer, "WS", " ", 2);
+        assertToken(tokenizer, "ID", "x1", 3);
+        assertToken(tokenizer, "WS", " ", 5);
+        assertToken(tokenizer, "EQ", "=", 6);
+        assertToken(tokenizer, "WS", " ", 7);
+        assertToken(tokenizer, "NUM", "42", 8);
+        assertToken(tokenizer, "WS", " ", 10);
+        assertToken(tokenizer, "ID", "ifx", 11);
+        assertNull(tokenizer.next());
+        assertNull(tokenizer.next());
+    }
+
+    @Test
+    public void testCharSequence() throws Exception {
+        assertTokens(new RegexTokenizer(createAutomaton(), INPUT));
+    }
+
+    @Test
+    public void testCharBuffer() throws Exception {
+        assertTokens(new RegexTokenizer(createAutomaton(), CharBuffer
+                .wrap(INPUT)));
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        assertTokens(new RegexTokenizer(createAutomaton(), new StringReader(
+                INPUT)));
+    }
+
+    @Test
+    public void testReaderWithSmallBuffer() throws Exception {
+        for (int size = 1; size < 5; size++) {
+            assertTokens(new RegexTokenizer(createAutomaton(),
+                    new StringReader(INPUT), size));
+        }
+    }
+
+    @Test
+    public void testLongestMatchBacktracks() throws Exception {
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile("a", "A"));
+        machines.add(compile("abc", "ABC"));
+        RegexTokenizer tokenizer = new RegexTokenizer(new RegexCompiler()
+                .combine(machines).getAutomaton(), new StringReader("abca"),
+                2);
+
+        assertToken(tokenizer, "ABC", "abc", 0);
+        assertToken(tokenizer, "A", "a", 3);
+        assertNull(tokenizer.next());
+
+        tokenizer = new RegexTokenizer(new RegexCompiler().combine(machines)
+                .getAutomaton(), "aba");
+        assertToken(tokenizer, "A", "a", 0);
+
+        try {
+            tokenizer.next();
+            fail("no token expected");
+        } catch (RegexException ex) {
+            assertEquals(1, tokenizer.getPosition());
+        }
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import static ch.eskaton.regex.RegexTestHelper.compile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.eskaton.regex.parser.RegexCompiler;
+
+public class RegexAhoCorasickAutomatonTest {
+
+    @Test
+    public void testLiteralSelection() throws Exception {
+        RegexStateMachine machine = compile("if|in|int|i[f]");
+        RegexCompiledAutomaton automaton = machine.getAutomaton();
+
+        assertTrue(machine.isLiteral());
+        assertTrue(automaton instanceof RegexAhoCorasickAutomaton);
+        assertEquals(5, automaton.getStateCount());
+        assertTrue(automaton.matches("if"));
+        assertTrue(automaton.matches("int"));
+        assertFalse(automaton.matches("i"));
+        assertFalse(automaton.matches("ints"));
+        assertFalse(automaton.matches("x"));
+        assertTrue(automaton.matcher().matches("in"));
+        assertFalse(automaton.matcher().matches("it"));
+    }
+
+    @Test
+    public void testSmallClasses() throws Exception {
+        RegexStateMachine machine = compile("[Nn]ull|[Tt]rue|[0-9]");
+        RegexCompiledAutomaton automaton = machine.getAutomaton();
+
+        assertTrue(machine.isLiteral());
+        assertTrue(automaton.matches("Null"));
+        assertTrue(automaton.matches("true"));
+        assertTrue(automaton.matches("7"));
+        assertFalse(automaton.matches("NULL"));
+        assertFalse(automaton.matches("77"));
+    }
+
+    @Test
+    public void testCaseInsensitive() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setCaseInsensitive(true);
+        RegexStateMachine machine = compile(compiler, "null|true", null);
+        RegexCompiledAutomaton automaton = machine.getAutomaton();
+
+        assertTrue(machine.isLiteral());
+        assertTrue(automaton.matches("NULL"));
+        assertTrue(automaton.matches("tRuE"));
+        assertFalse(automaton.matches("nul"));
+    }
+
+    @Test
+    public void testNotLiteral() throws Exception {
+        assertFalse(compile("if|i[a-z]").isLiteral());
+        assertFalse(compile("(if)?").isLiteral());
+
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(4);
+        assertFalse(compile(compiler, "if", null).isLiteral());
+    }
+
+    @Test
+    public void testNoLiterals() throws Exception {
+        RegexStateMachine machine = compile("\ud800|[\udc00-\udfff]");
+
+        assertFalse(machine.isLiteral());
+        assertFalse(machine.getAutomaton().matches("\ud800"));
+        assertFalse(machine.getAutomaton().searcher("a\ud800").find());
+    }
+
+    @Test
+    public void testCombinedAcceptObjects() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile(compiler, "if", "if"));
+        machines.add(compile(compiler, "in|int", "type"));
+        machines.add(compile(compiler, "int|for", "other"));
+
+        RegexStateMachine machine = compiler.combine(machines);
+        RegexMatcher matcher = machine.getAutomaton().matcher();
+
+        assertTrue(machine.isLiteral());
+        assertTrue(matcher.matches("if"));
+        assertEquals("if", matcher.getAcceptObject());
+        assertTrue(matcher.matches("int"));
+        assertEquals("type", matcher.getAcceptObject());
+        assertTrue(matcher.matches("for"));
+        assertEquals("other", matcher.getAcceptObject());
+        assertFalse(matcher.matches("fo"));
+        assertEquals(null, matcher.getAcceptObject());
+    }
+
+    @Test
+    public void testCombinedWithPattern() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile(compiler, "if", "if"));
+        machines.add(compile(compiler, "[a-z]+", "id"));
+
+        RegexStateMachine machine = compiler.combine(machines);
+        RegexMatcher matcher = machine.getAutomaton().matcher();
+
+        assertFalse(machine.isLiteral());
+        assertTrue(matcher.matches("if"));
+        assertEquals("if", matcher.getAcceptObject());
+        assertTrue(matcher.matches("ifs"));
+        assertEquals("id", matcher.getAcceptObject());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        RegexSearcher searcher = compile("he|she|his|hers").getAutomaton()
+                .searcher("ushers hishe");
+
+        assertTrue(searcher.find());
+        assertEquals(1, searcher.getStart());
+        assertEquals(4, searcher.getEnd());
+        assertTrue(searcher.find());
+        assertEquals(7, searcher.getStart());
+        assertEquals(10, searcher.getEnd());
+        assertTrue(searcher.find());
+        assertEquals(10, searcher.getStart());
+        assertEquals(12, searcher.getEnd());
+        assertFalse(searcher.find());
+    }
+
+    @Test
+    public void testStateTableOnDemand() throws Exception {
+        RegexStateMachine machine = compile("abc|abd");
+        RegexCompiledAutomaton trie = machine.getAutomaton();
+
+        assertEquals(4, machine.getStateTable().length);
+        assertTrue(machine.isLiteral());
+        assertSame(trie, machine.getAutomaton());
+        assertTrue(machine.getTableAutomaton().matches("abd"));
+        assertTrue(trie.matches("abd"));
+        assertEquals(1, machine.write(new ByteArrayOutputStream()).length);
+        assertTrue(machine.createByteAutomaton().matches(
+                "abc".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testStateTableKeepsMatch() throws Exception {
+        RegexStateMachine machine = compile(new RegexCompiler(), "if|else",
+                "keyword");
+
+        machine.processEvent('i');
+        machine.toString();
+        machine.getStateTable();
+        machine.processEvent('f');
+
+        assertTrue(machine.accepts());
+        assertEquals("keyword", machine.getAcceptObject());
+    }
+
+    @Test
+    public void testSupplementaryCharacters() throws Exception {
+        RegexCompiledAutomaton automaton = compile(
+                "a\ud83d\ude00|\ud83d\ude01").getAutomaton();
+
+        assertTrue(automaton instanceof RegexAhoCorasickAutomaton);
+        assertTrue(automaton.matches("a\ud83d\ude00"));
+        assertTrue(automaton.matches("\ud83d\ude01"));
+        assertFalse(automaton.matches("a\ud83d"));
+        assertFalse(automaton.matches("\ud83d\ude00"));
+    }
+
+    @Test
+    public void testSearchSupplementaryCharacters() throws Exception {
+        RegexCompiledAutomaton automaton = compile(
+                "x|\ud83d\ude00|a\ud83d\ude01").getAutomaton();
+        RegexSearcher searcher = automaton
+                .searcher("k\ud83d\ude00a\ud83d\ude01x");
+
+        assertTrue(automaton instanceof RegexAhoCorasickAutomaton);
+        assertTrue(automaton.matches("\ud83d\ude00"));
+        assertTrue(searcher.find());
+        assertEquals(1, searcher.getStart());
+        assertEquals(3, searcher.getEnd());
+        assertTrue(searcher.find());
+        assertEquals(3, searcher.getStart());
+        assertEquals(6, searcher.getEnd());
+        assertTrue(searcher.find());
+        assertEquals(6, searcher.getStart());
+        assertEquals(7, searcher.getEnd());
+        assertFalse(searcher.find());
+
+        searcher = compile("[\ud83d\ude00-\ud83d\ude02]").getAutomaton()
+                .searcher("ab\ud83d\ude01");
+        assertTrue(searcher.find());
+        assertEquals(2, searcher.getStart());
+        assertEquals(4, searcher.getEnd());
+    }
+
+    @Test
+    public void testManyKeywords() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        List<String> keywords = new ArrayList<String>();
+        Random random = new Random(0);
+
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder keyword = new StringBuilder();
+            int length = 2 + random.nextInt(8);
+
+            for (int j = 0; j < length; j++) {
+                keyword.append((char) ('a' + random.nextInt(26)));
+            }
+
+            keywords.add(keyword.toString());
+            machines.add(compile(compiler, keyword.toString(), keyword
+                    .toString()));
+        }
+
+        RegexMatcher matcher = compiler.combine(machines).getAutomaton()
+                .matcher();
+
+        for (String keyword : keywords) {
+            assertTrue(matcher.matches(keyword));
+            assertEquals(keyword, matcher.getAcceptObject());
+        }
+
+        assertFalse(matcher.matches("abcdefghijk"));
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import static ch.eskaton.regex.RegexTestHelper.parse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.eskaton.regex.parser.RegexCompiler;
+
+public class RegexByteAutomatonTest {
+
+    private RegexByteAutomaton compile(String regex) throws Exception {
+        return new RegexCompiler().compileUtf8(parse(regex));
+    }
+
+    private static byte[] utf8(String s) throws Exception {
+        return s.getBytes("UTF-8");
+    }
+
+    @Test
+    public void testAscii() throws Exception {
+        RegexByteAutomaton automaton = compile("a(b|c)*d");
+
+        assertTrue(automaton.matches(utf8("ad")));
+        assertTrue(automaton.matches(utf8("abcbd")));
+        assertFalse(automaton.matches(utf8("abc")));
+        assertFalse(automaton.matches(utf8("")));
+    }
+
+    @Test
+    public void testMultiByte() throws Exception {
+        RegexByteAutomaton automaton = compile("[\u00e0-\u0800]+\u20ac");
+
+        assertTrue(automaton.matches(utf8("\u00e4\u07ff\u0800\u20ac")));
+        assertFalse(automaton.matches(utf8("\u00df\u20ac")));
+        assertFalse(automaton.matches(utf8("\u0801\u20ac")));
+        assertFalse(automaton.matches(utf8("\u00e4")));
+    }
+
+    @Test
+    public void testComplement() throws Exception {
+        RegexByteAutomaton automaton = compile("\"[^\"]*\"");
+
+        assertTrue(automaton.matches(utf8("\"a\u00e4\u4e2d\uffff\"")));
+        assertFalse(automaton.matches(utf8("\"a\"b\"")));
+        assertFalse(automaton.matches(new byte[] { '"', (byte) 0xc3, '"' }));
+        assertFalse(automaton.matches(new byte[] { '"', (byte) 0xed,
+                (byte) 0xa0, (byte) 0x80, '"' }));
+    }
+
+    @Test
+    public void testSupplementary() throws Exception {
+        RegexByteAutomaton automaton = compile("[\ud83d\ude00-\ud83d\ude4f]+[^a]");
+
+        assertTrue(automaton.matches(utf8("\ud83d\ude00\ud83d\ude4f\ud840\udc00")));
+        assertTrue(automaton.matches(utf8("\ud83d\ude00b")));
+        assertFalse(automaton.matches(utf8("\ud83d\ude50b")));
+        assertFalse(automaton.matches(utf8("\ud83d\ude00a")));
+    }
+
+    @Test
+    public void testOffsetAndBuffer() throws Exception {
+        RegexByteAutomaton automaton = compile("\u00e4+");
+        byte[] input = utf8("x\u00e4\u00e4y");
+
+        assertTrue(automaton.matches(input, 1, 4));
+        assertFalse(automaton.matches(input, 1, 3));
+
+        ByteBuffer buffer = ByteBuffer.wrap(input);
+        buffer.position(1);
+        buffer.limit(5);
+        assertTrue(automaton.matches(buffer));
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    public void testAcceptObjects() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compiler.compile(parse("if"), "if"));
+        machines.add(compiler.compile(parse("[a-z\u00e0-\u00ff]+"),
+                "identifier"));
+        RegexByteAutomaton automaton = compiler.combine(machines)
+                .createByteAutomaton();
+
+        assertEquals("if", accept(automaton, "if"));
+        assertEquals("identifier", accept(automaton, "i\u00e4"));
+        assertNull(accept(automaton, "i\u0100"));
+    }
+
+    private static Object accept(RegexByteAutomaton automaton, String input)
+            throws Exception {
+        int state = automaton.getInitialState();
+
+        for (byte b : utf8(input)) {
+            state = automaton.getNextState(state, b);
+        }
+
+        return automaton.getAcceptObject(state);
+    }
+
+    @Test
+    public void testSplitRange() {
+        List<int[][]> sequences = new ArrayList<int[][]>();
+        RegexUtf8Compiler.splitRange(0, 0xffff, sequences);
+
+        for (int c = 0; c <= 0xffff; c++) {
+            byte[] bytes = RegexUtf8Compiler.encode(c);
+            int count = 0;
+
+            for (int[][] sequence : sequences) {
+                if (covers(sequence, bytes)) {
+                    count++;
+                }
+            }
+
+            assertEquals(1, count);
+        }
+    }
+
+    private static boolean covers(int[][] sequence, byte[] bytes) {
+        if (sequence.length != bytes.length) {
+            return false;
+        }
+
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+
+            if (b < sequence[i][0] || b > sequence[i][1]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLazy() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(16);
+        compiler.compile(parse("abc")).createByteAutomaton();
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.eskaton.regex.RegexTestHelper;
+
+public class RegexBytecodeCompilerTest {
+
+    private RegexTableAutomaton compile(String regex) throws Exception {
+        return (RegexTableAutomaton) RegexTestHelper.compile(regex)
+                .getAutomaton();
+    }
+
+    @Test
+    public void testCompiledAfterThreshold() throws Exception {
+        RegexTableAutomaton automaton = compile("0x[0-9a-fA-F]+");
+        automaton.setCompileThreshold(2);
+
+        assertTrue(automaton.matches("0x1F"));
+        assertFalse(automaton.matches("0x"));
+        assertFalse(automaton.isCompiled());
+        assertTrue(automaton.matches("0xabc"));
+        assertTrue(automaton.isCompiled());
+        assertTrue(automaton.matches("0xFFFF"));
+        assertFalse(automaton.matches("0xG"));
+        assertFalse(automaton.matches("1x1"));
+        assertFalse(automaton.matches(""));
+    }
+
+    @Test
+    public void testNeverCompiled() throws Exception {
+        RegexTableAutomaton automaton = compile("a+");
+        automaton.setCompileThreshold(-1);
+
+        for (int i = 0; i < RegexTableAutomaton.DEFAULT_COMPILE_THRESHOLD + 1; i++) {
+            assertTrue(automaton.matches("aaa"));
+        }
+
+        assertFalse(automaton.isCompiled());
+    }
+
+    @Test
+    public void testCompiledMatches() throws Exception {
+        String[] patterns = { "(a|b)*abb", "\"[^\"]*\"",
+                "[\u0100-\uffff]+x", "([1-9][0-9]*(.[0-9]*)?)|(0*?.[0-9]+)" };
+        String[] inputs = { "", "abb", "babb", "abba", "\"\"", "\"abc\"",
+                "\"a\"b\"", "\u0100\uffffx", "\u00ffx", "0.5", "12.", "00.1",
+                "\uffff" };
+
+        for (String pattern : patterns) {
+            RegexTableAutomaton table = compile(pattern);
+            RegexTableAutomaton compiled = compile(pattern);
+            table.setCompileThreshold(-1);
+            compiled.setCompileThreshold(0);
+
+            for (String input : inputs) {
+                assertTrue(pattern + " " + input,
+                        table.matches(input) == compiled.matches(input));
+            }
+
+            assertTrue(compiled.isCompiled());
+        }
+    }
+
+    @Test
+    public void testTooLarge() throws Exception {
+        StringBuilder regex = new StringBuilder();
+        Random random = new Random(0);
+
+        for (int i = 0; i < 1500; i++) {
+            if (i > 0) {
+                regex.append('|');
+            }
+
+            for (int j = 0; j < 8; j++) {
+                regex.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+
+        /* not only literals, so that the automaton isn't a trie */
+        regex.append("|[0-9]+");
+
+        RegexTableAutomaton automaton = compile(regex.toString());
+
+        assertNull(RegexBytecodeCompiler.compile(automaton));
+        automaton.setCompileThreshold(0);
+        assertTrue(automaton.matches(regex.substring(0, 8)));
+        assertFalse(automaton.isCompiled());
+    }
+
+}
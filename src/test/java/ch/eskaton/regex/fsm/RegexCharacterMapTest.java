@@ -0,0 +1,63 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RegexCharacterMapTest {
+
+    @Test
+    public void testDefaultColumn() {
+        RegexCharacterMap map = new RegexCharacterMap(3);
+        map.compact();
+        assertEquals(3, map.getColumn('a'));
+        assertEquals(3, map.getColumn('\u0000'));
+        assertEquals(3, map.getColumn('\uFFFF'));
+    }
+
+    @Test
+    public void testRanges() {
+        RegexCharacterMap map = new RegexCharacterMap(2);
+        map.put('0', '9', 0);
+        map.put('\u00F0', '\u0210', 1);
+        map.compact();
+        assertEquals(2, map.getColumn('/'));
+        assertEquals(0, map.getColumn('0'));
+        assertEquals(0, map.getColumn('9'));
+        assertEquals(2, map.getColumn(':'));
+        assertEquals(2, map.getColumn('\u00EF'));
+        assertEquals(1, map.getColumn('\u00F0'));
+        assertEquals(1, map.getColumn('\u0100'));
+        assertEquals(1, map.getColumn('\u01FF'));
+        assertEquals(1, map.getColumn('\u0210'));
+        assertEquals(2, map.getColumn('\u0211'));
+        assertEquals(2, map.getColumn('\uFFFF'));
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import static ch.eskaton.regex.RegexTestHelper.compile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.eskaton.regex.parser.RegexCompiler;
+
+public class RegexMappedAutomatonTest {
+
+    private RegexStateMachine compileTokens() throws Exception {
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile("if", "if"));
+        machines.add(compile("[a-z]+", "identifier"));
+        machines.add(compile("[0-9]+", "number"));
+        machines.add(compile("\u00e4\u0100+", "unicode"));
+        return new RegexCompiler().combine(machines);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        RegexStateMachine sm = compileTokens();
+        File file = File.createTempFile("regex", ".bin");
+
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            Object[] objects = sm.write(out);
+            out.close();
+
+            RegexMappedAutomaton automaton = RegexMappedAutomaton.load(file,
+                    objects);
+            RegexMatcher matcher = automaton.matcher();
+
+            assertEquals(sm.getStateTable().length, automaton.getStateCount());
+            assertTrue(matcher.matches("if"));
+            assertEquals("if", matcher.getAcceptObject());
+            assertTrue(matcher.matches("iff"));
+            assertEquals("identifier", matcher.getAcceptObject());
+            assertTrue(matcher.matches("0123"));
+            assertEquals("number", matcher.getAcceptObject());
+            assertTrue(automaton.matches("\u00e4\u0100\u0100"));
+            assertFalse(automaton.matches("\u00e4"));
+            assertFalse(automaton.matches("a1"));
+            assertFalse(automaton.matches(""));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAcceptObjectNames() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compileTokens().write(out);
+
+        RegexMappedAutomaton automaton = new RegexMappedAutomaton(ByteBuffer
+                .wrap(out.toByteArray()), null);
+        RegexMatcher matcher = automaton.matcher();
+
+        assertTrue(matcher.matches("abc"));
+        assertEquals("identifier", matcher.getAcceptObject());
+        matcher.reset();
+        assertNull(matcher.getAcceptObject());
+    }
+
+    @Test
+    public void testAcceptObjectsReplaced() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Object[] objects = compile("a+", "a").write(out);
+        assertEquals(1, objects.length);
+
+        RegexMappedAutomaton automaton = new RegexMappedAutomaton(ByteBuffer
+                .wrap(out.toByteArray()), new Object[] { Integer.valueOf(1) });
+
+        assertEquals(Integer.valueOf(1), automaton.getAcceptObject(automaton
+                .getNextState(automaton.getInitialState(), 'a')));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFormat() throws Exception {
+        new RegexMappedAutomaton(ByteBuffer.wrap(new byte[64]), null);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compile("a+", null).write(out);
+        byte[] data = out.toByteArray();
+
+        new RegexMappedAutomaton(ByteBuffer.wrap(data, 0, data.length - 8),
+                null);
+    }
+
+}
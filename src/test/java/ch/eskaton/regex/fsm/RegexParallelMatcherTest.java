@@ -0,0 +1,113 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import static ch.eskaton.regex.RegexTestHelper.compile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.eskaton.regex.parser.RegexCompiler;
+
+public class RegexParallelMatcherTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private RegexParallelMatcher matcher(String regex) throws Exception {
+        RegexParallelMatcher matcher = new RegexParallelMatcher(compile(
+                regex).getAutomaton(), executor, 8);
+        matcher.setMinChunkSize(3);
+        return matcher;
+    }
+
+    @Test
+    public void testMatches() throws Exception {
+        RegexParallelMatcher matcher = matcher("(a|b)*abb");
+
+        assertTrue(matcher.matches("abababababababbababb"));
+        assertFalse(matcher.matches("abababababababbababa"));
+        assertFalse(matcher.matches("cbababababababbababb"));
+        assertTrue(matcher.matches("abb"));
+        assertFalse(matcher.matches(""));
+    }
+
+    @Test
+    public void testCompareSequential() throws Exception {
+        String[] patterns = { "(a|b)*abb", "(ab|ba)*", "a(a|b)*b|b*",
+                "((a|b)(a|b))*a" };
+        Random random = new Random(1);
+
+        for (String pattern : patterns) {
+            RegexCompiledAutomaton automaton = compile(pattern)
+                    .getAutomaton();
+            RegexParallelMatcher matcher = matcher(pattern);
+
+            for (int i = 0; i < 200; i++) {
+                StringBuilder input = new StringBuilder();
+                int length = random.nextInt(40);
+
+                for (int j = 0; j < length; j++) {
+                    input.append(random.nextBoolean() ? 'a' : 'b');
+                }
+
+                assertEquals(pattern + " " + input, automaton.matches(input),
+                        matcher.matches(input));
+            }
+        }
+    }
+
+    @Test
+    public void testLazySequential() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(2);
+        RegexParallelMatcher matcher = new RegexParallelMatcher(compile(
+                compiler, "(a|b)*abb", null).getAutomaton(), executor, 8);
+        matcher.setMinChunkSize(1);
+
+        assertTrue(matcher.matches("abababababababbababb"));
+        assertFalse(matcher.matches("abababababababbababa"));
+    }
+
+}
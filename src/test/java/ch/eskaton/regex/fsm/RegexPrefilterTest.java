@@ -0,0 +1,188 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.eskaton.regex.RegexTestHelper;
+import ch.eskaton.regex.parser.RegexCompiler;
+
+public class RegexPrefilterTest {
+
+    private RegexStateMachine compile(RegexCompiler compiler, String regex)
+            throws Exception {
+        return RegexTestHelper.compile(compiler, regex, regex);
+    }
+
+    private RegexPrefilter prefilter(String regex) throws Exception {
+        return compile(new RegexCompiler(), regex).getPrefilter();
+    }
+
+    private void assertLiterals(String prefix, String suffix,
+            String required, RegexPrefilter prefilter) {
+        assertEquals(prefix, prefilter.getPrefix());
+        assertEquals(suffix, prefilter.getSuffix());
+        assertEquals(required, prefilter.getRequired());
+    }
+
+    @Test
+    public void testLiteral() throws Exception {
+        assertLiterals("abc", "abc", "abc", prefilter("abc"));
+        assertLiterals("abc", "abc", "abc", prefilter("a[b]c"));
+    }
+
+    @Test
+    public void testPrefixAndSuffix() throws Exception {
+        assertLiterals("0x", "h", "0x", prefilter("0x[0-9a-f]+h"));
+        assertLiterals("ab", "c", "ab", prefilter("(ab)+c"));
+    }
+
+    @Test
+    public void testRequired() throws Exception {
+        assertLiterals("", "", "error", prefilter("[a-z]*error[0-9]*"));
+        assertLiterals("", "", "b:c", prefilter("[a-z]b:c[a-z]"));
+    }
+
+    @Test
+    public void testSelection() throws Exception {
+        assertLiterals("fooba", "", "fooba", prefilter("foobar|foobaz"));
+        assertLiterals("", "ing", "ing", prefilter("[a-z]+ing|sing"));
+        assertLiterals("", "", "", prefilter("abc|def"));
+    }
+
+    @Test
+    public void testRepetition() throws Exception {
+        assertLiterals("", "", "", prefilter("(abc)?"));
+        assertLiterals("", "", "", prefilter("(abc)*"));
+        assertLiterals("x", "y", "x", prefilter("x(abc)*y"));
+    }
+
+    @Test
+    public void testCombined() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile(compiler, "if"));
+        machines.add(compile(compiler, "in"));
+
+        assertLiterals("i", "", "i", compiler.combine(machines)
+                .getPrefilter());
+
+        machines.add(compile(compiler, "[a-z]+"));
+
+        assertLiterals("", "", "", compiler.combine(machines).getPrefilter());
+    }
+
+    @Test
+    public void testSupplementaryCharacter() throws Exception {
+        assertLiterals("a\ud83d\ude00", "a\ud83d\ude00", "a\ud83d\ude00",
+                prefilter("a\ud83d\ude00"));
+    }
+
+    @Test
+    public void testAccepts() throws Exception {
+        RegexPrefilter prefilter = prefilter("0x[0-9]*key[0-9]*h");
+
+        assertTrue(prefilter.accepts("0x1key2h"));
+        assertTrue(prefilter.accepts(new StringBuilder("0x1key2h")));
+        assertFalse(prefilter.accepts("0x1kez2h"));
+        assertFalse(prefilter.accepts(new StringBuilder("0x1kez2h")));
+        assertFalse(prefilter.accepts("1x1key2h"));
+        assertFalse(prefilter.accepts(new StringBuilder("0x1key2")));
+        assertFalse(prefilter.accepts("0x"));
+        assertTrue(RegexPrefilter.NONE.accepts(""));
+    }
+
+    @Test
+    public void testMayFind() throws Exception {
+        RegexPrefilter prefilter = prefilter("[a-z]+@example");
+
+        assertTrue(prefilter.mayFind("mail me@example", 0));
+        assertTrue(prefilter.mayFind(new StringBuilder("mail me@example"), 7));
+        assertFalse(prefilter.mayFind("mail me@example", 8));
+        assertFalse(prefilter.mayFind(new StringBuilder("me@exampl"), 0));
+    }
+
+    @Test
+    public void testMatchesChecksPrefilter() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxDfaStates(1);
+
+        for (RegexStateMachine machine : new RegexStateMachine[] {
+                compile(new RegexCompiler(), "a[0-9]*b"),
+                compile(compiler, "a[0-9]*b") }) {
+            RegexCompiledAutomaton automaton = machine.getAutomaton();
+
+            assertTrue(automaton.matches("a123b"));
+            assertFalse(automaton.matches("a123"));
+            assertFalse(automaton.matches("123b"));
+        }
+    }
+
+    @Test
+    public void testMatchAllChecksPrefilter() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxDfaStates(1);
+        String[] inputs = { "a123b", "a123", "123b", "ab", "", "a1b", "b",
+                "a12b3" };
+        StringBuilder buffer = new StringBuilder();
+        int[] offsets = new int[inputs.length + 1];
+
+        for (int i = 0; i < inputs.length; i++) {
+            offsets[i] = buffer.length();
+            buffer.append(inputs[i]);
+        }
+
+        offsets[inputs.length] = buffer.length();
+
+        for (RegexStateMachine machine : new RegexStateMachine[] {
+                compile(new RegexCompiler(), "a[0-9]*b"),
+                compile(compiler, "a[0-9]*b") }) {
+            RegexCompiledAutomaton automaton = machine.getAutomaton();
+            boolean[] results = new boolean[inputs.length];
+            boolean[] bufferResults = new boolean[inputs.length];
+
+            automaton.matchAll(inputs, results);
+            automaton.matchAll(buffer.toString().toCharArray(), offsets,
+                    bufferResults);
+
+            for (int i = 0; i < inputs.length; i++) {
+                assertEquals(inputs[i], automaton.matches(inputs[i]),
+                        results[i]);
+                assertEquals(inputs[i], automaton.matches(inputs[i]),
+                        bufferResults[i]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import static ch.eskaton.regex.RegexTestHelper.compile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import ch.eskaton.regex.parser.RegexCompiler;
+
+public class RegexSourceGeneratorTest {
+
+    @Test
+    public void testGenerate() throws Exception {
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile(new RegexCompiler(), "if", "IF"));
+        machines.add(compile(new RegexCompiler(), "[a-z]+", "IDENTIFIER"));
+        RegexStateMachine sm = new RegexCompiler().combine(machines);
+        StringWriter writer = new StringWriter();
+
+        new RegexSourceGenerator("com.example.Lexer").generate(sm, writer);
+
+        String source = writer.toString();
+        assertTrue(source.startsWith("package com.example;"));
+        assertTrue(source.contains("public final class Lexer {"));
+        assertTrue(source.contains("return \"IF\";"));
+        assertTrue(source.contains("return \"IDENTIFIER\";"));
+        assertTrue(source.contains("c >= 'a' && c <= 'z'"));
+
+        for (int s = 0; s < sm.getStateTable().length; s++) {
+            assertTrue(source.contains("private static int nextState" + s
+                    + "(char c) {"));
+        }
+    }
+
+    @Test
+    public void testGenerateDefaultPackage() throws Exception {
+        StringWriter writer = new StringWriter();
+
+        new RegexSourceGenerator("Quote").generate(compile(
+                new RegexCompiler(), "\"[^\"]*\"", null), writer);
+
+        String source = writer.toString();
+        assertTrue(source.startsWith("/**"));
+        assertTrue(source.contains("c <= '!'"));
+        assertTrue(source.contains("c >= '#'"));
+    }
+
+    @Test
+    public void testCompileLargeAutomaton() throws Exception {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        assumeNotNull(javac);
+
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+
+        for (int i = 0; i < 2000; i++) {
+            machines.add(compile(new RegexCompiler(), keyword(i), keyword(i)));
+        }
+
+        machines.add(compile(new RegexCompiler(), "[a-z]+", "IDENTIFIER"));
+        RegexStateMachine sm = new RegexCompiler().combine(machines);
+        assertTrue(sm.getStateTable().length
+                > 4 * RegexSourceGenerator.CHUNK_SIZE);
+
+        File dir = File.createTempFile("generated", "");
+        dir.delete();
+        File source = new File(new File(dir, "large"), "Lexer.java");
+        source.getParentFile().mkdirs();
+
+        try {
+            Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(source), "UTF-8");
+
+            try {
+                new RegexSourceGenerator("large.Lexer").generate(sm, writer);
+            } finally {
+                writer.close();
+            }
+
+            assertEquals(0, javac.run(null, null, null, "-nowarn", "-d", dir
+                    .getPath(), source.getPath()));
+
+            Class<?> lexer = new URLClassLoader(new URL[] { dir.toURI()
+                    .toURL() }).loadClass("large.Lexer");
+            Method longestMatch = lexer.getMethod("longestMatch",
+                    CharSequence.class, int.class);
+            Method nextState = lexer.getMethod("nextState", int.class,
+                    char.class);
+            Method getAcceptName = lexer.getMethod("getAcceptName", int.class);
+            int state = lexer.getField("INITIAL_STATE").getInt(null);
+
+            String last = keyword(1999);
+
+            for (int i = 0; i < last.length(); i++) {
+                state = (Integer) nextState.invoke(null, state, last.charAt(i));
+            }
+
+            assertEquals(last, getAcceptName.invoke(null, state));
+            assertEquals(-1, nextState.invoke(null, state, '0'));
+            assertNull(getAcceptName.invoke(null, -1));
+            assertEquals(last.length(), longestMatch.invoke(null, last + " x",
+                    0));
+
+            state = lexer.getField("INITIAL_STATE").getInt(null);
+            state = (Integer) nextState.invoke(null, state, 'x');
+            assertEquals("IDENTIFIER", getAcceptName.invoke(null, state));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Returns a distinct keyword for each <code>i</code>.
+     */
+    private static String keyword(int i) {
+        StringBuilder sb = new StringBuilder("k");
+
+        do {
+            sb.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+
+        return sb.append("word").toString();
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGenerateLazy() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(10);
+
+        new RegexSourceGenerator("Lazy").generate(compile(compiler, "a+",
+                null), new StringWriter());
+    }
+
+}
@@ -0,0 +1,351 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.fsm;
+
+import static ch.eskaton.regex.RegexTestHelper.compile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ch.eskaton.regex.parser.RegexCompiler;
+
+public class RegexStateMachineTest {
+
+    @Test
+    public void testMinimised() throws Exception {
+        assertEquals(4, compile("(a|b)*abb", null).getStateTable().length);
+        assertEquals(1, compile("a*", null).getStateTable().length);
+        assertEquals(1, compile("(a|aa)*", null).getStateTable().length);
+        assertEquals(4, compile("abc|abd", null).getStateTable().length);
+    }
+
+    @Test
+    public void testMinimisedMatches() throws Exception {
+        RegexCompiledAutomaton automaton = compile("(a|b)*abb", null)
+                .getAutomaton();
+        assertTrue(automaton.matches("abb"));
+        assertTrue(automaton.matches("babaabb"));
+        assertFalse(automaton.matches("ab"));
+        assertFalse(automaton.matches("abba"));
+        assertFalse(automaton.matches("abbc"));
+    }
+
+    @Test
+    public void testMinimisedKeepsAcceptObjects() throws Exception {
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile("if", "if"));
+        machines.add(compile("in", "in"));
+        machines.add(compile("[a-z]+", "id"));
+
+        RegexMatcher matcher = new RegexCompiler().combine(machines)
+                .getAutomaton().matcher();
+
+        assertTrue(matcher.matches("if"));
+        assertEquals("if", matcher.getAcceptObject());
+        assertTrue(matcher.matches("in"));
+        assertEquals("in", matcher.getAcceptObject());
+        assertTrue(matcher.matches("it"));
+        assertEquals("id", matcher.getAcceptObject());
+        assertTrue(matcher.matches("ifs"));
+        assertEquals("id", matcher.getAcceptObject());
+    }
+
+    @Test
+    public void testLazy() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(100);
+        RegexStateMachine machine = compile(compiler, "(a|b)*abb", null);
+        RegexCompiledAutomaton automaton = machine.getAutomaton();
+
+        assertTrue(machine.isLazy());
+        assertEquals(1, automaton.getStateCount());
+        assertTrue(automaton.matches("babaabb"));
+        assertFalse(automaton.matches("abba"));
+        assertTrue(automaton.getStateCount() > 1);
+        assertTrue(automaton.getStateCount() <= 5);
+    }
+
+    @Test
+    public void testLazyCacheFull() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(2);
+        RegexCompiledAutomaton automaton = compile(compiler,
+                "(a|b)*a(a|b)(a|b)(a|b)", null).getAutomaton();
+
+        assertTrue(automaton.matches("bbbabab"));
+        assertTrue(automaton.matches("aaaa"));
+        assertFalse(automaton.matches("babb"));
+        assertFalse(automaton.matches("aaaabbbb"));
+        assertTrue(automaton.matches("aaaaabba"));
+        assertEquals(2, automaton.getStateCount());
+    }
+
+    @Test
+    public void testLazyCacheFullReturnsToCachedState() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(2);
+        RegexCompiledAutomaton automaton = compile(compiler,
+                "(a|b)*a(a|b)(a|b)(a|b)", null).getAutomaton();
+        RegexMatcher matcher = automaton.matcher();
+
+        matcher.processEvent('a');
+        int state = matcher.getState();
+
+        for (char c : "aaabbbba".toCharArray()) {
+            matcher.processEvent(c);
+        }
+
+        assertEquals(state, matcher.getState());
+        assertFalse(matcher.accepts());
+
+        for (char c : "aaa".toCharArray()) {
+            matcher.processEvent(c);
+        }
+
+        assertEquals(-2, matcher.getState());
+        assertTrue(matcher.accepts());
+        assertEquals(2, automaton.getStateCount());
+    }
+
+    @Test
+    public void testLazyCacheFullSharedBetweenThreads() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(2);
+        final RegexCompiledAutomaton automaton = compile(compiler,
+                "(a|b)*a(a|b)(a|b)(a|b)", null).getAutomaton();
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 2000; j++) {
+                        if (!automaton.matches("bbabaabbaabab")
+                                || automaton.matches("abababbbb")) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(2, automaton.getStateCount());
+    }
+
+    @Test
+    public void testLazyCombined() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(3);
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile(compiler, "string", "string"));
+        machines.add(compile(compiler, "[a-z]+", "id"));
+        machines.add(compile(compiler, "\"[^\"]*\"", "literal"));
+
+        RegexMatcher matcher = compiler.combine(machines).getAutomaton()
+                .matcher();
+
+        assertTrue(matcher.matches("string"));
+        assertEquals("string", matcher.getAcceptObject());
+        assertTrue(matcher.matches("strings"));
+        assertEquals("id", matcher.getAcceptObject());
+        assertTrue(matcher.matches("\"a string\""));
+        assertEquals("literal", matcher.getAcceptObject());
+        assertFalse(matcher.matches("str1ng"));
+    }
+
+    @Test
+    public void testLazySharedBetweenThreads() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxCachedStates(8);
+        final RegexCompiledAutomaton automaton = compile(compiler,
+                "(a|b)*a(a|b)(a|b)(a|b)", null).getAutomaton();
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 2000; j++) {
+                        if (!automaton.matches("bbabaabba")
+                                || automaton.matches("abababbbb")) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void testSimulated() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxDfaStates(4);
+        RegexStateMachine machine = compile(compiler,
+                "(a|b)*a(a|b)(a|b)(a|b)", null);
+        RegexCompiledAutomaton automaton = machine.getAutomaton();
+
+        assertTrue(machine.isSimulated());
+        assertTrue(automaton instanceof RegexNfaAutomaton);
+        assertTrue(automaton.matches("bbbabab"));
+        assertTrue(automaton.matches("aaaa"));
+        assertFalse(automaton.matches("babb"));
+        assertFalse(automaton.matches("aaaabbbb"));
+        assertTrue(automaton.matches("aaaaabba"));
+        assertFalse(automaton.matches("aaac"));
+        assertTrue(automaton.matcher().matches("aaaaabba"));
+        assertFalse(automaton.matcher().matches(""));
+    }
+
+    @Test
+    public void testSimulatedOnExponentialBlowup() throws Exception {
+        StringBuilder regex = new StringBuilder("(a|b)*a");
+        StringBuilder input = new StringBuilder("bbba");
+
+        for (int i = 0; i < 20; i++) {
+            regex.append("(a|b)");
+            input.append(i % 3 == 0 ? 'a' : 'b');
+        }
+
+        RegexStateMachine machine = compile(regex.toString(), null);
+        RegexCompiledAutomaton automaton = machine.getAutomaton();
+
+        assertTrue(machine.isSimulated());
+        assertTrue(automaton.matches(input));
+        assertFalse(automaton.matches(input.substring(0,
+                input.length() - 1)));
+        assertTrue(automaton.matches("b" + input));
+        assertFalse(automaton.matches(input.toString().replace('a', 'b')));
+    }
+
+    @Test
+    public void testSimulatedCombined() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxDfaStates(3);
+        List<RegexStateMachine> machines = new ArrayList<RegexStateMachine>();
+        machines.add(compile(compiler, "string", "string"));
+        machines.add(compile(compiler, "[a-z]+", "id"));
+        machines.add(compile(compiler, "\"[^\"]*\"", "literal"));
+
+        RegexMatcher matcher = compiler.combine(machines).getAutomaton()
+                .matcher();
+
+        assertTrue(matcher.matches("string"));
+        assertEquals("string", matcher.getAcceptObject());
+        assertTrue(matcher.matches("strings"));
+        assertEquals("id", matcher.getAcceptObject());
+        assertTrue(matcher.matches("\"a string\""));
+        assertEquals("literal", matcher.getAcceptObject());
+        assertFalse(matcher.matches("str1ng"));
+        assertTrue(matcher.rejects());
+    }
+
+    @Test
+    public void testSimulatedSearch() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxDfaStates(2);
+        RegexSearcher searcher = compile(compiler, "a(a|b)b", null)
+                .getAutomaton().searcher("cabbaaab");
+
+        assertTrue(searcher.find());
+        assertEquals(1, searcher.getStart());
+        assertEquals(4, searcher.getEnd());
+        assertTrue(searcher.find());
+        assertEquals(5, searcher.getStart());
+        assertEquals(8, searcher.getEnd());
+        assertFalse(searcher.find());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSimulatedHasNoStateTable() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxDfaStates(1);
+        compile(compiler, "ab+", null).getStateTable();
+    }
+
+    @Test
+    public void testDeadStatesReject() throws Exception {
+        /* the class is empty, so no input continues after a* */
+        String empty = "[^\u0000-\udbff\udfff]";
+        RegexCompiler simulating = new RegexCompiler();
+        RegexCompiler lazy = new RegexCompiler();
+        simulating.setMaxDfaStates(1);
+        lazy.setMaxCachedStates(4);
+
+        for (RegexCompiler compiler : new RegexCompiler[] {
+                new RegexCompiler(), simulating, lazy }) {
+            RegexMatcher matcher = compile(compiler, "a*" + empty + "|b",
+                    null).getAutomaton().matcher();
+
+            assertTrue(matcher.matches("b"));
+            matcher.reset();
+            matcher.processEvent('a');
+            assertTrue(matcher.rejects());
+        }
+    }
+
+    @Test
+    public void testMaxNfaStates() throws Exception {
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.setMaxNfaStates(100);
+
+        assertTrue(compile(compiler, "[a-z]{50}", null).getAutomaton()
+                .matches("abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwx"));
+
+        try {
+            compile(compiler, "[a-z]{51}", null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            compile(new RegexCompiler(), "(([a-z]{1000}){1000}){1000}", null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RegexCharacterClassSplitterTest {
+
+    @Test
+    public void testPartition() {
+        List<RegexCharacterRange> ranges = Arrays.asList(
+                new RegexCharacterRange('a', 'z'),
+                new RegexCharacterRange('e', 'h'),
+                new RegexCharacterRange('e', 'h'),
+                new RegexCharacterRange('x', 0x1f600),
+                new RegexCharacterRange('0', '9'));
+
+        assertArrayEquals(new RegexCharacterRange[] {
+                new RegexCharacterRange('0', '9'),
+                new RegexCharacterRange('a', 'd'),
+                new RegexCharacterRange('e', 'h'),
+                new RegexCharacterRange('i', 'w'),
+                new RegexCharacterRange('x', 'z'),
+                new RegexCharacterRange('z' + 1, 0x1f600) },
+                RegexCharacterClassSplitter.partition(ranges));
+    }
+
+    @Test
+    public void testSplit() {
+        RegexCharacterClassSplitter splitter = new RegexCharacterClassSplitter(
+                Arrays.asList(new RegexCharacterRange('a', 'z'),
+                        new RegexCharacterRange('e', 'h'),
+                        new RegexCharacterRange('0', '9')));
+
+        assertEquals(Arrays.asList(new RegexCharacterRange('a', 'd'),
+                new RegexCharacterRange('e', 'h'), new RegexCharacterRange(
+                        'i', 'z')), splitter.split('a', 'z'));
+        assertEquals(Arrays.asList(new RegexCharacterRange('0', '9'),
+                new RegexCharacterRange('e', 'h')), splitter
+                .split(RegexIntervalSet.of('0', '9').union(
+                        RegexIntervalSet.of('e', 'h'))));
+    }
+
+    @Test
+    public void testSplitClasses() {
+        RegexIntervalSet letters = RegexIntervalSet.of('a', 'z').union(
+                RegexIntervalSet.of('A', 'Z'));
+        RegexIntervalSet vowels = RegexIntervalSet.of('a', 'a').union(
+                RegexIntervalSet.of('e', 'e'));
+        RegexCharacterClassSplitter splitter = RegexCharacterClassSplitter
+                .forSets(Arrays.asList(letters, vowels));
+        List<RegexIntervalSet> classes = splitter.splitClasses(letters);
+
+        assertEquals(Arrays.asList(letters.difference(vowels), vowels),
+                classes);
+        assertEquals(Arrays.asList(vowels), splitter.splitClasses(vowels));
+        assertSame(classes, splitter.splitClasses(letters));
+    }
+
+    @Test
+    public void testRandomRanges() {
+        Random random = new Random(1);
+        List<RegexCharacterRange> ranges = new ArrayList<RegexCharacterRange>();
+
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(1000);
+            ranges.add(new RegexCharacterRange(from, from + random.nextInt(50)));
+        }
+
+        RegexCharacterClassSplitter splitter = new RegexCharacterClassSplitter(
+                ranges);
+        RegexCharacterRange[] partition = RegexCharacterClassSplitter
+                .partition(ranges);
+
+        for (int i = 1; i < partition.length; i++) {
+            assertTrue(partition[i - 1].getToCodePoint() < partition[i]
+                    .getFromCodePoint());
+        }
+
+        for (RegexCharacterRange range : ranges) {
+            List<RegexCharacterRange> pieces = splitter.split(range
+                    .getFromCodePoint(), range.getToCodePoint());
+            int next = range.getFromCodePoint();
+
+            for (RegexCharacterRange piece : pieces) {
+                assertEquals(next, piece.getFromCodePoint());
+                next = piece.getToCodePoint() + 1;
+            }
+
+            assertEquals(range.getToCodePoint() + 1, next);
+        }
+    }
+
+}
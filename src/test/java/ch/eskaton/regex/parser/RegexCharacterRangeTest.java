@@ -506,4 +506,22 @@ public class RegexCharacterRangeTest {
                 }));
     }
 
+    @Test
+    public void testSupplementary() {
+        RegexCharacterRange r1 = new RegexCharacterRange("\ud83d\ude00",
+                "\ud83d\ude4f");
+        RegexCharacterRange r2 = new RegexCharacterRange(0x1f640, 0x1f680);
+
+        assertEquals(0x1f600, r1.getFromCodePoint());
+        assertEquals("\ud83d\ude4f", r1.getTo());
+        assertTrue(r1.intersects(r2));
+        assertEquals(new HashSet<RegexCharacterRange>() {
+            {
+                add(new RegexCharacterRange(0x1f600, 0x1f63f));
+                add(new RegexCharacterRange(0x1f640, 0x1f64f));
+                add(new RegexCharacterRange(0x1f650, 0x1f680));
+            }
+        }, r1.splitIntersectingRanges(r2));
+    }
+
 }
@@ -0,0 +1,100 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class RegexIntervalSetTest {
+
+    private static RegexIntervalSet set(int... bounds) {
+        Set<RegexCharacterRange> ranges = new HashSet<RegexCharacterRange>();
+
+        for (int i = 0; i < bounds.length; i += 2) {
+            ranges.add(new RegexCharacterRange(bounds[i], bounds[i + 1]));
+        }
+
+        return RegexIntervalSet.of(ranges);
+    }
+
+    @Test
+    public void testCanonical() {
+        RegexIntervalSet s = set('a', 'c', 'd', 'f', 'b', 'e', 'x', 'x');
+        assertEquals(set('a', 'f', 'x', 'x'), s);
+        assertEquals(set('a', 'f', 'x', 'x').hashCode(), s.hashCode());
+        assertEquals(2, s.getIntervalCount());
+        assertEquals('a', s.getFrom(0));
+        assertEquals('f', s.getTo(0));
+    }
+
+    @Test
+    public void testContains() {
+        RegexIntervalSet s = set('0', '9', 'a', 'f', 0x1f600, 0x1f64f);
+        assertTrue(s.contains('0'));
+        assertTrue(s.contains('f'));
+        assertTrue(s.contains(0x1f610));
+        assertFalse(s.contains('g'));
+        assertFalse(s.contains('/'));
+        assertFalse(s.contains(0x1f650));
+        assertFalse(RegexIntervalSet.EMPTY.contains('a'));
+    }
+
+    @Test
+    public void testUnion() {
+        assertEquals(set('a', 'k', 'm', 'z'), set('a', 'c', 'm', 'p').union(
+                set('d', 'k', 'n', 'z')));
+        assertEquals(set('a', 'c'), set('a', 'c').union(RegexIntervalSet.EMPTY));
+    }
+
+    @Test
+    public void testIntersection() {
+        assertEquals(set('c', 'e', 'm', 'm'), set('a', 'e', 'k', 'm')
+                .intersection(set('c', 'g', 'm', 'z')));
+        assertTrue(set('a', 'c').intersection(set('d', 'f')).isEmpty());
+    }
+
+    @Test
+    public void testComplement() {
+        assertEquals(set(0, 'a' - 1, 'd', Character.MAX_CODE_POINT), set('a',
+                'c').complement());
+        assertEquals(RegexIntervalSet.ALL, RegexIntervalSet.EMPTY.complement());
+        assertEquals(RegexIntervalSet.EMPTY, RegexIntervalSet.ALL.complement());
+    }
+
+    @Test
+    public void testDifference() {
+        assertEquals(set('a', 'b', 'f', 'h', 'k', 'z'), set('a', 'z')
+                .difference(set('c', 'e', 'i', 'j')));
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ *  Copyright (c) 2009, Adrian Moser
+ *  All rights reserved.
+ * 
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright
+ *  notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *  notice, this list of conditions and the following disclaimer in the
+ *  documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author nor the
+ *  names of its contributors may be used to endorse or promote products
+ *  derived from this software without specific prior written permission.
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL AUTHOR BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.eskaton.regex.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class RegexPredefinedClassesTest {
+
+    @Test
+    public void testShorthandClasses() {
+        assertEquals(RegexIntervalSet.of('0', '9'), RegexPredefinedClasses
+                .get("d"));
+        assertEquals(RegexIntervalSet.of('0', '9').complement(),
+                RegexPredefinedClasses.get("D"));
+        assertEquals(RegexPredefinedClasses.get("p{Digit}"),
+                RegexPredefinedClasses.get("d"));
+    }
+
+    @Test
+    public void testCategories() {
+        for (int c = 0; c <= Character.MAX_CODE_POINT; c += 7) {
+            assertEquals(Character.isLetter(c), RegexPredefinedClasses.get(
+                    "p{L}").contains(c));
+            assertEquals(Character.getType(c) != Character.UPPERCASE_LETTER,
+                    RegexPredefinedClasses.get("P{Lu}").contains(c));
+        }
+    }
+
+    @Test
+    public void testSetsAreShared() {
+        assertSame(RegexPredefinedClasses.get("p{L}"), RegexPredefinedClasses
+                .get("p{L}"));
+        assertSame(RegexPredefinedClasses.get("w"), RegexPredefinedClasses
+                .get("w"));
+    }
+
+    @Test
+    public void testUnknownClass() {
+        assertNull(RegexPredefinedClasses.get("p{Unknown}"));
+        assertNull(RegexPredefinedClasses.get("p{InUnknown}"));
+    }
+
+}